@@ -0,0 +1,297 @@
+package br.com.dabu.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import br.com.dabu.model.OrigemDados;
+import br.com.dabu.model.ReceitaWSResponse;
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM;
+import br.com.dabu.util.ListaInfCadSobDemanda;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+
+/**
+ * Cache das respostas da ReceitaWS (por CNPJ) e da SEFAZ (por UF + CNPJ)
+ * Cada fonte tem seu próprio cache W-TinyLFU, TTL e contadores.
+ *
+ * Com um arquivo configurado, as respostas também são gravadas no cache em disco (L2):
+ * uma falta no cache em memória (L1) consulta o L2 antes de qualquer chamada de rede,
+ * e o valor encontrado é promovido ao L1 pelo tempo de vida restante.
+ */
+public class CacheConsultaCnpj implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CacheConsultaCnpj.class);
+    
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .registerModule(new SimpleModule().addSerializer(new SerializadorInfCadSobDemanda()));
+    
+    private final ConfiguracaoCache configuracao;
+    private final CacheWTinyLfu<String, ReceitaWSResponse> cacheReceita;
+    private final CacheWTinyLfu<String, SefazConsultaCadastroResponseJDOM> cacheSefaz;
+    private final CacheDisco cacheDisco;
+    
+    public CacheConsultaCnpj(ConfiguracaoCache configuracao) {
+        this.configuracao = configuracao;
+        this.cacheReceita = new CacheWTinyLfu<>(configuracao.getCapacidadeReceita());
+        this.cacheSefaz = new CacheWTinyLfu<>(configuracao.getCapacidadeSefaz());
+        this.cacheDisco = abrirCacheDisco(configuracao);
+    }
+    
+    private static CacheDisco abrirCacheDisco(ConfiguracaoCache configuracao) {
+        if (!configuracao.isHabilitado() || configuracao.getArquivoDisco() == null) {
+            return null;
+        }
+        
+        try {
+            return CacheDisco.abrir(configuracao.getArquivoDisco(), configuracao.getTamanhoInicialDisco());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Erro ao abrir cache em disco {}; usando apenas cache em memória: {}",
+                configuracao.getArquivoDisco(), e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Obtém os dados da ReceitaWS em cache (memória e, na falta, disco)
+     *
+     * @param cnpj CNPJ sem formatação
+     * @return Resposta em cache e sua origem, ou null
+     */
+    public ValorCache<ReceitaWSResponse> obterReceita(String cnpj) {
+        if (!configuracao.isHabilitado()) {
+            return null;
+        }
+        
+        ReceitaWSResponse resposta = cacheReceita.obter(cnpj);
+        if (resposta != null) {
+            return new ValorCache<>(resposta, OrigemDados.CACHE_MEMORIA);
+        }
+        
+        if (cacheDisco == null) {
+            return null;
+        }
+        
+        CacheDisco.RegistroDisco registro = cacheDisco.obter(CacheDisco.TIPO_RECEITA, chaveReceita(cnpj));
+        resposta = desserializar(registro, ReceitaWSResponse.class);
+        if (resposta == null) {
+            return null;
+        }
+        
+        cacheReceita.armazenar(cnpj, resposta, registro.getExpiraEmMillis() - System.currentTimeMillis());
+        return new ValorCache<>(resposta, OrigemDados.CACHE_DISCO);
+    }
+    
+    /**
+     * Armazena a resposta da ReceitaWS com TTL conforme a situação cadastral
+     */
+    public void armazenarReceita(String cnpj, ReceitaWSResponse resposta) {
+        if (!configuracao.isHabilitado() || resposta == null) {
+            return;
+        }
+        
+        Duration ttl = configuracao.getTtlReceita(resposta.getDescricaoSituacaoCadastral());
+        cacheReceita.armazenar(cnpj, resposta, ttl.toMillis());
+        gravarDisco(CacheDisco.TIPO_RECEITA, chaveReceita(cnpj), ttl, resposta);
+        logger.debug("ReceitaWS em cache para CNPJ {} (TTL {})", cnpj, ttl);
+    }
+    
+    /**
+     * Obtém os dados da SEFAZ em cache (memória e, na falta, disco)
+     *
+     * @param uf UF consultada
+     * @param cnpj CNPJ sem formatação
+     * @return Resposta em cache e sua origem, ou null
+     */
+    public ValorCache<SefazConsultaCadastroResponseJDOM> obterSefaz(String uf, String cnpj) {
+        if (!configuracao.isHabilitado()) {
+            return null;
+        }
+        
+        String chave = chaveSefaz(uf, cnpj);
+        SefazConsultaCadastroResponseJDOM resposta = cacheSefaz.obter(chave);
+        if (resposta != null) {
+            return new ValorCache<>(resposta, OrigemDados.CACHE_MEMORIA);
+        }
+        
+        if (cacheDisco == null) {
+            return null;
+        }
+        
+        CacheDisco.RegistroDisco registro = cacheDisco.obter(CacheDisco.TIPO_SEFAZ, chaveSefazNumerica(uf, cnpj));
+        SefazConsultaCadastroResponseJDOM.InfCons infCons = desserializar(registro, SefazConsultaCadastroResponseJDOM.InfCons.class);
+        if (infCons == null) {
+            return null;
+        }
+        
+        resposta = new SefazConsultaCadastroResponseJDOM();
+        resposta.setInfCons(infCons);
+        cacheSefaz.armazenar(chave, resposta, registro.getExpiraEmMillis() - System.currentTimeMillis());
+        return new ValorCache<>(resposta, OrigemDados.CACHE_DISCO);
+    }
+    
+    /**
+     * Armazena a resposta da SEFAZ com TTL conforme a situação da IE
+     * Apenas respostas com cadastro localizado (cStat 111/112) são armazenadas
+     */
+    public void armazenarSefaz(String uf, String cnpj, SefazConsultaCadastroResponseJDOM resposta) {
+        if (!configuracao.isHabilitado() || !isCadastroLocalizado(resposta)) {
+            return;
+        }
+        
+        SefazConsultaCadastroResponseJDOM.InfCons infCons = resposta.getInfCons();
+        String cSit = infCons.getInfCad() != null && !infCons.getInfCad().isEmpty()
+            ? infCons.getInfCad().get(0).getcSit() : null;
+        
+        Duration ttl = configuracao.getTtlSefaz(cSit);
+        cacheSefaz.armazenar(chaveSefaz(uf, cnpj), resposta, ttl.toMillis());
+        gravarDisco(CacheDisco.TIPO_SEFAZ, chaveSefazNumerica(uf, cnpj), ttl, infCons);
+        logger.debug("SEFAZ em cache para UF {} CNPJ {} (TTL {})", uf, cnpj, ttl);
+    }
+    
+    /**
+     * Remove os dados do CNPJ em cache (Receita e SEFAZ da UF informada)
+     */
+    public void invalidar(String uf, String cnpj) {
+        cacheReceita.invalidar(cnpj);
+        if (uf != null) {
+            cacheSefaz.invalidar(chaveSefaz(uf, cnpj));
+        }
+        
+        if (cacheDisco != null) {
+            cacheDisco.invalidar(CacheDisco.TIPO_RECEITA, chaveReceita(cnpj));
+            if (uf != null) {
+                cacheDisco.invalidar(CacheDisco.TIPO_SEFAZ, chaveSefazNumerica(uf, cnpj));
+            }
+        }
+    }
+    
+    public void limpar() {
+        cacheReceita.limpar();
+        cacheSefaz.limpar();
+        if (cacheDisco != null) {
+            cacheDisco.limpar();
+        }
+    }
+    
+    public EstatisticasCache getEstatisticasReceita() {
+        return cacheReceita.getEstatisticas();
+    }
+    
+    public EstatisticasCache getEstatisticasSefaz() {
+        return cacheSefaz.getEstatisticas();
+    }
+    
+    /**
+     * Estatísticas do cache em disco (null se não configurado)
+     */
+    public EstatisticasCache getEstatisticasDisco() {
+        return cacheDisco != null ? cacheDisco.getEstatisticas() : null;
+    }
+    
+    public ConfiguracaoCache getConfiguracao() {
+        return configuracao;
+    }
+    
+    /**
+     * Fecha o cache em disco, sincronizando-o com o arquivo
+     */
+    @Override
+    public void close() {
+        if (cacheDisco == null) {
+            return;
+        }
+        
+        try {
+            cacheDisco.close();
+        } catch (IOException e) {
+            logger.warn("Erro ao fechar cache em disco {}: {}", cacheDisco.getArquivo(), e.getMessage());
+        }
+    }
+    
+    private void gravarDisco(byte tipo, long chave, Duration ttl, Object valor) {
+        if (cacheDisco == null || ttl.toMillis() <= 0) {
+            return;
+        }
+        
+        try {
+            byte[] conteudo = objectMapper.writeValueAsBytes(valor);
+            cacheDisco.gravar(tipo, chave, System.currentTimeMillis() + ttl.toMillis(), conteudo);
+        } catch (IOException e) {
+            logger.warn("Erro ao serializar registro para o cache em disco: {}", e.getMessage());
+        }
+    }
+    
+    private <T> T desserializar(CacheDisco.RegistroDisco registro, Class<T> tipo) {
+        if (registro == null) {
+            return null;
+        }
+        
+        try {
+            return objectMapper.readValue(registro.getConteudo(), tipo);
+        } catch (IOException e) {
+            logger.warn("Registro ilegível no cache em disco: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Grava a lista sob demanda no L2 decodificando um infCad por vez, sem guardá-los na lista
+     * (a serialização padrão percorre a lista com get(i) e manteria todos decodificados no L1)
+     */
+    private static class SerializadorInfCadSobDemanda extends StdSerializer<ListaInfCadSobDemanda> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        SerializadorInfCadSobDemanda() {
+            super(ListaInfCadSobDemanda.class);
+        }
+        
+        @Override
+        public void serialize(ListaInfCadSobDemanda lista, JsonGenerator gerador, SerializerProvider provider) throws IOException {
+            gerador.writeStartArray();
+            Iterator<SefazConsultaCadastroResponseJDOM.InfCad> iterador = lista.iterarSemGuardar();
+            while (iterador.hasNext()) {
+                provider.defaultSerializeValue(iterador.next(), gerador);
+            }
+            gerador.writeEndArray();
+        }
+    }
+    
+    private static boolean isCadastroLocalizado(SefazConsultaCadastroResponseJDOM resposta) {
+        if (resposta == null || resposta.getInfCons() == null) {
+            return false;
+        }
+        String cStat = resposta.getInfCons().getcStat();
+        return "111".equals(cStat) || "112".equals(cStat);
+    }
+    
+    private static String chaveSefaz(String uf, String cnpj) {
+        return uf.toUpperCase() + ":" + cnpj;
+    }
+    
+    private static long chaveReceita(String cnpj) {
+        return Long.parseLong(cnpj);
+    }
+    
+    /**
+     * CNPJ numérico seguido de 3 dígitos da UF (letras codificadas em base 26)
+     */
+    private static long chaveSefazNumerica(String uf, String cnpj) {
+        String sigla = uf.toUpperCase();
+        int codigoUf = (sigla.charAt(0) - 'A') * 26 + (sigla.charAt(1) - 'A');
+        return Long.parseLong(cnpj) * 1000 + codigoUf;
+    }
+}
@@ -0,0 +1,404 @@
+package br.com.dabu.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Cache em disco (L2) sobre um arquivo de segmento mapeado em memória, que sobrevive a reinícios
+ *
+ * Formato: cabeçalho (assinatura, versão, posição de escrita) seguido de registros
+ * append-only [tamanho, tipo, chave, expiração, CRC32, conteúdo]. Uma nova gravação da
+ * mesma chave apenas torna a anterior obsoleta. O índice em memória (chave numérica ->
+ * posição) é reconstruído na abertura lendo os registros até o primeiro inválido.
+ *
+ * Quando o arquivo enche, registros obsoletos e expirados são descartados por compactação
+ * no próprio arquivo; se ainda faltar espaço, o mapeamento é ampliado. Uma queda durante a
+ * compactação pode perder entradas, o que é aceitável por se tratar apenas de cache.
+ */
+public class CacheDisco implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CacheDisco.class);
+    
+    public static final byte TIPO_RECEITA = 1;
+    public static final byte TIPO_SEFAZ = 2;
+    
+    public static final int TAMANHO_INICIAL_PADRAO = 64 * 1024 * 1024;
+    private static final int TAMANHO_MAXIMO = 1024 * 1024 * 1024;
+    
+    private static final int ASSINATURA = 0x4C32434E; // "L2CN"
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 16;
+    private static final int POSICAO_ESCRITA_CABECALHO = 8;
+    // tamanho(4) + tipo(1) + chave(8) + expiração(8) + crc(4)
+    private static final int TAMANHO_CABECALHO_REGISTRO = 25;
+    
+    private final Path arquivo;
+    private final FileChannel canal;
+    private final IndiceLongo[] indices = { null, new IndiceLongo(1024), new IndiceLongo(1024) };
+    private MappedByteBuffer mapa;
+    private int posicaoEscrita;
+    private long bytesObsoletos;
+    
+    private long acertos;
+    private long faltas;
+    private long remocoes;
+    private long expiracoes;
+    
+    private CacheDisco(Path arquivo, FileChannel canal, MappedByteBuffer mapa) {
+        this.arquivo = arquivo;
+        this.canal = canal;
+        this.mapa = mapa;
+    }
+    
+    /**
+     * Abre (ou cria) o arquivo de cache, reconstruindo o índice a partir dos registros válidos
+     *
+     * @param arquivo Arquivo de segmento
+     * @param tamanhoInicial Tamanho mínimo do mapeamento em bytes
+     * @return Cache pronto para uso
+     * @throws IOException Em caso de erro ao abrir ou mapear o arquivo
+     */
+    public static CacheDisco abrir(Path arquivo, int tamanhoInicial) throws IOException {
+        if (arquivo.getParent() != null) {
+            Files.createDirectories(arquivo.getParent());
+        }
+        
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long tamanho = Math.min(TAMANHO_MAXIMO, Math.max(canal.size(), Math.max(tamanhoInicial, 4096)));
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+            
+            CacheDisco cache = new CacheDisco(arquivo, canal, mapa);
+            cache.carregar();
+            
+            // Muitos registros obsoletos/expirados: compacta já na abertura
+            if (cache.bytesObsoletos > (cache.posicaoEscrita - TAMANHO_CABECALHO) / 2) {
+                cache.compactar();
+            }
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Lê o cabeçalho e os registros existentes, reconstruindo o índice
+     */
+    private void carregar() {
+        if (mapa.getInt(0) != ASSINATURA || mapa.getInt(4) != VERSAO) {
+            inicializar();
+            return;
+        }
+        
+        long limite = Math.min(mapa.getLong(POSICAO_ESCRITA_CABECALHO), mapa.capacity());
+        long agora = System.currentTimeMillis();
+        int posicao = TAMANHO_CABECALHO;
+        
+        while (posicao + TAMANHO_CABECALHO_REGISTRO <= limite) {
+            int tamanhoRegistro = validarRegistro(posicao, limite);
+            if (tamanhoRegistro < 0) {
+                logger.warn("Registro inválido na posição {} do cache em disco {}; descartando o restante", posicao, arquivo);
+                break;
+            }
+            
+            byte tipo = mapa.get(posicao + 4);
+            long chave = mapa.getLong(posicao + 5);
+            long expiraEm = mapa.getLong(posicao + 13);
+            
+            long anterior = indices[tipo].remover(chave);
+            if (anterior != IndiceLongo.AUSENTE) {
+                bytesObsoletos += tamanhoRegistroEm((int) anterior);
+            }
+            
+            if (expiraEm > agora) {
+                indices[tipo].colocar(chave, posicao);
+            } else {
+                bytesObsoletos += tamanhoRegistro;
+            }
+            posicao += tamanhoRegistro;
+        }
+        
+        definirPosicaoEscrita(posicao);
+        logger.info("Cache em disco carregado de {}: {} registros ReceitaWS, {} registros SEFAZ",
+            arquivo, indices[TIPO_RECEITA].getTamanho(), indices[TIPO_SEFAZ].getTamanho());
+    }
+    
+    private void inicializar() {
+        mapa.putInt(0, ASSINATURA);
+        mapa.putInt(4, VERSAO);
+        definirPosicaoEscrita(TAMANHO_CABECALHO);
+        for (int tipo = TIPO_RECEITA; tipo <= TIPO_SEFAZ; tipo++) {
+            indices[tipo].limpar();
+        }
+        bytesObsoletos = 0;
+    }
+    
+    /**
+     * Valida o registro na posição (limites, tipo e CRC)
+     *
+     * @return Tamanho total do registro ou -1 se inválido
+     */
+    private int validarRegistro(int posicao, long limite) {
+        int tamanhoConteudo = mapa.getInt(posicao);
+        byte tipo = mapa.get(posicao + 4);
+        if (tamanhoConteudo < 0 || (tipo != TIPO_RECEITA && tipo != TIPO_SEFAZ)
+                || posicao + (long) TAMANHO_CABECALHO_REGISTRO + tamanhoConteudo > limite) {
+            return -1;
+        }
+        
+        ByteBuffer conteudo = fatia(posicao + TAMANHO_CABECALHO_REGISTRO, tamanhoConteudo);
+        CRC32 crc = new CRC32();
+        crc.update(conteudo);
+        if ((int) crc.getValue() != mapa.getInt(posicao + 21)) {
+            return -1;
+        }
+        
+        return TAMANHO_CABECALHO_REGISTRO + tamanhoConteudo;
+    }
+    
+    /**
+     * Obtém o conteúdo gravado para a chave, se presente e não expirado
+     *
+     * @param tipo TIPO_RECEITA ou TIPO_SEFAZ
+     * @param chave Chave numérica (não negativa)
+     * @return Registro ou null
+     */
+    public synchronized RegistroDisco obter(byte tipo, long chave) {
+        if (!canal.isOpen()) {
+            return null;
+        }
+        
+        long posicao = indices[tipo].obter(chave);
+        if (posicao == IndiceLongo.AUSENTE) {
+            faltas++;
+            return null;
+        }
+        
+        int inicio = (int) posicao;
+        long expiraEm = mapa.getLong(inicio + 13);
+        if (expiraEm <= System.currentTimeMillis()) {
+            indices[tipo].remover(chave);
+            bytesObsoletos += tamanhoRegistroEm(inicio);
+            expiracoes++;
+            faltas++;
+            return null;
+        }
+        
+        byte[] conteudo = new byte[mapa.getInt(inicio)];
+        fatia(inicio + TAMANHO_CABECALHO_REGISTRO, conteudo.length).get(conteudo);
+        
+        acertos++;
+        return new RegistroDisco(conteudo, expiraEm);
+    }
+    
+    /**
+     * Grava o conteúdo da chave no final do segmento
+     *
+     * @param tipo TIPO_RECEITA ou TIPO_SEFAZ
+     * @param chave Chave numérica (não negativa)
+     * @param expiraEmMillis Instante de expiração (epoch em milissegundos)
+     * @param conteudo Conteúdo serializado
+     */
+    public synchronized void gravar(byte tipo, long chave, long expiraEmMillis, byte[] conteudo) {
+        if (!canal.isOpen()) {
+            return;
+        }
+        
+        int tamanhoRegistro = TAMANHO_CABECALHO_REGISTRO + conteudo.length;
+        if (!garantirEspaco(tamanhoRegistro)) {
+            logger.warn("Cache em disco {} cheio; registro de {} bytes não gravado", arquivo, tamanhoRegistro);
+            return;
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update(conteudo);
+        
+        int posicao = posicaoEscrita;
+        ByteBuffer destino = fatia(posicao, tamanhoRegistro);
+        destino.putInt(conteudo.length)
+               .put(tipo)
+               .putLong(chave)
+               .putLong(expiraEmMillis)
+               .putInt((int) crc.getValue())
+               .put(conteudo);
+        
+        // O cabeçalho só avança depois do registro completo
+        definirPosicaoEscrita(posicao + tamanhoRegistro);
+        
+        long anterior = indices[tipo].colocar(chave, posicao);
+        if (anterior != IndiceLongo.AUSENTE) {
+            bytesObsoletos += tamanhoRegistroEm((int) anterior);
+        }
+    }
+    
+    /**
+     * Remove a chave do índice (o espaço é recuperado na próxima compactação)
+     */
+    public synchronized void invalidar(byte tipo, long chave) {
+        long anterior = indices[tipo].remover(chave);
+        if (anterior != IndiceLongo.AUSENTE) {
+            bytesObsoletos += tamanhoRegistroEm((int) anterior);
+        }
+    }
+    
+    /**
+     * Descarta todos os registros
+     */
+    public synchronized void limpar() {
+        if (canal.isOpen()) {
+            inicializar();
+        }
+    }
+    
+    /**
+     * Garante espaço para o registro compactando e, se necessário, ampliando o mapeamento
+     */
+    private boolean garantirEspaco(int tamanhoRegistro) {
+        if ((long) posicaoEscrita + tamanhoRegistro <= mapa.capacity()) {
+            return true;
+        }
+        
+        compactar();
+        
+        // Mantém folga de metade do arquivo após compactar, evitando compactações seguidas
+        long necessario = (long) posicaoEscrita + tamanhoRegistro;
+        if (necessario <= mapa.capacity() && posicaoEscrita <= mapa.capacity() / 2) {
+            return true;
+        }
+        
+        long novoTamanho = Math.min(TAMANHO_MAXIMO, Math.max((long) mapa.capacity() * 2, necessario));
+        if (novoTamanho > mapa.capacity()) {
+            try {
+                mapa.force();
+                mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, novoTamanho);
+                logger.info("Cache em disco {} ampliado para {} bytes", arquivo, novoTamanho);
+            } catch (IOException e) {
+                logger.error("Erro ao ampliar cache em disco {}: {}", arquivo, e.getMessage(), e);
+            }
+        }
+        
+        return necessario <= mapa.capacity();
+    }
+    
+    /**
+     * Compacta o segmento no próprio arquivo, mantendo apenas os registros vigentes e não expirados
+     */
+    public synchronized void compactar() {
+        if (!canal.isOpen()) {
+            return;
+        }
+        
+        long agora = System.currentTimeMillis();
+        int totalVigentes = indices[TIPO_RECEITA].getTamanho() + indices[TIPO_SEFAZ].getTamanho();
+        long[] posicoes = new long[totalVigentes];
+        int n = 0;
+        for (int tipo = TIPO_RECEITA; tipo <= TIPO_SEFAZ; tipo++) {
+            for (long chave : indices[tipo].getChaves()) {
+                posicoes[n++] = indices[tipo].obter(chave);
+            }
+        }
+        // Ordem crescente de posição: cada registro só é movido para trás, sem sobrepor os seguintes
+        Arrays.sort(posicoes);
+        
+        int destino = TAMANHO_CABECALHO;
+        int descartados = 0;
+        for (long posicao : posicoes) {
+            int origem = (int) posicao;
+            int tamanhoRegistro = tamanhoRegistroEm(origem);
+            byte tipo = mapa.get(origem + 4);
+            long chave = mapa.getLong(origem + 5);
+            
+            if (mapa.getLong(origem + 13) <= agora) {
+                indices[tipo].remover(chave);
+                descartados++;
+                continue;
+            }
+            
+            if (origem != destino) {
+                byte[] registro = new byte[tamanhoRegistro];
+                fatia(origem, tamanhoRegistro).get(registro);
+                fatia(destino, tamanhoRegistro).put(registro);
+                indices[tipo].colocar(chave, destino);
+            }
+            destino += tamanhoRegistro;
+        }
+        
+        int liberados = posicaoEscrita - destino;
+        definirPosicaoEscrita(destino);
+        bytesObsoletos = 0;
+        expiracoes += descartados;
+        remocoes += descartados;
+        
+        logger.info("Cache em disco {} compactado: {} bytes liberados, {} registros expirados descartados",
+            arquivo, liberados, descartados);
+    }
+    
+    public synchronized EstatisticasCache getEstatisticas() {
+        int tamanho = indices[TIPO_RECEITA].getTamanho() + indices[TIPO_SEFAZ].getTamanho();
+        return new EstatisticasCache(acertos, faltas, remocoes, expiracoes, tamanho);
+    }
+    
+    public Path getArquivo() {
+        return arquivo;
+    }
+    
+    /**
+     * Sincroniza o mapeamento com o disco e fecha o arquivo
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (canal.isOpen()) {
+            mapa.force();
+            canal.close();
+        }
+    }
+    
+    private int tamanhoRegistroEm(int posicao) {
+        return TAMANHO_CABECALHO_REGISTRO + mapa.getInt(posicao);
+    }
+    
+    private void definirPosicaoEscrita(int posicao) {
+        posicaoEscrita = posicao;
+        mapa.putLong(POSICAO_ESCRITA_CABECALHO, posicao);
+    }
+    
+    private ByteBuffer fatia(int posicao, int tamanho) {
+        ByteBuffer fatia = mapa.duplicate();
+        fatia.limit(posicao + tamanho).position(posicao);
+        return fatia.slice();
+    }
+    
+    /**
+     * Conteúdo lido do cache em disco e seu instante de expiração
+     */
+    public static class RegistroDisco {
+        private final byte[] conteudo;
+        private final long expiraEmMillis;
+        
+        RegistroDisco(byte[] conteudo, long expiraEmMillis) {
+            this.conteudo = conteudo;
+            this.expiraEmMillis = expiraEmMillis;
+        }
+        
+        public byte[] getConteudo() {
+            return conteudo;
+        }
+        
+        public long getExpiraEmMillis() {
+            return expiraEmMillis;
+        }
+    }
+}
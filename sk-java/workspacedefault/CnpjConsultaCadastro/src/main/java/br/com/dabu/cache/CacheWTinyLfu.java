@@ -0,0 +1,228 @@
+package br.com.dabu.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache limitado com política W-TinyLFU e expiração por entrada
+ *
+ * Estrutura: uma janela LRU pequena (1% da capacidade) recebe as novas entradas;
+ * ao transbordar, a entrada mais antiga da janela disputa uma vaga na área principal
+ * (SLRU: probatória + protegida) com a vítima da área probatória. Vence quem tem a
+ * maior frequência estimada pelo sketch, evitando que consultas avulsas (ex.: um lote
+ * de CNPJs consultados uma única vez) expulsem os CNPJs mais acessados.
+ *
+ * Todas as operações são sincronizadas; o custo é desprezível frente às consultas remotas.
+ *
+ * @param <K> Tipo da chave
+ * @param <V> Tipo do valor
+ */
+public class CacheWTinyLfu<K, V> {
+    
+    private static final double PERCENTUAL_JANELA = 0.01;
+    private static final double PERCENTUAL_PROTEGIDA = 0.80;
+    
+    private final int capacidade;
+    private final int capacidadeJanela;
+    private final int capacidadePrincipal;
+    private final int capacidadeProtegida;
+    
+    private final LinkedHashMap<K, Entrada<V>> janela = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entrada<V>> probatoria = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entrada<V>> protegida = new LinkedHashMap<>(16, 0.75f, true);
+    private final SketchFrequencia sketch;
+    
+    private long acertos;
+    private long faltas;
+    private long remocoes;
+    private long expiracoes;
+    
+    /**
+     * @param capacidade Número máximo de entradas (mínimo 2)
+     */
+    public CacheWTinyLfu(int capacidade) {
+        if (capacidade < 2) {
+            throw new IllegalArgumentException("capacidade deve ser maior que 1");
+        }
+        this.capacidade = capacidade;
+        this.capacidadeJanela = Math.max(1, (int) (capacidade * PERCENTUAL_JANELA));
+        this.capacidadePrincipal = capacidade - capacidadeJanela;
+        this.capacidadeProtegida = (int) (capacidadePrincipal * PERCENTUAL_PROTEGIDA);
+        this.sketch = new SketchFrequencia(capacidade);
+    }
+    
+    /**
+     * Obtém o valor da chave, se presente e dentro do TTL
+     *
+     * @param chave Chave procurada
+     * @return Valor em cache ou null
+     */
+    public synchronized V obter(K chave) {
+        sketch.incrementar(chave);
+        
+        Entrada<V> entrada = janela.get(chave);
+        if (entrada == null) {
+            entrada = protegida.get(chave);
+        }
+        if (entrada == null) {
+            entrada = probatoria.remove(chave);
+            if (entrada != null) {
+                promover(chave, entrada);
+            }
+        }
+        
+        if (entrada == null) {
+            faltas++;
+            return null;
+        }
+        
+        if (entrada.isExpirada(System.nanoTime())) {
+            remover(chave);
+            expiracoes++;
+            faltas++;
+            return null;
+        }
+        
+        acertos++;
+        return entrada.valor;
+    }
+    
+    /**
+     * Armazena o valor pelo tempo informado
+     *
+     * @param chave Chave
+     * @param valor Valor (não nulo)
+     * @param ttlMillis Tempo de vida em milissegundos; valores <= 0 não armazenam
+     */
+    public synchronized void armazenar(K chave, V valor, long ttlMillis) {
+        if (valor == null || ttlMillis <= 0) {
+            return;
+        }
+        
+        sketch.incrementar(chave);
+        Entrada<V> nova = new Entrada<>(valor, System.nanoTime() + ttlMillis * 1_000_000L);
+        
+        // Atualização de chave existente mantém a posição da entrada
+        if (janela.containsKey(chave)) {
+            janela.put(chave, nova);
+            return;
+        }
+        if (protegida.containsKey(chave)) {
+            protegida.put(chave, nova);
+            return;
+        }
+        if (probatoria.remove(chave) != null) {
+            promover(chave, nova);
+            return;
+        }
+        
+        janela.put(chave, nova);
+        if (janela.size() > capacidadeJanela) {
+            Iterator<Map.Entry<K, Entrada<V>>> it = janela.entrySet().iterator();
+            Map.Entry<K, Entrada<V>> candidata = it.next();
+            it.remove();
+            admitir(candidata.getKey(), candidata.getValue());
+        }
+    }
+    
+    /**
+     * Remove a chave do cache
+     */
+    public synchronized void invalidar(K chave) {
+        remover(chave);
+    }
+    
+    /**
+     * Remove todas as entradas, mantendo os contadores
+     */
+    public synchronized void limpar() {
+        janela.clear();
+        probatoria.clear();
+        protegida.clear();
+    }
+    
+    public synchronized int getTamanho() {
+        return janela.size() + probatoria.size() + protegida.size();
+    }
+    
+    public int getCapacidade() {
+        return capacidade;
+    }
+    
+    public synchronized EstatisticasCache getEstatisticas() {
+        return new EstatisticasCache(acertos, faltas, remocoes, expiracoes, getTamanho());
+    }
+    
+    /**
+     * Decide se a candidata vinda da janela entra na área principal (admissão TinyLFU)
+     */
+    private void admitir(K chave, Entrada<V> candidata) {
+        long agora = System.nanoTime();
+        if (candidata.isExpirada(agora)) {
+            expiracoes++;
+            return;
+        }
+        
+        if (probatoria.size() + protegida.size() < capacidadePrincipal) {
+            probatoria.put(chave, candidata);
+            return;
+        }
+        
+        LinkedHashMap<K, Entrada<V>> segmentoVitima = !probatoria.isEmpty() ? probatoria : protegida;
+        if (segmentoVitima.isEmpty()) {
+            remocoes++;
+            return;
+        }
+        
+        Iterator<Map.Entry<K, Entrada<V>>> it = segmentoVitima.entrySet().iterator();
+        Map.Entry<K, Entrada<V>> vitima = it.next();
+        
+        if (vitima.getValue().isExpirada(agora)) {
+            it.remove();
+            expiracoes++;
+            probatoria.put(chave, candidata);
+            return;
+        }
+        
+        if (sketch.frequencia(chave) > sketch.frequencia(vitima.getKey())) {
+            it.remove();
+            probatoria.put(chave, candidata);
+        }
+        remocoes++;
+    }
+    
+    /**
+     * Move a entrada acessada novamente para a área protegida,
+     * rebaixando para a probatória a mais antiga se a protegida transbordar
+     */
+    private void promover(K chave, Entrada<V> entrada) {
+        protegida.put(chave, entrada);
+        if (protegida.size() > capacidadeProtegida) {
+            Iterator<Map.Entry<K, Entrada<V>>> it = protegida.entrySet().iterator();
+            Map.Entry<K, Entrada<V>> rebaixada = it.next();
+            it.remove();
+            probatoria.put(rebaixada.getKey(), rebaixada.getValue());
+        }
+    }
+    
+    private void remover(K chave) {
+        if (janela.remove(chave) == null && probatoria.remove(chave) == null) {
+            protegida.remove(chave);
+        }
+    }
+    
+    private static final class Entrada<V> {
+        private final V valor;
+        private final long expiraEmNanos;
+        
+        Entrada(V valor, long expiraEmNanos) {
+            this.valor = valor;
+            this.expiraEmNanos = expiraEmNanos;
+        }
+        
+        boolean isExpirada(long agoraNanos) {
+            return agoraNanos - expiraEmNanos >= 0;
+        }
+    }
+}
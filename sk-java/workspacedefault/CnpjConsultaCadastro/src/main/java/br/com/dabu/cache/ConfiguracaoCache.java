@@ -0,0 +1,139 @@
+package br.com.dabu.cache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuração do cache de consultas: capacidade e TTL de cada fonte
+ *
+ * Os dados cadastrais da Receita mudam pouco e têm TTL longo; a situação da IE na
+ * SEFAZ muda com mais frequência e tem TTL curto. O TTL pode ser ajustado por
+ * situação, por exemplo um TTL bem maior para empresas BAIXADA.
+ *
+ * Opcionalmente, um arquivo de cache em disco mantém os dados entre reinícios.
+ */
+public class ConfiguracaoCache {
+    
+    public static final int CAPACIDADE_PADRAO = 10_000;
+    public static final Duration TTL_RECEITA_PADRAO = Duration.ofDays(7);
+    public static final Duration TTL_SEFAZ_PADRAO = Duration.ofHours(6);
+    
+    private boolean habilitado = true;
+    private int capacidadeReceita = CAPACIDADE_PADRAO;
+    private int capacidadeSefaz = CAPACIDADE_PADRAO;
+    private Duration ttlReceita = TTL_RECEITA_PADRAO;
+    private Duration ttlSefaz = TTL_SEFAZ_PADRAO;
+    private final Map<String, Duration> ttlReceitaPorSituacao = new HashMap<>();
+    private final Map<String, Duration> ttlSefazPorSituacao = new HashMap<>();
+    private Path arquivoDisco;
+    private int tamanhoInicialDisco = CacheDisco.TAMANHO_INICIAL_PADRAO;
+    
+    public ConfiguracaoCache() {
+        // Situação definitiva: praticamente não muda mais
+        ttlReceitaPorSituacao.put("BAIXADA", Duration.ofDays(90));
+        ttlReceitaPorSituacao.put("NULA", Duration.ofDays(90));
+    }
+    
+    /**
+     * Obtém o TTL para a situação cadastral da Receita (ex.: ATIVA, BAIXADA, INAPTA)
+     */
+    public Duration getTtlReceita(String situacao) {
+        Duration ttl = situacao != null ? ttlReceitaPorSituacao.get(situacao.trim().toUpperCase()) : null;
+        return ttl != null ? ttl : ttlReceita;
+    }
+    
+    /**
+     * Obtém o TTL para a situação da IE na SEFAZ (cSit: 0 - não habilitado, 1 - habilitado)
+     */
+    public Duration getTtlSefaz(String cSit) {
+        Duration ttl = cSit != null ? ttlSefazPorSituacao.get(cSit.trim()) : null;
+        return ttl != null ? ttl : ttlSefaz;
+    }
+    
+    /**
+     * Define o TTL dos dados da Receita para uma situação cadastral específica
+     * Duration.ZERO faz com que essa situação não seja armazenada
+     */
+    public void setTtlReceitaPorSituacao(String situacao, Duration ttl) {
+        ttlReceitaPorSituacao.put(situacao.trim().toUpperCase(), ttl);
+    }
+    
+    /**
+     * Define o TTL dos dados da SEFAZ para um cSit específico
+     * Duration.ZERO faz com que essa situação não seja armazenada
+     */
+    public void setTtlSefazPorSituacao(String cSit, Duration ttl) {
+        ttlSefazPorSituacao.put(cSit.trim(), ttl);
+    }
+    
+    // Getters e Setters
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+    
+    public void setHabilitado(boolean habilitado) {
+        this.habilitado = habilitado;
+    }
+    
+    public int getCapacidadeReceita() {
+        return capacidadeReceita;
+    }
+    
+    public void setCapacidadeReceita(int capacidadeReceita) {
+        this.capacidadeReceita = capacidadeReceita;
+    }
+    
+    public int getCapacidadeSefaz() {
+        return capacidadeSefaz;
+    }
+    
+    public void setCapacidadeSefaz(int capacidadeSefaz) {
+        this.capacidadeSefaz = capacidadeSefaz;
+    }
+    
+    public Duration getTtlReceita() {
+        return ttlReceita;
+    }
+    
+    /**
+     * Define o TTL padrão dos dados da Receita (situações sem TTL específico)
+     */
+    public void setTtlReceita(Duration ttlReceita) {
+        this.ttlReceita = ttlReceita;
+    }
+    
+    public Duration getTtlSefaz() {
+        return ttlSefaz;
+    }
+    
+    /**
+     * Define o TTL padrão dos dados da SEFAZ (situações sem TTL específico)
+     */
+    public void setTtlSefaz(Duration ttlSefaz) {
+        this.ttlSefaz = ttlSefaz;
+    }
+    
+    public Path getArquivoDisco() {
+        return arquivoDisco;
+    }
+    
+    /**
+     * Define o arquivo do cache em disco (L2); se não informado, o cache fica só em memória
+     */
+    public void setArquivoDisco(Path arquivoDisco) {
+        this.arquivoDisco = arquivoDisco;
+    }
+    
+    public int getTamanhoInicialDisco() {
+        return tamanhoInicialDisco;
+    }
+    
+    /**
+     * Define o tamanho inicial em bytes do arquivo de cache em disco (ampliado conforme necessário)
+     */
+    public void setTamanhoInicialDisco(int tamanhoInicialDisco) {
+        this.tamanhoInicialDisco = tamanhoInicialDisco;
+    }
+}
@@ -0,0 +1,67 @@
+package br.com.dabu.cache;
+
+/**
+ * Fotografia dos contadores de um cache
+ */
+public class EstatisticasCache {
+    
+    private final long acertos;
+    private final long faltas;
+    private final long remocoes;
+    private final long expiracoes;
+    private final int tamanho;
+    
+    public EstatisticasCache(long acertos, long faltas, long remocoes, long expiracoes, int tamanho) {
+        this.acertos = acertos;
+        this.faltas = faltas;
+        this.remocoes = remocoes;
+        this.expiracoes = expiracoes;
+        this.tamanho = tamanho;
+    }
+    
+    public long getAcertos() {
+        return acertos;
+    }
+    
+    public long getFaltas() {
+        return faltas;
+    }
+    
+    /**
+     * Entradas descartadas por falta de espaço (incluindo candidatas não admitidas)
+     */
+    public long getRemocoes() {
+        return remocoes;
+    }
+    
+    /**
+     * Entradas descartadas por TTL vencido
+     */
+    public long getExpiracoes() {
+        return expiracoes;
+    }
+    
+    public int getTamanho() {
+        return tamanho;
+    }
+    
+    /**
+     * Percentual de acertos sobre o total de leituras (0 a 1)
+     */
+    public double getTaxaAcerto() {
+        long total = acertos + faltas;
+        return total == 0 ? 0 : (double) acertos / total;
+    }
+    
+    @Override
+    public String toString() {
+        return "EstatisticasCache{" +
+                "acertos=" + acertos +
+                ", faltas=" + faltas +
+                ", remocoes=" + remocoes +
+                ", expiracoes=" + expiracoes +
+                ", tamanho=" + tamanho +
+                ", taxaAcerto=" + String.format("%.2f", getTaxaAcerto()) +
+                '}';
+    }
+}
@@ -0,0 +1,138 @@
+package br.com.dabu.cache;
+
+import java.util.Arrays;
+
+/**
+ * Tabela hash de chaves long para valores long com endereçamento aberto
+ * Usada como índice compacto (CNPJ numérico -> posição no arquivo) sem objetos por entrada.
+ * Chaves devem ser não negativas. Não é thread-safe.
+ */
+final class IndiceLongo {
+    
+    static final long AUSENTE = -1;
+    
+    private long[] chaves;
+    private long[] valores;
+    private int mascara;
+    private int tamanho;
+    
+    IndiceLongo(int capacidadeInicial) {
+        int slots = Integer.highestOneBit(Math.max(16, capacidadeInicial * 2) - 1) << 1;
+        alocar(slots);
+    }
+    
+    private void alocar(int slots) {
+        chaves = new long[slots];
+        valores = new long[slots];
+        Arrays.fill(chaves, AUSENTE);
+        mascara = slots - 1;
+    }
+    
+    long obter(long chave) {
+        for (int i = indice(chave); ; i = (i + 1) & mascara) {
+            if (chaves[i] == chave) {
+                return valores[i];
+            }
+            if (chaves[i] == AUSENTE) {
+                return AUSENTE;
+            }
+        }
+    }
+    
+    /**
+     * Associa o valor à chave
+     *
+     * @return Valor anterior ou AUSENTE
+     */
+    long colocar(long chave, long valor) {
+        if ((tamanho + 1) * 2 > chaves.length) {
+            redimensionar();
+        }
+        
+        for (int i = indice(chave); ; i = (i + 1) & mascara) {
+            if (chaves[i] == chave) {
+                long anterior = valores[i];
+                valores[i] = valor;
+                return anterior;
+            }
+            if (chaves[i] == AUSENTE) {
+                chaves[i] = chave;
+                valores[i] = valor;
+                tamanho++;
+                return AUSENTE;
+            }
+        }
+    }
+    
+    /**
+     * Remove a chave, reposicionando as entradas seguintes da sequência de sondagem
+     *
+     * @return Valor removido ou AUSENTE
+     */
+    long remover(long chave) {
+        int i = indice(chave);
+        while (chaves[i] != chave) {
+            if (chaves[i] == AUSENTE) {
+                return AUSENTE;
+            }
+            i = (i + 1) & mascara;
+        }
+        
+        long removido = valores[i];
+        tamanho--;
+        
+        int vazio = i;
+        for (int j = (i + 1) & mascara; chaves[j] != AUSENTE; j = (j + 1) & mascara) {
+            int ideal = indice(chaves[j]);
+            // Move a entrada j para o buraco se o buraco estiver entre sua posição ideal e j
+            if (((j - ideal) & mascara) >= ((j - vazio) & mascara)) {
+                chaves[vazio] = chaves[j];
+                valores[vazio] = valores[j];
+                vazio = j;
+            }
+        }
+        chaves[vazio] = AUSENTE;
+        
+        return removido;
+    }
+    
+    int getTamanho() {
+        return tamanho;
+    }
+    
+    void limpar() {
+        Arrays.fill(chaves, AUSENTE);
+        tamanho = 0;
+    }
+    
+    /**
+     * Copia as chaves presentes (ordem indefinida)
+     */
+    long[] getChaves() {
+        long[] resultado = new long[tamanho];
+        int n = 0;
+        for (long chave : chaves) {
+            if (chave != AUSENTE) {
+                resultado[n++] = chave;
+            }
+        }
+        return resultado;
+    }
+    
+    private void redimensionar() {
+        long[] chavesAntigas = chaves;
+        long[] valoresAntigos = valores;
+        alocar(chaves.length * 2);
+        tamanho = 0;
+        for (int i = 0; i < chavesAntigas.length; i++) {
+            if (chavesAntigas[i] != AUSENTE) {
+                colocar(chavesAntigas[i], valoresAntigos[i]);
+            }
+        }
+    }
+    
+    private int indice(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+}
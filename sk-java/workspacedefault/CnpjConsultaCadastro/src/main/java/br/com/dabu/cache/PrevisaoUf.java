@@ -0,0 +1,83 @@
+package br.com.dabu.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Previsão da UF de um CNPJ aprendida das consultas anteriores à ReceitaWS
+ *
+ * Guarda a UF do CNPJ completo e a da raiz (8 primeiros dígitos), usada quando o
+ * estabelecimento ainda não foi visto: filiais costumam estar na mesma UF da matriz.
+ * A UF raramente muda, então a previsão vale muito além do TTL dos dados da ReceitaWS.
+ */
+public class PrevisaoUf {
+    
+    public static final int CAPACIDADE_PADRAO = 50_000;
+    private static final long VALIDADE_MILLIS = TimeUnit.DAYS.toMillis(180);
+    
+    private final CacheWTinyLfu<String, String> ufPorCnpj;
+    private final CacheWTinyLfu<String, String> ufPorRaiz;
+    
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong erros = new AtomicLong();
+    
+    public PrevisaoUf() {
+        this(CAPACIDADE_PADRAO);
+    }
+    
+    public PrevisaoUf(int capacidade) {
+        this.ufPorCnpj = new CacheWTinyLfu<>(capacidade);
+        this.ufPorRaiz = new CacheWTinyLfu<>(capacidade);
+    }
+    
+    /**
+     * Registra a UF informada pela ReceitaWS para o CNPJ
+     *
+     * @param cnpjLimpo CNPJ apenas com números
+     * @param uf UF do estabelecimento
+     */
+    public void aprender(String cnpjLimpo, String uf) {
+        if (cnpjLimpo == null || cnpjLimpo.length() != 14 || uf == null || uf.trim().isEmpty()) {
+            return;
+        }
+        
+        String ufNormalizada = uf.trim().toUpperCase();
+        ufPorCnpj.armazenar(cnpjLimpo, ufNormalizada, VALIDADE_MILLIS);
+        ufPorRaiz.armazenar(cnpjLimpo.substring(0, 8), ufNormalizada, VALIDADE_MILLIS);
+    }
+    
+    /**
+     * Obtém a UF provável do CNPJ
+     *
+     * @param cnpjLimpo CNPJ apenas com números
+     * @return UF do próprio CNPJ, da raiz ou null se nenhum estabelecimento da empresa foi visto
+     */
+    public String prever(String cnpjLimpo) {
+        if (cnpjLimpo == null || cnpjLimpo.length() != 14) {
+            return null;
+        }
+        
+        String uf = ufPorCnpj.obter(cnpjLimpo);
+        return uf != null ? uf : ufPorRaiz.obter(cnpjLimpo.substring(0, 8));
+    }
+    
+    /**
+     * Registra se a UF prevista foi confirmada pela ReceitaWS
+     */
+    public void registrarResultado(boolean acertou) {
+        (acertou ? acertos : erros).incrementAndGet();
+    }
+    
+    public long getAcertos() {
+        return acertos.get();
+    }
+    
+    public long getErros() {
+        return erros.get();
+    }
+    
+    public void limpar() {
+        ufPorCnpj.limpar();
+        ufPorRaiz.limpar();
+    }
+}
@@ -0,0 +1,84 @@
+package br.com.dabu.cache;
+
+/**
+ * Estimador de frequência de acesso (Count-Min Sketch com contadores de 4 bits)
+ * usado pela admissão TinyLFU. Os contadores são reduzidos à metade a cada
+ * período de amostragem, de modo que o histórico antigo perde peso com o tempo.
+ */
+final class SketchFrequencia {
+    
+    private static final long[] SEMENTES = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long MASCARA_RESET = 0x7777777777777777L;
+    private static final int FREQUENCIA_MAXIMA = 15;
+    
+    private final long[] tabela;
+    private final int mascara;
+    private final int tamanhoAmostra;
+    private int incrementos;
+    
+    SketchFrequencia(int capacidade) {
+        int tamanhoTabela = Integer.highestOneBit(Math.max(8, capacidade) - 1) << 1;
+        this.tabela = new long[tamanhoTabela];
+        this.mascara = tamanhoTabela - 1;
+        this.tamanhoAmostra = 10 * Math.max(8, capacidade);
+    }
+    
+    /**
+     * Frequência estimada da chave (0 a 15)
+     */
+    int frequencia(Object chave) {
+        int hash = espalhar(chave.hashCode());
+        int frequencia = FREQUENCIA_MAXIMA;
+        for (int i = 0; i < SEMENTES.length; i++) {
+            long h = misturar(hash, SEMENTES[i]);
+            int indice = (int) (h >>> 32) & mascara;
+            int deslocamento = (int) (h & 15) << 2;
+            frequencia = Math.min(frequencia, (int) ((tabela[indice] >>> deslocamento) & 0xF));
+        }
+        return frequencia;
+    }
+    
+    /**
+     * Registra um acesso à chave
+     */
+    void incrementar(Object chave) {
+        int hash = espalhar(chave.hashCode());
+        boolean incrementou = false;
+        for (int i = 0; i < SEMENTES.length; i++) {
+            long h = misturar(hash, SEMENTES[i]);
+            int indice = (int) (h >>> 32) & mascara;
+            int deslocamento = (int) (h & 15) << 2;
+            if (((tabela[indice] >>> deslocamento) & 0xF) < FREQUENCIA_MAXIMA) {
+                tabela[indice] += 1L << deslocamento;
+                incrementou = true;
+            }
+        }
+        
+        if (incrementou && ++incrementos >= tamanhoAmostra) {
+            reduzir();
+        }
+    }
+    
+    /**
+     * Reduz todos os contadores à metade (envelhecimento)
+     */
+    private void reduzir() {
+        for (int i = 0; i < tabela.length; i++) {
+            tabela[i] = (tabela[i] >>> 1) & MASCARA_RESET;
+        }
+        incrementos /= 2;
+    }
+    
+    private static int espalhar(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+    
+    private static long misturar(int hash, long semente) {
+        long h = (hash + semente) * semente;
+        return h + (h >>> 32);
+    }
+}
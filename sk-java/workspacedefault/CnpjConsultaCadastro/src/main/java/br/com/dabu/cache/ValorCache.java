@@ -0,0 +1,27 @@
+package br.com.dabu.cache;
+
+import br.com.dabu.model.OrigemDados;
+
+/**
+ * Valor encontrado no cache e o nível de onde veio
+ *
+ * @param <V> Tipo do valor
+ */
+public class ValorCache<V> {
+    
+    private final V valor;
+    private final OrigemDados origem;
+    
+    public ValorCache(V valor, OrigemDados origem) {
+        this.valor = valor;
+        this.origem = origem;
+    }
+    
+    public V getValor() {
+        return valor;
+    }
+    
+    public OrigemDados getOrigem() {
+        return origem;
+    }
+}
@@ -19,6 +19,9 @@ public class CnpjConsultaDTO {
     // Status das consultas
     private boolean receitaWSSucesso;
     private boolean sefazSucesso;
+    private OrigemDados origemReceitaWS;
+    private OrigemDados origemSefaz;
+    private StatusSefaz statusSefaz;
     private String mensagemErro;
     
     // Dados ReceitaWS
@@ -49,13 +52,19 @@ public class CnpjConsultaDTO {
         this.consultaTimestamp = resultado.getConsultaTimestamp();
         this.mensagemErro = resultado.getMensagemErro();
         
+        // Dados da ReceitaWS ainda não consultados (consulta apenas SEFAZ) não são buscados aqui
+        ReceitaWSResponse dadosReceita = resultado.isReceitaWSPendente() ? null : resultado.getDadosReceitaWS();
+        
         // Status das consultas
-        this.receitaWSSucesso = resultado.getDadosReceitaWS() != null;
+        this.receitaWSSucesso = dadosReceita != null;
         this.sefazSucesso = resultado.getDadosSefazJDOM() != null;
+        this.origemReceitaWS = resultado.getOrigemReceitaWS();
+        this.origemSefaz = resultado.getOrigemSefaz();
+        this.statusSefaz = resultado.getStatusSefaz();
         
         // Popula dados ReceitaWS
-        if (resultado.getDadosReceitaWS() != null) {
-            this.receitaWSData = new ReceitaWSData(resultado.getDadosReceitaWS());
+        if (dadosReceita != null) {
+            this.receitaWSData = new ReceitaWSData(dadosReceita);
         }
         
         // Popula dados SEFAZ
@@ -490,6 +499,15 @@ public class CnpjConsultaDTO {
     public boolean isSefazSucesso() { return sefazSucesso; }
     public void setSefazSucesso(boolean sefazSucesso) { this.sefazSucesso = sefazSucesso; }
     
+    public OrigemDados getOrigemReceitaWS() { return origemReceitaWS; }
+    public void setOrigemReceitaWS(OrigemDados origemReceitaWS) { this.origemReceitaWS = origemReceitaWS; }
+    
+    public OrigemDados getOrigemSefaz() { return origemSefaz; }
+    public void setOrigemSefaz(OrigemDados origemSefaz) { this.origemSefaz = origemSefaz; }
+    
+    public StatusSefaz getStatusSefaz() { return statusSefaz; }
+    public void setStatusSefaz(StatusSefaz statusSefaz) { this.statusSefaz = statusSefaz; }
+    
     public String getMensagemErro() { return mensagemErro; }
     public void setMensagemErro(String mensagemErro) { this.mensagemErro = mensagemErro; }
     
@@ -506,8 +524,10 @@ public class CnpjConsultaDTO {
         StringBuilder resumo = new StringBuilder();
         resumo.append("=== RESUMO DAS CONSULTAS ===\n");
         resumo.append("CNPJ: ").append(cnpj).append("\n");
-        resumo.append("ReceitaWS: ").append(receitaWSSucesso ? "✓ Sucesso" : "✗ Erro").append("\n");
-        resumo.append("SEFAZ: ").append(sefazSucesso ? "✓ Sucesso" : "✗ Erro").append("\n");
+        resumo.append("ReceitaWS: ").append(receitaWSSucesso ? "✓ Sucesso" : "✗ Erro")
+              .append(origemReceitaWS != null && origemReceitaWS.isCache() ? " (cache)" : "").append("\n");
+        resumo.append("SEFAZ: ").append(sefazSucesso ? "✓ Sucesso" : "✗ " + (statusSefaz != null ? statusSefaz.getDescricao() : "Erro"))
+              .append(origemSefaz != null && origemSefaz.isCache() ? " (cache)" : "").append("\n");
         resumo.append("Timestamp: ").append(consultaTimestamp != null ? consultaTimestamp : "N/A").append("\n");
         
         if (mensagemErro != null && !mensagemErro.isEmpty()) {
@@ -1,5 +1,8 @@
 package br.com.dabu.model;
 
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * Modelo para resultado consolidado da consulta de CNPJ
  * Combina informações da ReceitaWS e SEFAZ
@@ -13,9 +16,21 @@ public class CnpjConsultaResult {
     // Dados da ReceitaWS
     private ReceitaWSResponse dadosReceitaWS;
     
+    // Consulta da ReceitaWS adiada até a primeira leitura (consulta apenas SEFAZ)
+    private volatile Supplier<ReceitaWSResponse> carregadorReceitaWS;
+    
     // Dados da SEFAZ (versão JDOM)
     private SefazConsultaCadastroResponseJDOM dadosSefazJDOM;
     
+    // Origem de cada parte (consulta online ou cache)
+    private OrigemDados origemReceitaWS;
+    private OrigemDados origemSefaz;
+    private StatusSefaz statusSefaz;
+    
+    // Consulta em várias UFs: inscrições de todas as UFs e a situação de cada UF
+    private List<SefazConsultaCadastroResponseJDOM.InfCad> inscricoesEstaduais;
+    private List<SefazConsultaUfResult> resultadosUf;
+    
     // Dados consolidados principais
     private String razaoSocial;
     private String nomeFantasia;
@@ -60,12 +75,38 @@ public class CnpjConsultaResult {
         this.mensagemErro = mensagemErro;
     }
     
-    public ReceitaWSResponse getDadosReceitaWS() {
+    /**
+     * Obtém os dados da ReceitaWS
+     * Na consulta apenas SEFAZ, a ReceitaWS é consultada somente na primeira chamada deste método;
+     * chamadas concorrentes aguardam essa consulta. Se ela lançar exceção, a próxima leitura tenta de novo
+     */
+    public synchronized ReceitaWSResponse getDadosReceitaWS() {
+        Supplier<ReceitaWSResponse> carregador = carregadorReceitaWS;
+        if (carregador != null) {
+            dadosReceitaWS = carregador.get();
+            // Só depois de obtido o valor, para que ninguém veja o carregador vazio e os dados ainda nulos
+            carregadorReceitaWS = null;
+        }
         return dadosReceitaWS;
     }
     
-    public void setDadosReceitaWS(ReceitaWSResponse dadosReceitaWS) {
+    public synchronized void setDadosReceitaWS(ReceitaWSResponse dadosReceitaWS) {
         this.dadosReceitaWS = dadosReceitaWS;
+        this.carregadorReceitaWS = null;
+    }
+    
+    /**
+     * Define como obter os dados da ReceitaWS quando forem lidos pela primeira vez
+     */
+    public void setCarregadorReceitaWS(Supplier<ReceitaWSResponse> carregadorReceitaWS) {
+        this.carregadorReceitaWS = carregadorReceitaWS;
+    }
+    
+    /**
+     * Indica se os dados da ReceitaWS ainda não foram consultados (serão na primeira leitura)
+     */
+    public boolean isReceitaWSPendente() {
+        return carregadorReceitaWS != null;
     }
     
     public SefazConsultaCadastroResponseJDOM getDadosSefazJDOM() {
@@ -76,6 +117,46 @@ public class CnpjConsultaResult {
         this.dadosSefazJDOM = dadosSefazJDOM;
     }
     
+    public OrigemDados getOrigemReceitaWS() {
+        return origemReceitaWS;
+    }
+    
+    public void setOrigemReceitaWS(OrigemDados origemReceitaWS) {
+        this.origemReceitaWS = origemReceitaWS;
+    }
+    
+    public OrigemDados getOrigemSefaz() {
+        return origemSefaz;
+    }
+    
+    public void setOrigemSefaz(OrigemDados origemSefaz) {
+        this.origemSefaz = origemSefaz;
+    }
+    
+    public StatusSefaz getStatusSefaz() {
+        return statusSefaz;
+    }
+    
+    public void setStatusSefaz(StatusSefaz statusSefaz) {
+        this.statusSefaz = statusSefaz;
+    }
+    
+    public List<SefazConsultaCadastroResponseJDOM.InfCad> getInscricoesEstaduais() {
+        return inscricoesEstaduais;
+    }
+    
+    public void setInscricoesEstaduais(List<SefazConsultaCadastroResponseJDOM.InfCad> inscricoesEstaduais) {
+        this.inscricoesEstaduais = inscricoesEstaduais;
+    }
+    
+    public List<SefazConsultaUfResult> getResultadosUf() {
+        return resultadosUf;
+    }
+    
+    public void setResultadosUf(List<SefazConsultaUfResult> resultadosUf) {
+        this.resultadosUf = resultadosUf;
+    }
+    
     public String getRazaoSocial() {
         return razaoSocial;
     }
@@ -0,0 +1,20 @@
+package br.com.dabu.model;
+
+/**
+ * Origem de uma parte do resultado da consulta de CNPJ
+ */
+public enum OrigemDados {
+    /** Obtido da API (ReceitaWS ou webservice SEFAZ) nesta consulta */
+    CONSULTA,
+    /** Obtido do cache em memória */
+    CACHE_MEMORIA,
+    /** Obtido do cache em disco (persistido entre reinícios) */
+    CACHE_DISCO;
+    
+    /**
+     * Indica se o dado veio de algum cache
+     */
+    public boolean isCache() {
+        return this != CONSULTA;
+    }
+}
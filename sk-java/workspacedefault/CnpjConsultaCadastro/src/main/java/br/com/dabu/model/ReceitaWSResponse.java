@@ -147,6 +147,9 @@ public class ReceitaWSResponse {
     @JsonProperty("status")
     private String status;
 
+    @JsonProperty("message")
+    private String mensagem;
+
     @JsonProperty("efr")
     private String efr;
 
@@ -563,6 +566,14 @@ public class ReceitaWSResponse {
         this.billing = billing;
     }
 
+    public String getMensagem() {
+        return mensagem;
+    }
+
+    public void setMensagem(String mensagem) {
+        this.mensagem = mensagem;
+    }
+
     @Override
     public String toString() {
         return "ReceitaWSResponse{" +
@@ -1,5 +1,6 @@
 package br.com.dabu.model;
 
+import br.com.dabu.util.ListaInfCadSobDemanda;
 import br.com.dabu.util.XMLUtil;
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -7,6 +8,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -50,20 +53,20 @@ public class SefazConsultaCadastroResponseJDOM {
     private void parseDocument(Document document) {
         Element root = document.getRootElement();
         
-        logger.info("=== DEBUG PARSING JDOM ===");
-        logger.info("Root element: {}", root.getName());
-        logger.info("Root namespace: {}", root.getNamespaceURI());
-        logger.info("Root children count: {}", root.getChildren().size());
+        logger.debug("=== DEBUG PARSING JDOM ===");
+        logger.debug("Root element: {}", root.getName());
+        logger.debug("Root namespace: {}", root.getNamespaceURI());
+        logger.debug("Root children count: {}", root.getChildren().size());
         
         // Log de todos os elementos filhos
         for (Element child : root.getChildren()) {
-            logger.info("Child element: {} (namespace: {})", child.getName(), child.getNamespaceURI());
+            logger.debug("Child element: {} (namespace: {})", child.getName(), child.getNamespaceURI());
         }
         
         // Procura elemento infCons
         Element infConsElement = encontrarElemento(root, "infCons");
         if (infConsElement != null) {
-            logger.info("✓ InfCons element found");
+            logger.debug("✓ InfCons element found");
             this.infCons = parseInfCons(infConsElement);
         } else {
             logger.warn("⚠ InfCons element not found");
@@ -76,14 +79,14 @@ public class SefazConsultaCadastroResponseJDOM {
     private InfCons parseInfCons(Element infConsElement) {
         InfCons infCons = new InfCons();
         
-        logger.info("=== DEBUG PARSE INFCONS ===");
-        logger.info("InfCons element name: {}", infConsElement.getName());
-        logger.info("InfCons namespace: {}", infConsElement.getNamespaceURI());
-        logger.info("InfCons children count: {}", infConsElement.getChildren().size());
+        logger.debug("=== DEBUG PARSE INFCONS ===");
+        logger.debug("InfCons element name: {}", infConsElement.getName());
+        logger.debug("InfCons namespace: {}", infConsElement.getNamespaceURI());
+        logger.debug("InfCons children count: {}", infConsElement.getChildren().size());
         
         // Log de todos os elementos filhos do infCons
         for (Element child : infConsElement.getChildren()) {
-            logger.info("InfCons child: {} = '{}'", child.getName(), child.getTextTrim());
+            logger.debug("InfCons child: {} = '{}'", child.getName(), child.getTextTrim());
         }
         
         String verAplic = getElementText(infConsElement, "verAplic");
@@ -95,15 +98,15 @@ public class SefazConsultaCadastroResponseJDOM {
         String dhCons = getElementText(infConsElement, "dhCons");
         String cUF = getElementText(infConsElement, "cUF");
         
-        logger.info("Parsed values:");
-        logger.info("  verAplic: '{}'", verAplic);
-        logger.info("  cStat: '{}'", cStat);
-        logger.info("  xMotivo: '{}'", xMotivo);
-        logger.info("  UF: '{}'", uf);
-        logger.info("  CNPJ: '{}'", cnpj);
-        logger.info("  CPF: '{}'", cpf);
-        logger.info("  dhCons: '{}'", dhCons);
-        logger.info("  cUF: '{}'", cUF);
+        logger.debug("Parsed values:");
+        logger.debug("  verAplic: '{}'", verAplic);
+        logger.debug("  cStat: '{}'", cStat);
+        logger.debug("  xMotivo: '{}'", xMotivo);
+        logger.debug("  UF: '{}'", uf);
+        logger.debug("  CNPJ: '{}'", cnpj);
+        logger.debug("  CPF: '{}'", cpf);
+        logger.debug("  dhCons: '{}'", dhCons);
+        logger.debug("  cUF: '{}'", cUF);
         
         infCons.setVerAplic(verAplic);
         infCons.setcStat(cStat);
@@ -124,22 +127,22 @@ public class SefazConsultaCadastroResponseJDOM {
             }
         }
         
-        logger.info("=== DEBUG INFCAD PARSING ===");
-        logger.info("Total infCad elements found: {}", infCadElements.size());
+        logger.debug("=== DEBUG INFCAD PARSING ===");
+        logger.debug("Total infCad elements found: {}", infCadElements.size());
         
         for (int i = 0; i < infCadElements.size(); i++) {
             Element infCadElement = infCadElements.get(i);
-            logger.info("Processing infCad[{}]: name={}, namespace={}", i, infCadElement.getName(), infCadElement.getNamespaceURI());
-            logger.info("infCad[{}] children count: {}", i, infCadElement.getChildren().size());
+            logger.debug("Processing infCad[{}]: name={}, namespace={}", i, infCadElement.getName(), infCadElement.getNamespaceURI());
+            logger.debug("infCad[{}] children count: {}", i, infCadElement.getChildren().size());
             
             // Log todos os filhos do infCad
             for (Element child : infCadElement.getChildren()) {
-                logger.info("  infCad[{}] child: {} = '{}'", i, child.getName(), child.getTextTrim());
+                logger.debug("  infCad[{}] child: {} = '{}'", i, child.getName(), child.getTextTrim());
             }
             
             InfCad infCad = parseInfCad(infCadElement);
             if (infCad != null) {
-                logger.info("✓ infCad[{}] parsed successfully", i);
+                logger.debug("✓ infCad[{}] parsed successfully", i);
                 infCadList.add(infCad);
             } else {
                 logger.warn("✗ infCad[{}] parsing failed", i);
@@ -341,6 +344,17 @@ public class SefazConsultaCadastroResponseJDOM {
         public void setInfCad(List<InfCad> infCad) {
             this.infCad = infCad;
         }
+        
+        /**
+         * Percorre os infCad sem manter na lista os que ainda não foram decodificados
+         * Indicado para respostas com muitas inscrições lidas uma única vez
+         */
+        public Iterator<InfCad> iterarInfCad() {
+            if (infCad instanceof ListaInfCadSobDemanda) {
+                return ((ListaInfCadSobDemanda) infCad).iterarSemGuardar();
+            }
+            return infCad != null ? infCad.iterator() : Collections.<InfCad>emptyIterator();
+        }
     }
     
     /**
@@ -0,0 +1,100 @@
+package br.com.dabu.model;
+
+/**
+ * Resultado da consulta cadastro em uma UF, dentro de uma consulta em várias UFs
+ */
+public class SefazConsultaUfResult {
+    
+    private String uf;
+    private StatusSefaz statusSefaz;
+    private OrigemDados origem;
+    private String cStat;
+    private String xMotivo;
+    private int totalInscricoes;
+    private long tempoMs;
+    private String mensagemErro;
+    
+    public SefazConsultaUfResult() {
+    }
+    
+    public SefazConsultaUfResult(String uf) {
+        this.uf = uf;
+    }
+    
+    public String getUf() {
+        return uf;
+    }
+    
+    public void setUf(String uf) {
+        this.uf = uf;
+    }
+    
+    public StatusSefaz getStatusSefaz() {
+        return statusSefaz;
+    }
+    
+    public void setStatusSefaz(StatusSefaz statusSefaz) {
+        this.statusSefaz = statusSefaz;
+    }
+    
+    public OrigemDados getOrigem() {
+        return origem;
+    }
+    
+    public void setOrigem(OrigemDados origem) {
+        this.origem = origem;
+    }
+    
+    public String getcStat() {
+        return cStat;
+    }
+    
+    public void setcStat(String cStat) {
+        this.cStat = cStat;
+    }
+    
+    public String getxMotivo() {
+        return xMotivo;
+    }
+    
+    public void setxMotivo(String xMotivo) {
+        this.xMotivo = xMotivo;
+    }
+    
+    /**
+     * Quantidade de inscrições estaduais encontradas na UF
+     */
+    public int getTotalInscricoes() {
+        return totalInscricoes;
+    }
+    
+    public void setTotalInscricoes(int totalInscricoes) {
+        this.totalInscricoes = totalInscricoes;
+    }
+    
+    /**
+     * Tempo da consulta na UF, desde o envio até a resposta
+     */
+    public long getTempoMs() {
+        return tempoMs;
+    }
+    
+    public void setTempoMs(long tempoMs) {
+        this.tempoMs = tempoMs;
+    }
+    
+    public String getMensagemErro() {
+        return mensagemErro;
+    }
+    
+    public void setMensagemErro(String mensagemErro) {
+        this.mensagemErro = mensagemErro;
+    }
+    
+    @Override
+    public String toString() {
+        return uf + ": " + (statusSefaz != null ? statusSefaz.getDescricao() : "-")
+                + (cStat != null ? " (cStat " + cStat + ")" : "")
+                + ", " + totalInscricoes + " IE(s), " + tempoMs + "ms";
+    }
+}
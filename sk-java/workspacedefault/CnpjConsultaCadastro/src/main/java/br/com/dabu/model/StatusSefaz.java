@@ -0,0 +1,22 @@
+package br.com.dabu.model;
+
+/**
+ * Situação da etapa SEFAZ em uma consulta de CNPJ
+ */
+public enum StatusSefaz {
+    CONSULTADA("Consulta realizada"),
+    NAO_CONSULTADA("Consulta não realizada"),
+    INDISPONIVEL("SEFAZ indisponível"),
+    TEMPO_ESGOTADO("Tempo limite esgotado na consulta SEFAZ"),
+    ERRO("Erro na consulta SEFAZ");
+    
+    private final String descricao;
+    
+    StatusSefaz(String descricao) {
+        this.descricao = descricao;
+    }
+    
+    public String getDescricao() {
+        return descricao;
+    }
+}
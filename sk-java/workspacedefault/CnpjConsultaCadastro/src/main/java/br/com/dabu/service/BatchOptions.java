@@ -0,0 +1,86 @@
+package br.com.dabu.service;
+
+import br.com.dabu.model.CnpjConsultaResult;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Opções da consulta de CNPJs em lote (CnpjConsultaService.consultarCNPJs)
+ */
+public class BatchOptions {
+    
+    /**
+     * Ordem dos resultados retornados pelo lote
+     */
+    public enum Ordem {
+        /** Mesma ordem da coleção de entrada */
+        ENTRADA,
+        /** Ordem em que as consultas foram concluídas */
+        CONCLUSAO
+    }
+    
+    /**
+     * Recebe o andamento do lote a cada consulta concluída
+     * As chamadas são serializadas, não sendo necessário sincronizar a implementação
+     */
+    public interface ProgressoListener {
+        void onProgresso(int concluidas, int total, CnpjConsultaResult resultado);
+    }
+    
+    public static final int MAX_CONCORRENCIA_PADRAO = 4;
+    
+    private int maxConcorrencia = MAX_CONCORRENCIA_PADRAO;
+    private Executor executor;
+    private Ordem ordem = Ordem.ENTRADA;
+    private ProgressoListener progressoListener;
+    
+    public BatchOptions() {
+    }
+    
+    public BatchOptions(int maxConcorrencia) {
+        setMaxConcorrencia(maxConcorrencia);
+    }
+    
+    // Getters e Setters
+    public int getMaxConcorrencia() {
+        return maxConcorrencia;
+    }
+    
+    /**
+     * Define o número máximo de consultas simultâneas (mínimo 1)
+     */
+    public void setMaxConcorrencia(int maxConcorrencia) {
+        if (maxConcorrencia < 1) {
+            throw new IllegalArgumentException("maxConcorrencia deve ser maior que zero");
+        }
+        this.maxConcorrencia = maxConcorrencia;
+    }
+    
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Define o executor das consultas
+     * Se não informado, o lote cria (e encerra ao final) um pool próprio com maxConcorrencia threads
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    public Ordem getOrdem() {
+        return ordem;
+    }
+    
+    public void setOrdem(Ordem ordem) {
+        this.ordem = ordem != null ? ordem : Ordem.ENTRADA;
+    }
+    
+    public ProgressoListener getProgressoListener() {
+        return progressoListener;
+    }
+    
+    public void setProgressoListener(ProgressoListener progressoListener) {
+        this.progressoListener = progressoListener;
+    }
+}
@@ -3,25 +3,97 @@ package br.com.dabu.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import br.com.dabu.cache.CacheConsultaCnpj;
+import br.com.dabu.cache.ConfiguracaoCache;
+import br.com.dabu.cache.PrevisaoUf;
+import br.com.dabu.cache.ValorCache;
+import br.com.dabu.config.SefazEndpoints;
 import br.com.dabu.model.CnpjConsultaResult;
+import br.com.dabu.model.OrigemDados;
 import br.com.dabu.model.ReceitaWSResponse;
 import br.com.dabu.model.SefazConsultaCadastroResponseJDOM;
+import br.com.dabu.model.SefazConsultaUfResult;
+import br.com.dabu.model.StatusSefaz;
+import br.com.dabu.util.Bulkhead;
+import br.com.dabu.util.Prazo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 
 /**
  * Serviço principal para consulta de CNPJ
  * Integra ReceitaWS e SEFAZ NfeConsultaCadastro usando JDOM
+ *
+ * Thread-safe: uma única instância deve atender todas as threads, compartilhando
+ * certificado, clientes HTTP, cache, cotas e limites de concorrência. Configurações
+ * (certificado, plano da ReceitaWS, bulkhead, tamanhos máximos) podem ser alteradas com
+ * consultas em andamento; cada consulta usa os valores vigentes quando cada etapa começa.
+ * Os resultados devolvidos não são compartilhados entre chamadores, exceto os de uma
+ * mesma consulta em andamento para o mesmo CNPJ, que recebem a mesma instância.
  */
 public class CnpjConsultaService {
     
     private static final Logger logger = LoggerFactory.getLogger(CnpjConsultaService.class);
     
+    // Mesmo teto do limite adaptativo e do pool de conexões do endpoint: quem regula a
+    // concorrência efetiva é o limite adaptativo, o compartimento só isola as UFs entre si
+    public static final int BULKHEAD_SEFAZ_CONCORRENCIA_PADRAO = SefazHttpClientRegistry.MAX_CONEXOES_POR_ENDPOINT;
+    public static final int BULKHEAD_SEFAZ_FILA_PADRAO = 4;
+    
+    // Parte do prazo reservada à ReceitaWS; a SEFAZ fica com o que sobrar
+    private static final double PROPORCAO_PRAZO_RECEITA = 0.5;
+    
     private final ReceitaWSService receitaWSService;
     private final SefazConsultaCadastroService sefazService;
+    private final CacheConsultaCnpj cache;
+    
+    // UF provável de cada CNPJ, para antecipar a consulta SEFAZ
+    private final PrevisaoUf previsaoUf = new PrevisaoUf();
+    
+    // Consultas em andamento por CNPJ (single-flight)
+    private final ConcurrentMap<String, CompletableFuture<CnpjConsultaResult>> consultasEmAndamento = new ConcurrentHashMap<>();
+    
+    // Compartimento da etapa SEFAZ por endpoint físico (UFs do SVRS compartilham o mesmo)
+    private final ConcurrentMap<String, Bulkhead> bulkheadsSefaz = new ConcurrentHashMap<>();
+    private volatile int concorrenciaBulkheadSefaz = BULKHEAD_SEFAZ_CONCORRENCIA_PADRAO;
+    private volatile int filaBulkheadSefaz = BULKHEAD_SEFAZ_FILA_PADRAO;
     
     public CnpjConsultaService() {
+        this(new ConfiguracaoCache());
+    }
+    
+    /**
+     * @param configuracaoCache Capacidade e TTLs do cache de consultas
+     */
+    public CnpjConsultaService(ConfiguracaoCache configuracaoCache) {
         this.receitaWSService = new ReceitaWSService();
         this.sefazService = new SefazConsultaCadastroService();
+        this.cache = new CacheConsultaCnpj(configuracaoCache);
     }
     
     /**
@@ -45,13 +117,141 @@ public class CnpjConsultaService {
         return sefazService.configurarCertificado(nomeArquivo, senha);
     }
     
+    /**
+     * Configura o pool de certificados das empresas do grupo, usado no lugar do certificado único
+     * Cada consulta SEFAZ sai por um dos certificados, com pool de conexões e cota próprios
+     * 
+     * @param senhasPorArquivo Senha de cada arquivo da pasta resources/certificado
+     * @param selecao Critério de escolha do certificado de cada consulta
+     * @return Quantidade de certificados carregados
+     */
+    public int configurarPoolCertificados(Map<String, String> senhasPorArquivo, PoolCertificadosSefaz.Selecao selecao) {
+        PoolCertificadosSefaz pool = sefazService.getPoolCertificados();
+        pool.setSelecao(selecao);
+        return pool.carregar(senhasPorArquivo);
+    }
+    
+    /**
+     * Configura o pool com todos os certificados de nome padrão da pasta resources/certificado
+     * 
+     * @param senha Senha dos certificados (a mesma para todos)
+     * @param selecao Critério de escolha do certificado de cada consulta
+     * @return Quantidade de certificados carregados
+     */
+    public int inicializarPoolCertificados(String senha, PoolCertificadosSefaz.Selecao selecao) {
+        PoolCertificadosSefaz pool = sefazService.getPoolCertificados();
+        pool.setSelecao(selecao);
+        return pool.carregarPadrao(senha);
+    }
+    
+    /**
+     * Configura a cota de consultas SEFAZ por minuto de cada certificado do pool
+     * 
+     * @param requisicoesPorMinuto Cota por certificado (0 para não limitar)
+     */
+    public void configurarCotaPorCertificado(int requisicoesPorMinuto) {
+        sefazService.getPoolCertificados().setCotaPorMinuto(requisicoesPorMinuto);
+    }
+    
+    /**
+     * Obtém o pool de certificados (consultas por certificado e certificados bloqueados)
+     */
+    public PoolCertificadosSefaz getPoolCertificados() {
+        return sefazService.getPoolCertificados();
+    }
+    
+    /**
+     * Configura a cota do plano ReceitaWS (gratuito: 3 consultas por minuto)
+     * 
+     * @param requisicoesPorMinuto Consultas por minuto permitidas pelo plano
+     * @param token Token da API comercial (null no plano gratuito)
+     */
+    public void configurarPlanoReceitaWS(int requisicoesPorMinuto, String token) {
+        receitaWSService.configurarPlano(requisicoesPorMinuto, token);
+    }
+    
+    /**
+     * Define quem é avisado (posição na fila e tempo estimado) quando uma consulta aguarda a cota da ReceitaWS
+     */
+    public void setEsperaCotaListener(ReceitaWSService.EsperaCotaListener listener) {
+        receitaWSService.setEsperaCotaListener(listener);
+    }
+    
+    /**
+     * Lê da ReceitaWS apenas os campos usados na consolidação e no DTO
+     * Reduz a alocação por consulta; os demais campos de ReceitaWSResponse ficam null
+     */
+    public void configurarProjecaoReceitaWS(boolean projecao) {
+        receitaWSService.setProjecao(projecao);
+    }
+    
+    /**
+     * Estima quanto uma nova consulta aguardaria pela cota da ReceitaWS, em milissegundos
+     */
+    public long estimarEsperaCotaReceitaWS() {
+        return receitaWSService.estimarEsperaCotaMillis();
+    }
+    
+    /**
+     * Define o tamanho máximo aceito no corpo das respostas
+     * As respostas são lidas direto do stream; corpos maiores são descartados e a consulta falha
+     * 
+     * @param sefazBytes Máximo para a SEFAZ (padrão: 4 MB)
+     * @param receitaWSBytes Máximo para a ReceitaWS (padrão: 1 MB)
+     */
+    public void configurarTamanhoMaximoResposta(long sefazBytes, long receitaWSBytes) {
+        sefazService.setTamanhoMaximoResposta(sefazBytes);
+        receitaWSService.setTamanhoMaximoResposta(receitaWSBytes);
+    }
+    
+    /**
+     * Configura o compartimento (bulkhead) de cada endpoint da SEFAZ
+     * Uma UF lenta retém no máximo concorrencia + fila consultas; as excedentes falham na hora
+     * com a SEFAZ indisponível, sem prender as threads que atenderiam as demais UFs.
+     * Em lotes, use concorrência maior que concorrencia + fila para manter as demais UFs fluindo.
+     * Concorrência abaixo do padrão também impede o limite adaptativo de passar desse valor.
+     * Vale para os compartimentos criados depois da chamada (configure antes das consultas).
+     * 
+     * @param concorrencia Consultas simultâneas por endpoint
+     * @param fila Consultas aguardando por endpoint
+     */
+    public void configurarBulkheadSefaz(int concorrencia, int fila) {
+        if (concorrencia < 1 || fila < 0) {
+            throw new IllegalArgumentException("concorrencia deve ser maior que zero e fila não pode ser negativa");
+        }
+        this.concorrenciaBulkheadSefaz = concorrencia;
+        this.filaBulkheadSefaz = fila;
+    }
+    
     /**
      * Consulta completa de CNPJ integrando ReceitaWS e SEFAZ
+     * Chamadas simultâneas para o mesmo CNPJ compartilham uma única consulta e o mesmo resultado
      * 
      * @param cnpj CNPJ a ser consultado (com ou sem formatação)
      * @return Resultado consolidado da consulta
      */
     public CnpjConsultaResult consultarCNPJ(String cnpj) {
+        return consultarCNPJ(cnpj, null, null);
+    }
+    
+    /**
+     * Consulta completa de CNPJ com prazo total (deadline)
+     * O prazo é repartido entre as etapas: a ReceitaWS usa até metade dele e a SEFAZ o restante,
+     * aplicado como timeouts HTTP; requisições em andamento são abortadas quando o prazo esgota.
+     * Se o prazo esgotar na etapa SEFAZ, retorna os dados da ReceitaWS com a SEFAZ em TEMPO_ESGOTADO.
+     * 
+     * @param cnpj CNPJ a ser consultado (com ou sem formatação)
+     * @param orcamento Tempo máximo da consulta (ex.: Duration.ofSeconds(3))
+     * @return Resultado consolidado da consulta
+     */
+    public CnpjConsultaResult consultarCNPJ(String cnpj, Duration orcamento) {
+        if (orcamento == null) {
+            throw new IllegalArgumentException("orcamento não pode ser nulo");
+        }
+        return consultarCNPJ(cnpj, orcamento, Prazo.em(orcamento));
+    }
+    
+    private CnpjConsultaResult consultarCNPJ(String cnpj, Duration orcamento, Prazo prazo) {
         if (cnpj == null || cnpj.trim().isEmpty()) {
             logger.error("CNPJ não pode ser nulo ou vazio");
             return criarResultadoErro(cnpj, "CNPJ não pode ser nulo ou vazio");
@@ -65,17 +265,70 @@ public class CnpjConsultaService {
             return criarResultadoErro(cnpj, "CNPJ inválido");
         }
         
+        // Chamadas simultâneas para o mesmo CNPJ compartilham uma única consulta
+        CompletableFuture<CnpjConsultaResult> emAndamento = new CompletableFuture<>();
+        CompletableFuture<CnpjConsultaResult> existente = consultasEmAndamento.putIfAbsent(cnpjLimpo, emAndamento);
+        if (existente != null) {
+            logger.info("Consulta do CNPJ {} já em andamento; aguardando o resultado compartilhado", cnpjLimpo);
+            return aguardarConsultaEmAndamento(cnpjLimpo, existente, prazo);
+        }
+        
+        CnpjConsultaResult resultado = null;
+        try {
+            if (prazo != null) {
+                logger.info("Consulta do CNPJ {} com prazo de {}ms", cnpjLimpo, orcamento.toMillis());
+            }
+            resultado = executarConsulta(cnpjLimpo, prazo);
+            return resultado;
+        } finally {
+            emAndamento.complete(resultado != null ? resultado : criarResultadoErro(cnpjLimpo, "Consulta interrompida"));
+            consultasEmAndamento.remove(cnpjLimpo, emAndamento);
+        }
+    }
+    
+    /**
+     * Aguarda a consulta já iniciada por outra thread para o mesmo CNPJ
+     */
+    private CnpjConsultaResult aguardarConsultaEmAndamento(String cnpjLimpo, CompletableFuture<CnpjConsultaResult> consulta,
+            Prazo prazo) {
+        try {
+            return prazo != null ? consulta.get(prazo.getRestanteMillis(), TimeUnit.MILLISECONDS) : consulta.get();
+        } catch (TimeoutException e) {
+            logger.warn("Prazo esgotado aguardando a consulta do CNPJ {}", cnpjLimpo);
+            return criarResultadoErro(cnpjLimpo, "Tempo limite esgotado");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Espera pela consulta do CNPJ {} interrompida", cnpjLimpo);
+            return criarResultadoErro(cnpjLimpo, "Consulta interrompida");
+        } catch (ExecutionException e) {
+            logger.error("Erro inesperado na consulta de CNPJ {}: {}", cnpjLimpo, e.getCause().getMessage(), e.getCause());
+            return criarResultadoErro(cnpjLimpo, "Erro inesperado: " + e.getCause().getMessage());
+        }
+    }
+    
+    /**
+     * Executa a consulta ReceitaWS + SEFAZ de um CNPJ já validado
+     */
+    private CnpjConsultaResult executarConsulta(String cnpjLimpo, Prazo prazo) {
         logger.info("Iniciando consulta completa para CNPJ: {}", cnpjLimpo);
         
         CnpjConsultaResult resultado = new CnpjConsultaResult(cnpjLimpo);
+        EspeculacaoSefaz especulacao = null;
         
         try {
+            // Com a UF prevista, a SEFAZ é consultada em paralelo à ReceitaWS
+            especulacao = iniciarEspeculacaoSefaz(cnpjLimpo, prazo);
+            
             // Etapa 1: Consulta na ReceitaWS
             logger.info("Etapa 1: Consultando ReceitaWS...");
-            ReceitaWSResponse dadosReceita = receitaWSService.consultarCNPJ(cnpjLimpo);
+            Prazo prazoReceita = prazo != null ? prazo.fracao(PROPORCAO_PRAZO_RECEITA) : null;
+            ReceitaWSResponse dadosReceita = obterDadosReceita(cnpjLimpo, resultado, prazoReceita);
             
             if (dadosReceita == null) {
                 logger.warn("Não foi possível obter dados da ReceitaWS para CNPJ: {}", cnpjLimpo);
+                if (prazoReceita != null && prazoReceita.isEsgotado()) {
+                    return criarResultadoErro(cnpjLimpo, "Tempo limite esgotado na consulta ReceitaWS");
+                }
                 return criarResultadoErro(cnpjLimpo, "Erro na consulta ReceitaWS");
             }
             
@@ -89,15 +342,19 @@ public class CnpjConsultaService {
             }
             
             logger.info("UF obtida da ReceitaWS: {}", uf);
+            previsaoUf.aprender(cnpjLimpo, uf);
             
             // Etapa 2: Consulta na SEFAZ usando a UF obtida
             logger.info("Etapa 2: Consultando SEFAZ para UF: {}...", uf);
             
             if (!sefazService.isCertificadoConfigurado()) {
                 logger.warn("Certificado não configurado. Pulando consulta SEFAZ.");
+                resultado.setStatusSefaz(StatusSefaz.NAO_CONSULTADA);
                 resultado.setMensagemErro("Certificado não configurado para consulta SEFAZ");
             } else {
-                SefazConsultaCadastroResponseJDOM dadosSefaz = sefazService.consultarCadastro(uf, cnpjLimpo);
+                SefazConsultaCadastroResponseJDOM dadosSefaz = confirmarEspeculacaoSefaz(especulacao, uf)
+                        ? aguardarEspeculacaoSefaz(especulacao, cnpjLimpo, resultado, prazo)
+                        : obterDadosSefaz(uf, cnpjLimpo, resultado, prazo);
                 
                 if (dadosSefaz != null) {
                     resultado.setDadosSefazJDOM(dadosSefaz);
@@ -108,17 +365,551 @@ public class CnpjConsultaService {
             }
             
             // Etapa 3: Consolida dados
-            consolidarDados(resultado);
-            
-            resultado.setSucesso(true);
-            logger.info("Consulta completa finalizada com sucesso para CNPJ: {}", cnpjLimpo);
-            
-            return resultado;
+            return finalizarConsulta(resultado);
             
         } catch (Exception e) {
             logger.error("Erro inesperado na consulta de CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
             return criarResultadoErro(cnpjLimpo, "Erro inesperado: " + e.getMessage());
+        } finally {
+            // Consulta antecipada não aproveitada (UF errada, falha na ReceitaWS, prazo esgotado)
+            cancelarEspeculacaoSefaz(especulacao);
+        }
+    }
+    
+    /**
+     * Consulta completa de CNPJ sem bloquear a thread chamadora
+     * Encadeia a etapa ReceitaWS e a etapa SEFAZ sobre os clientes NIO,
+     * permitindo manter muitas consultas em andamento com poucas threads de I/O
+     * Também compartilha a consulta em andamento para o mesmo CNPJ (síncrona ou assíncrona)
+     * 
+     * @param cnpj CNPJ a ser consultado (com ou sem formatação)
+     * @return Future com o resultado consolidado da consulta
+     */
+    public CompletableFuture<CnpjConsultaResult> consultarCNPJAsync(String cnpj) {
+        if (cnpj == null || cnpj.trim().isEmpty()) {
+            logger.error("CNPJ não pode ser nulo ou vazio");
+            return CompletableFuture.completedFuture(criarResultadoErro(cnpj, "CNPJ não pode ser nulo ou vazio"));
+        }
+        
+        String cnpjLimpo = limparCNPJ(cnpj);
+        
+        if (!validarCNPJ(cnpjLimpo)) {
+            logger.error("CNPJ inválido: {}", cnpj);
+            return CompletableFuture.completedFuture(criarResultadoErro(cnpj, "CNPJ inválido"));
+        }
+        
+        // Cada chamador recebe um dependente, para que um cancelamento não afete os demais
+        CompletableFuture<CnpjConsultaResult> emAndamento = new CompletableFuture<>();
+        CompletableFuture<CnpjConsultaResult> existente = consultasEmAndamento.putIfAbsent(cnpjLimpo, emAndamento);
+        if (existente != null) {
+            logger.info("Consulta do CNPJ {} já em andamento; compartilhando o resultado", cnpjLimpo);
+            return existente.thenApply(Function.identity());
+        }
+        
+        CompletableFuture<CnpjConsultaResult> consulta;
+        try {
+            consulta = executarConsultaAsync(cnpjLimpo);
+        } catch (RuntimeException e) {
+            consulta = CompletableFuture.completedFuture(criarResultadoErro(cnpjLimpo, "Erro inesperado: " + e.getMessage()));
+        }
+        
+        consulta.whenComplete((resultado, erro) -> {
+            emAndamento.complete(erro == null ? resultado : criarResultadoErro(cnpjLimpo, "Erro inesperado: " + erro.getMessage()));
+            consultasEmAndamento.remove(cnpjLimpo, emAndamento);
+        });
+        
+        return emAndamento.thenApply(Function.identity());
+    }
+    
+    /**
+     * Executa a consulta assíncrona ReceitaWS + SEFAZ de um CNPJ já validado
+     */
+    private CompletableFuture<CnpjConsultaResult> executarConsultaAsync(String cnpjLimpo) {
+        logger.info("Iniciando consulta assíncrona para CNPJ: {}", cnpjLimpo);
+        
+        CnpjConsultaResult resultado = new CnpjConsultaResult(cnpjLimpo);
+        EspeculacaoSefaz especulacao = iniciarEspeculacaoSefaz(cnpjLimpo, null);
+        
+        return obterDadosReceitaAsync(cnpjLimpo, resultado)
+                .thenCompose(dadosReceita -> {
+                    if (dadosReceita == null) {
+                        logger.warn("Não foi possível obter dados da ReceitaWS para CNPJ: {}", cnpjLimpo);
+                        return CompletableFuture.completedFuture(criarResultadoErro(cnpjLimpo, "Erro na consulta ReceitaWS"));
+                    }
+                    
+                    resultado.setDadosReceitaWS(dadosReceita);
+                    
+                    String uf = dadosReceita.getUf();
+                    if (uf == null || uf.trim().isEmpty()) {
+                        logger.warn("UF não encontrada nos dados da ReceitaWS para CNPJ: {}", cnpjLimpo);
+                        return CompletableFuture.completedFuture(criarResultadoErro(cnpjLimpo, "UF não encontrada nos dados da ReceitaWS"));
+                    }
+                    
+                    previsaoUf.aprender(cnpjLimpo, uf);
+                    
+                    if (!sefazService.isCertificadoConfigurado()) {
+                        logger.warn("Certificado não configurado. Pulando consulta SEFAZ.");
+                        resultado.setStatusSefaz(StatusSefaz.NAO_CONSULTADA);
+                        resultado.setMensagemErro("Certificado não configurado para consulta SEFAZ");
+                        return CompletableFuture.completedFuture(finalizarConsulta(resultado));
+                    }
+                    
+                    CompletableFuture<SefazConsultaCadastroResponseJDOM> consultaSefaz = confirmarEspeculacaoSefaz(especulacao, uf)
+                            ? especulacao.consulta.thenApply(dadosSefaz -> {
+                                aplicarEspeculacaoSefaz(especulacao, resultado);
+                                return dadosSefaz;
+                            })
+                            : obterDadosSefazAsync(uf, cnpjLimpo, resultado, null);
+                    
+                    return consultaSefaz.thenApply(dadosSefaz -> {
+                        if (dadosSefaz != null) {
+                            resultado.setDadosSefazJDOM(dadosSefaz);
+                            logger.info("Consulta SEFAZ realizada com sucesso");
+                        } else {
+                            logger.warn("Não foi possível obter dados da SEFAZ para CNPJ: {} UF: {}", cnpjLimpo, uf);
+                        }
+                        return finalizarConsulta(resultado);
+                    });
+                })
+                .exceptionally(e -> {
+                    logger.error("Erro inesperado na consulta de CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
+                    return criarResultadoErro(cnpjLimpo, "Erro inesperado: " + e.getMessage());
+                })
+                .whenComplete((consolidado, erro) -> cancelarEspeculacaoSefaz(especulacao));
+    }
+    
+    /**
+     * Inicia a consulta SEFAZ na UF prevista para o CNPJ, antes de a ReceitaWS confirmar a UF
+     * 
+     * @param prazo Prazo da consulta completa (null para usar apenas os timeouts padrão)
+     * @return Consulta antecipada ou null se a UF não for conhecida ou não houver certificado
+     */
+    private EspeculacaoSefaz iniciarEspeculacaoSefaz(String cnpjLimpo, Prazo prazo) {
+        if (!sefazService.isCertificadoConfigurado()) {
+            return null;
+        }
+        
+        String ufPrevista = previsaoUf.prever(cnpjLimpo);
+        if (ufPrevista == null) {
+            return null;
+        }
+        
+        logger.info("Antecipando consulta SEFAZ para CNPJ: {} na UF prevista: {}", cnpjLimpo, ufPrevista);
+        CnpjConsultaResult resultadoAntecipado = new CnpjConsultaResult(cnpjLimpo);
+        return new EspeculacaoSefaz(ufPrevista, resultadoAntecipado,
+                obterDadosSefazAsync(ufPrevista, cnpjLimpo, resultadoAntecipado, prazo));
+    }
+    
+    /**
+     * Cancela a consulta antecipada ainda em andamento, abortando a requisição HTTP e
+     * devolvendo a vaga do compartimento, a vaga do limite de concorrência e a cota do certificado
+     * Não tem efeito sobre uma consulta já concluída
+     */
+    private void cancelarEspeculacaoSefaz(EspeculacaoSefaz especulacao) {
+        if (especulacao != null && especulacao.consulta.cancel(true)) {
+            logger.info("Consulta SEFAZ antecipada na UF {} cancelada", especulacao.uf);
+        }
+    }
+    
+    /**
+     * Verifica se a consulta antecipada foi feita na UF informada pela ReceitaWS
+     * Se a UF for outra, a consulta antecipada é descartada e a SEFAZ é consultada novamente
+     */
+    private boolean confirmarEspeculacaoSefaz(EspeculacaoSefaz especulacao, String uf) {
+        if (especulacao == null) {
+            return false;
+        }
+        
+        boolean confirmada = especulacao.uf.equalsIgnoreCase(uf.trim());
+        previsaoUf.registrarResultado(confirmada);
+        if (!confirmada) {
+            logger.info("UF prevista {} difere da UF {} da ReceitaWS; consulta SEFAZ antecipada descartada", especulacao.uf, uf);
+        }
+        return confirmada;
+    }
+    
+    /**
+     * Aguarda a consulta SEFAZ antecipada, respeitando o prazo da consulta
+     */
+    private SefazConsultaCadastroResponseJDOM aguardarEspeculacaoSefaz(EspeculacaoSefaz especulacao, String cnpjLimpo,
+            CnpjConsultaResult resultado, Prazo prazo) {
+        try {
+            SefazConsultaCadastroResponseJDOM dadosSefaz = prazo != null
+                    ? especulacao.consulta.get(prazo.getRestanteMillis(), TimeUnit.MILLISECONDS)
+                    : especulacao.consulta.get();
+            aplicarEspeculacaoSefaz(especulacao, resultado);
+            return dadosSefaz;
+        } catch (TimeoutException e) {
+            registrarPrazoEsgotadoSefaz(resultado, especulacao.uf);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Consulta SEFAZ interrompida para CNPJ: {} UF: {}", cnpjLimpo, especulacao.uf);
+            return null;
+        } catch (ExecutionException e) {
+            logger.error("Erro na consulta SEFAZ para CNPJ: {} UF: {}: {}", cnpjLimpo, especulacao.uf, e.getCause().getMessage(), e.getCause());
+            resultado.setStatusSefaz(StatusSefaz.ERRO);
+            return null;
+        }
+    }
+    
+    /**
+     * Copia para o resultado a situação registrada pela consulta antecipada
+     */
+    private void aplicarEspeculacaoSefaz(EspeculacaoSefaz especulacao, CnpjConsultaResult resultado) {
+        resultado.setStatusSefaz(especulacao.resultado.getStatusSefaz());
+        resultado.setOrigemSefaz(especulacao.resultado.getOrigemSefaz());
+        if (especulacao.resultado.getMensagemErro() != null) {
+            resultado.setMensagemErro(especulacao.resultado.getMensagemErro());
+        }
+    }
+    
+    /**
+     * Obtém os dados da ReceitaWS do cache ou, na falta, da API (armazenando no cache)
+     */
+    private ReceitaWSResponse obterDadosReceita(String cnpjLimpo, CnpjConsultaResult resultado, Prazo prazo) {
+        ValorCache<ReceitaWSResponse> emCache = cache.obterReceita(cnpjLimpo);
+        if (emCache != null) {
+            logger.info("Dados da ReceitaWS obtidos do cache ({}) para CNPJ: {}", emCache.getOrigem(), cnpjLimpo);
+            resultado.setOrigemReceitaWS(emCache.getOrigem());
+            return emCache.getValor();
+        }
+        
+        ReceitaWSResponse dadosReceita = receitaWSService.consultarCNPJ(cnpjLimpo, prazo);
+        if (dadosReceita != null) {
+            cache.armazenarReceita(cnpjLimpo, dadosReceita);
+            resultado.setOrigemReceitaWS(OrigemDados.CONSULTA);
+        }
+        return dadosReceita;
+    }
+    
+    private CompletableFuture<ReceitaWSResponse> obterDadosReceitaAsync(String cnpjLimpo, CnpjConsultaResult resultado) {
+        ValorCache<ReceitaWSResponse> emCache = cache.obterReceita(cnpjLimpo);
+        if (emCache != null) {
+            logger.info("Dados da ReceitaWS obtidos do cache ({}) para CNPJ: {}", emCache.getOrigem(), cnpjLimpo);
+            resultado.setOrigemReceitaWS(emCache.getOrigem());
+            return CompletableFuture.completedFuture(emCache.getValor());
         }
+        
+        return receitaWSService.consultarCNPJAsync(cnpjLimpo).thenApply(resposta -> {
+            if (resposta != null) {
+                cache.armazenarReceita(cnpjLimpo, resposta);
+                resultado.setOrigemReceitaWS(OrigemDados.CONSULTA);
+            }
+            return resposta;
+        });
+    }
+    
+    /**
+     * Obtém os dados da SEFAZ do cache ou, na falta, do webservice (armazenando no cache)
+     * 
+     * @param prazo Prazo restante da consulta (null sem prazo)
+     */
+    private SefazConsultaCadastroResponseJDOM obterDadosSefaz(String uf, String cnpjLimpo, CnpjConsultaResult resultado,
+            Prazo prazo) {
+        ValorCache<SefazConsultaCadastroResponseJDOM> emCache = cache.obterSefaz(uf, cnpjLimpo);
+        if (emCache != null) {
+            logger.info("Dados da SEFAZ obtidos do cache ({}) para CNPJ: {} UF: {}", emCache.getOrigem(), cnpjLimpo, uf);
+            resultado.setOrigemSefaz(emCache.getOrigem());
+            resultado.setStatusSefaz(StatusSefaz.CONSULTADA);
+            return emCache.getValor();
+        }
+        
+        // Circuito aberto: falha imediata, sem ocupar a thread com timeouts
+        if (!sefazService.isSefazDisponivel(uf)) {
+            registrarFalhaSefaz(resultado, uf);
+            return null;
+        }
+        
+        if (prazo != null && prazo.isEsgotado()) {
+            registrarPrazoEsgotadoSefaz(resultado, uf);
+            return null;
+        }
+        
+        Bulkhead bulkhead = getBulkheadSefaz(uf);
+        if (bulkhead == null) {
+            return sefazService.consultarCadastro(uf, cnpjLimpo, prazo);
+        }
+        
+        Future<SefazConsultaCadastroResponseJDOM> consulta = bulkhead.executar(() -> sefazService.consultarCadastro(uf, cnpjLimpo, prazo));
+        if (consulta == null) {
+            registrarSefazSemCapacidade(resultado, uf);
+            return null;
+        }
+        
+        SefazConsultaCadastroResponseJDOM dadosSefaz;
+        try {
+            dadosSefaz = prazo != null ? consulta.get(prazo.getRestanteMillis(), TimeUnit.MILLISECONDS) : consulta.get();
+        } catch (TimeoutException e) {
+            // Ainda aguardando vaga no compartimento; a requisição já em andamento é abortada pelo próprio prazo
+            consulta.cancel(true);
+            dadosSefaz = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            consulta.cancel(true);
+            logger.warn("Consulta SEFAZ interrompida para CNPJ: {} UF: {}", cnpjLimpo, uf);
+            return null;
+        } catch (ExecutionException e) {
+            logger.error("Erro na consulta SEFAZ para CNPJ: {} UF: {}: {}", cnpjLimpo, uf, e.getCause().getMessage(), e.getCause());
+            dadosSefaz = null;
+        }
+        
+        if (dadosSefaz == null && prazo != null && prazo.isEsgotado()) {
+            registrarPrazoEsgotadoSefaz(resultado, uf);
+            return null;
+        }
+        
+        registrarConsultaSefaz(resultado, uf, cnpjLimpo, dadosSefaz);
+        return dadosSefaz;
+    }
+    
+    private CompletableFuture<SefazConsultaCadastroResponseJDOM> obterDadosSefazAsync(String uf, String cnpjLimpo,
+            CnpjConsultaResult resultado, Prazo prazo) {
+        ValorCache<SefazConsultaCadastroResponseJDOM> emCache = cache.obterSefaz(uf, cnpjLimpo);
+        if (emCache != null) {
+            logger.info("Dados da SEFAZ obtidos do cache ({}) para CNPJ: {} UF: {}", emCache.getOrigem(), cnpjLimpo, uf);
+            resultado.setOrigemSefaz(emCache.getOrigem());
+            resultado.setStatusSefaz(StatusSefaz.CONSULTADA);
+            return CompletableFuture.completedFuture(emCache.getValor());
+        }
+        
+        if (!sefazService.isSefazDisponivel(uf)) {
+            registrarFalhaSefaz(resultado, uf);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        Bulkhead bulkhead = getBulkheadSefaz(uf);
+        CompletableFuture<SefazConsultaCadastroResponseJDOM> consulta = bulkhead != null
+                ? bulkhead.executarAsync(() -> sefazService.consultarCadastroAsync(uf, cnpjLimpo, prazo))
+                : sefazService.consultarCadastroAsync(uf, cnpjLimpo, prazo);
+        
+        if (consulta == null) {
+            registrarSefazSemCapacidade(resultado, uf);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        CompletableFuture<SefazConsultaCadastroResponseJDOM> registrada = consulta.thenApply(resposta -> {
+            registrarConsultaSefaz(resultado, uf, cnpjLimpo, resposta);
+            return resposta;
+        });
+        // Cancelar o Future retornado cancela a requisição
+        registrada.whenComplete((resposta, erro) -> {
+            if (registrada.isCancelled()) {
+                consulta.cancel(true);
+            }
+        });
+        return registrada;
+    }
+    
+    /**
+     * Obtém o compartimento do endpoint físico da UF
+     * 
+     * @return Bulkhead ou null se a UF não tiver endpoint
+     */
+    private Bulkhead getBulkheadSefaz(String uf) {
+        String endpoint = SefazEndpoints.getEndpointConsultaCadastro(uf.toUpperCase());
+        if (endpoint == null) {
+            return null;
+        }
+        return bulkheadsSefaz.computeIfAbsent(endpoint,
+                url -> new Bulkhead(url.replaceFirst("^https?://", "").replaceFirst("/.*$", ""),
+                        concorrenciaBulkheadSefaz, filaBulkheadSefaz));
+    }
+    
+    /**
+     * Marca a etapa SEFAZ como não concluída dentro do prazo da consulta
+     */
+    private void registrarPrazoEsgotadoSefaz(CnpjConsultaResult resultado, String uf) {
+        logger.warn("Prazo esgotado na consulta SEFAZ para UF: {}", uf);
+        resultado.setStatusSefaz(StatusSefaz.TEMPO_ESGOTADO);
+        resultado.setMensagemErro(StatusSefaz.TEMPO_ESGOTADO.getDescricao() + " para UF " + uf.toUpperCase());
+    }
+    
+    /**
+     * Marca a etapa SEFAZ como indisponível por falta de vaga no compartimento da UF
+     */
+    private void registrarSefazSemCapacidade(CnpjConsultaResult resultado, String uf) {
+        resultado.setStatusSefaz(StatusSefaz.INDISPONIVEL);
+        resultado.setMensagemErro(StatusSefaz.INDISPONIVEL.getDescricao() + " para UF " + uf.toUpperCase()
+                + ": limite de consultas simultâneas atingido");
+    }
+    
+    /**
+     * Obtém a ocupação atual do compartimento de cada endpoint da SEFAZ já consultado
+     * 
+     * @return Mapa endpoint -> consultas em execução ou aguardando
+     */
+    public Map<String, Integer> getOcupacaoBulkheadsSefaz() {
+        Map<String, Integer> ocupacao = new TreeMap<>();
+        bulkheadsSefaz.forEach((endpoint, bulkhead) -> ocupacao.put(endpoint, bulkhead.getOcupacao()));
+        return ocupacao;
+    }
+    
+    /**
+     * Registra no resultado (e no cache) o retorno de uma consulta à SEFAZ
+     */
+    private void registrarConsultaSefaz(CnpjConsultaResult resultado, String uf, String cnpjLimpo,
+            SefazConsultaCadastroResponseJDOM resposta) {
+        if (resposta == null) {
+            registrarFalhaSefaz(resultado, uf);
+            return;
+        }
+        
+        cache.armazenarSefaz(uf, cnpjLimpo, resposta);
+        resultado.setOrigemSefaz(OrigemDados.CONSULTA);
+        resultado.setStatusSefaz(StatusSefaz.CONSULTADA);
+    }
+    
+    /**
+     * Marca a etapa SEFAZ como indisponível (circuito aberto) ou com erro
+     */
+    private void registrarFalhaSefaz(CnpjConsultaResult resultado, String uf) {
+        if (sefazService.isSefazDisponivel(uf)) {
+            resultado.setStatusSefaz(StatusSefaz.ERRO);
+            return;
+        }
+        
+        logger.warn("SEFAZ indisponível para UF: {}", uf);
+        resultado.setStatusSefaz(StatusSefaz.INDISPONIVEL);
+        resultado.setMensagemErro(StatusSefaz.INDISPONIVEL.getDescricao() + " para UF " + uf.toUpperCase());
+    }
+    
+    /**
+     * Consulta um lote de CNPJs em paralelo, com concorrência limitada
+     * 
+     * @param cnpjs CNPJs a serem consultados (com ou sem formatação)
+     * @param opcoes Opções do lote (concorrência, executor, ordem e progresso); null usa os padrões
+     * @return Resultados na ordem de entrada ou de conclusão, conforme as opções
+     */
+    public List<CnpjConsultaResult> consultarCNPJs(Collection<String> cnpjs, BatchOptions opcoes) {
+        if (cnpjs == null || cnpjs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        BatchOptions batchOptions = opcoes != null ? opcoes : new BatchOptions();
+        int total = cnpjs.size();
+        int maxConcorrencia = Math.min(batchOptions.getMaxConcorrencia(), total);
+        
+        logger.info("Iniciando consulta em lote de {} CNPJs (concorrência: {})", total, maxConcorrencia);
+        
+        ExecutorService executorProprio = null;
+        Executor executor = batchOptions.getExecutor();
+        if (executor == null) {
+            executorProprio = Executors.newFixedThreadPool(maxConcorrencia, criarThreadFactory("consulta-lote-"));
+            executor = executorProprio;
+        }
+        
+        CnpjConsultaResult[] resultadosPorPosicao = new CnpjConsultaResult[total];
+        List<CnpjConsultaResult> resultadosPorConclusao = new ArrayList<>(total);
+        Semaphore permissoes = new Semaphore(maxConcorrencia);
+        CountDownLatch pendentes = new CountDownLatch(total);
+        Object lockProgresso = new Object();
+        
+        try {
+            int posicao = 0;
+            for (String cnpj : cnpjs) {
+                final int indice = posicao++;
+                permissoes.acquire();
+                
+                Runnable tarefa = () -> {
+                    CnpjConsultaResult resultado;
+                    try {
+                        resultado = consultarCNPJ(cnpj);
+                    } catch (Exception e) {
+                        logger.error("Erro inesperado no lote para CNPJ {}: {}", cnpj, e.getMessage(), e);
+                        resultado = criarResultadoErro(cnpj, "Erro inesperado: " + e.getMessage());
+                    } finally {
+                        permissoes.release();
+                    }
+                    
+                    synchronized (lockProgresso) {
+                        resultadosPorPosicao[indice] = resultado;
+                        resultadosPorConclusao.add(resultado);
+                        notificarProgresso(batchOptions, resultadosPorConclusao.size(), total, resultado);
+                    }
+                    pendentes.countDown();
+                };
+                
+                try {
+                    executor.execute(tarefa);
+                } catch (RejectedExecutionException e) {
+                    permissoes.release();
+                    logger.error("Consulta do CNPJ {} rejeitada pelo executor do lote", cnpj);
+                    CnpjConsultaResult resultado = criarResultadoErro(cnpj, "Consulta rejeitada pelo executor");
+                    synchronized (lockProgresso) {
+                        resultadosPorPosicao[indice] = resultado;
+                        resultadosPorConclusao.add(resultado);
+                        notificarProgresso(batchOptions, resultadosPorConclusao.size(), total, resultado);
+                    }
+                    pendentes.countDown();
+                }
+            }
+            
+            pendentes.await();
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Consulta em lote interrompida; retornando resultados parciais");
+        } finally {
+            if (executorProprio != null) {
+                executorProprio.shutdownNow();
+            }
+        }
+        
+        synchronized (lockProgresso) {
+            if (batchOptions.getOrdem() == BatchOptions.Ordem.CONCLUSAO) {
+                return new ArrayList<>(resultadosPorConclusao);
+            }
+            
+            // Posições não concluídas (lote interrompido) recebem resultado de erro
+            List<CnpjConsultaResult> resultados = new ArrayList<>(total);
+            int indice = 0;
+            for (String cnpj : cnpjs) {
+                CnpjConsultaResult resultado = resultadosPorPosicao[indice++];
+                resultados.add(resultado != null ? resultado : criarResultadoErro(cnpj, "Consulta em lote interrompida"));
+            }
+            return resultados;
+        }
+    }
+    
+    /**
+     * Notifica o listener de progresso do lote, se configurado
+     */
+    private void notificarProgresso(BatchOptions opcoes, int concluidas, int total, CnpjConsultaResult resultado) {
+        BatchOptions.ProgressoListener listener = opcoes.getProgressoListener();
+        if (listener == null) {
+            return;
+        }
+        
+        try {
+            listener.onProgresso(concluidas, total, resultado);
+        } catch (Exception e) {
+            logger.warn("Erro no listener de progresso do lote: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Cria ThreadFactory de threads daemon nomeadas
+     */
+    private static ThreadFactory criarThreadFactory(String prefixo) {
+        AtomicInteger contador = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefixo + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Consolida os dados obtidos e marca a consulta como concluída
+     */
+    private CnpjConsultaResult finalizarConsulta(CnpjConsultaResult resultado) {
+        consolidarDados(resultado);
+        
+        resultado.setSucesso(true);
+        logger.info("Consulta completa finalizada com sucesso para CNPJ: {}", resultado.getCnpj());
+        
+        return resultado;
     }
     
     /**
@@ -136,17 +927,34 @@ public class CnpjConsultaService {
             resultado.setMunicipio(dadosReceita.getMunicipio());
         }
         
-        if (dadosSefaz != null && dadosSefaz.getInfCons() != null && 
-            dadosSefaz.getInfCons().getInfCad() != null && 
-            !dadosSefaz.getInfCons().getInfCad().isEmpty()) {
-            
-            SefazConsultaCadastroResponseJDOM.InfCad infCad = dadosSefaz.getInfCons().getInfCad().get(0);
-            
-            resultado.setInscricaoEstadual(infCad.getIe());
-            resultado.setSituacaoIE(obterDescricaoSituacaoIE(infCad.getcSit()));
-            resultado.setCredenciadoNFe("1".equals(infCad.getIndCredNFe()));
-            resultado.setCredenciadoCTe("1".equals(infCad.getIndCredCTe()));
+        if (dadosSefaz != null && dadosSefaz.getInfCons() != null) {
+            consolidarInscricao(resultado, dadosSefaz.getInfCons().getInfCad());
+        }
+    }
+    
+    /**
+     * Preenche os campos de IE com a inscrição principal: a primeira habilitada ou, se nenhuma, a primeira
+     * 
+     * @return Inscrição escolhida, ou null se não houver inscrições
+     */
+    private SefazConsultaCadastroResponseJDOM.InfCad consolidarInscricao(CnpjConsultaResult resultado, List<SefazConsultaCadastroResponseJDOM.InfCad> inscricoes) {
+        if (inscricoes == null || inscricoes.isEmpty()) {
+            return null;
         }
+        
+        SefazConsultaCadastroResponseJDOM.InfCad infCad = inscricoes.get(0);
+        for (SefazConsultaCadastroResponseJDOM.InfCad inscricao : inscricoes) {
+            if ("1".equals(inscricao.getcSit())) {
+                infCad = inscricao;
+                break;
+            }
+        }
+        
+        resultado.setInscricaoEstadual(infCad.getIe());
+        resultado.setSituacaoIE(obterDescricaoSituacaoIE(infCad.getcSit()));
+        resultado.setCredenciadoNFe("1".equals(infCad.getIndCredNFe()));
+        resultado.setCredenciadoCTe("1".equals(infCad.getIndCredCTe()));
+        return infCad;
     }
     
     /**
@@ -235,6 +1043,13 @@ public class CnpjConsultaService {
         return digitos[13] == segundoDigito;
     }
     
+    /**
+     * Verifica se o CNPJ (com ou sem formatação) é válido, sem consultá-lo
+     */
+    public boolean isCnpjValido(String cnpj) {
+        return validarCNPJ(limparCNPJ(cnpj));
+    }
+    
     /**
      * Verifica se o certificado está configurado
      */
@@ -256,6 +1071,298 @@ public class CnpjConsultaService {
         return sefazService.listarCertificadosDisponiveis();
     }
     
+    /**
+     * Obtém a previsão de UF usada para antecipar a consulta SEFAZ (acertos e erros)
+     */
+    public PrevisaoUf getPrevisaoUf() {
+        return previsaoUf;
+    }
+    
+    /**
+     * Obtém o cache de consultas (estatísticas, invalidação e limpeza)
+     */
+    public CacheConsultaCnpj getCache() {
+        return cache;
+    }
+    
+    /**
+     * Encerra os recursos mantidos entre consultas (conexões, clientes HTTP e cache em disco)
+     */
+    public void encerrar() {
+        bulkheadsSefaz.values().forEach(Bulkhead::encerrar);
+        receitaWSService.encerrar();
+        sefazService.encerrar();
+        cache.close();
+    }
+    
+    /**
+     * Consulta rápida apenas na SEFAZ, para quem já conhece a UF (ex.: cadastro do ERP)
+     * Vai direto ao cliente da SEFAZ, sem consumir a cota da ReceitaWS: o resultado traz os campos
+     * da SEFAZ (IE, situação, nome, CNAE e endereço em getDadosSefazJDOM()) e a ReceitaWS só é
+     * consultada se getDadosReceitaWS() for chamado (ex.: para ler QSA ou capital social)
+     * 
+     * @param cnpj CNPJ a ser consultado (com ou sem formatação)
+     * @param uf UF do estabelecimento
+     * @return Resultado com os dados da SEFAZ e a ReceitaWS sob demanda
+     */
+    public CnpjConsultaResult consultarCNPJPorUF(String cnpj, String uf) {
+        if (uf == null || uf.trim().isEmpty()) {
+            logger.error("UF não pode ser nula ou vazia");
+            return criarResultadoErro(cnpj, "UF não informada");
+        }
+        
+        if (cnpj == null || cnpj.trim().isEmpty()) {
+            logger.error("CNPJ não pode ser nulo ou vazio");
+            return criarResultadoErro(cnpj, "CNPJ não pode ser nulo ou vazio");
+        }
+        
+        String cnpjLimpo = limparCNPJ(cnpj);
+        
+        if (!validarCNPJ(cnpjLimpo)) {
+            logger.error("CNPJ inválido: {}", cnpj);
+            return criarResultadoErro(cnpj, "CNPJ inválido");
+        }
+        
+        String ufConsulta = uf.trim().toUpperCase();
+        logger.info("Consulta apenas SEFAZ para CNPJ: {} UF: {}", cnpjLimpo, ufConsulta);
+        
+        CnpjConsultaResult resultado = new CnpjConsultaResult(cnpjLimpo);
+        resultado.setUf(ufConsulta);
+        resultado.setCarregadorReceitaWS(() -> carregarReceitaSobDemanda(cnpjLimpo, resultado));
+        
+        if (!sefazService.isCertificadoConfigurado()) {
+            logger.warn("Certificado não configurado. Pulando consulta SEFAZ.");
+            resultado.setStatusSefaz(StatusSefaz.NAO_CONSULTADA);
+            resultado.setMensagemErro("Certificado não configurado para consulta SEFAZ");
+            return resultado;
+        }
+        
+        try {
+            SefazConsultaCadastroResponseJDOM dadosSefaz = obterDadosSefaz(ufConsulta, cnpjLimpo, resultado, null);
+            if (dadosSefaz == null) {
+                logger.warn("Não foi possível obter dados da SEFAZ para CNPJ: {} UF: {}", cnpjLimpo, ufConsulta);
+                if (resultado.getMensagemErro() == null) {
+                    resultado.setMensagemErro("Erro na consulta SEFAZ");
+                }
+                return resultado;
+            }
+            
+            resultado.setDadosSefazJDOM(dadosSefaz);
+            consolidarDadosSefaz(resultado, dadosSefaz);
+            resultado.setSucesso(true);
+            return resultado;
+            
+        } catch (Exception e) {
+            logger.error("Erro inesperado na consulta SEFAZ de CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
+            resultado.setMensagemErro("Erro inesperado: " + e.getMessage());
+            return resultado;
+        }
+    }
+    
+    /**
+     * Consulta a ReceitaWS na primeira leitura dos seus dados em um resultado apenas SEFAZ
+     */
+    private ReceitaWSResponse carregarReceitaSobDemanda(String cnpjLimpo, CnpjConsultaResult resultado) {
+        logger.info("Dados da ReceitaWS solicitados; consultando ReceitaWS para CNPJ: {}", cnpjLimpo);
+        
+        ReceitaWSResponse dadosReceita = obterDadosReceita(cnpjLimpo, resultado, null);
+        if (dadosReceita == null) {
+            logger.warn("Não foi possível obter dados da ReceitaWS para CNPJ: {}", cnpjLimpo);
+            return null;
+        }
+        
+        previsaoUf.aprender(cnpjLimpo, dadosReceita.getUf());
+        if (resultado.getSituacaoCadastral() == null) {
+            resultado.setSituacaoCadastral(dadosReceita.getDescricaoSituacaoCadastral());
+        }
+        return dadosReceita;
+    }
+    
+    /**
+     * Consolida os campos principais apenas com os dados da SEFAZ
+     */
+    private void consolidarDadosSefaz(CnpjConsultaResult resultado, SefazConsultaCadastroResponseJDOM dadosSefaz) {
+        if (dadosSefaz.getInfCons() == null || dadosSefaz.getInfCons().getInfCad() == null
+                || dadosSefaz.getInfCons().getInfCad().isEmpty()) {
+            return;
+        }
+        
+        // Nome e município da mesma inscrição escolhida para a IE
+        SefazConsultaCadastroResponseJDOM.InfCad infCad = consolidarInscricao(resultado, dadosSefaz.getInfCons().getInfCad());
+        resultado.setRazaoSocial(infCad.getxNome());
+        resultado.setNomeFantasia(infCad.getxFant());
+        if (infCad.getEnder() != null) {
+            resultado.setMunicipio(infCad.getEnder().getxMun());
+        }
+    }
+    
+    /**
+     * Consulta o cadastro do CNPJ em várias UFs ao mesmo tempo, reunindo as inscrições estaduais de todas
+     * 
+     * @param cnpj CNPJ a ser consultado (com ou sem formatação)
+     * @param ufs UFs a consultar; null ou vazio consulta todas as UFs
+     * @return Resultado com as inscrições de todas as UFs e a situação e o tempo de cada UF
+     * @see #consultarSefazMultiUFAsync(String, Collection)
+     */
+    public CnpjConsultaResult consultarSefazMultiUF(String cnpj, Collection<String> ufs) {
+        return consultarSefazMultiUFAsync(cnpj, ufs).join();
+    }
+    
+    /**
+     * Consulta o cadastro do CNPJ em várias UFs sem bloquear a thread chamadora
+     * As UFs são agrupadas por endpoint físico (as UFs do SVRS formam um único grupo) e cada grupo
+     * é percorrido em até concorrência-do-bulkhead filas paralelas, sem estourar o compartimento do endpoint
+     * 
+     * @param cnpj CNPJ a ser consultado (com ou sem formatação)
+     * @param ufs UFs a consultar; null ou vazio consulta todas as UFs
+     * @return Future com o resultado consolidado
+     */
+    public CompletableFuture<CnpjConsultaResult> consultarSefazMultiUFAsync(String cnpj, Collection<String> ufs) {
+        if (cnpj == null || cnpj.trim().isEmpty()) {
+            logger.error("CNPJ não pode ser nulo ou vazio");
+            return CompletableFuture.completedFuture(criarResultadoErro(cnpj, "CNPJ não pode ser nulo ou vazio"));
+        }
+        
+        String cnpjLimpo = limparCNPJ(cnpj);
+        
+        if (!validarCNPJ(cnpjLimpo)) {
+            logger.error("CNPJ inválido: {}", cnpj);
+            return CompletableFuture.completedFuture(criarResultadoErro(cnpj, "CNPJ inválido"));
+        }
+        
+        if (!sefazService.isCertificadoConfigurado()) {
+            logger.warn("Certificado não configurado. Pulando consulta SEFAZ.");
+            CnpjConsultaResult resultado = criarResultadoErro(cnpjLimpo, "Certificado não configurado para consulta SEFAZ");
+            resultado.setStatusSefaz(StatusSefaz.NAO_CONSULTADA);
+            return CompletableFuture.completedFuture(resultado);
+        }
+        
+        Set<String> ufsConsulta = new TreeSet<>();
+        for (String uf : ufs == null || ufs.isEmpty() ? Arrays.asList(SefazEndpoints.getUFsDisponiveis()) : ufs) {
+            if (uf != null && !uf.trim().isEmpty()) {
+                ufsConsulta.add(uf.trim().toUpperCase());
+            }
+        }
+        
+        // Agrupa as UFs por endpoint físico
+        List<SefazConsultaUfResult> resultadosUf = new ArrayList<>(ufsConsulta.size());
+        Map<String, List<SefazConsultaUfResult>> ufsPorEndpoint = new LinkedHashMap<>();
+        for (String uf : ufsConsulta) {
+            SefazConsultaUfResult resultadoUf = new SefazConsultaUfResult(uf);
+            resultadosUf.add(resultadoUf);
+            
+            String endpoint = SefazEndpoints.getEndpointConsultaCadastro(uf);
+            if (endpoint == null) {
+                logger.error("Endpoint não encontrado para UF: {}", uf);
+                resultadoUf.setStatusSefaz(StatusSefaz.ERRO);
+                resultadoUf.setMensagemErro("Endpoint não encontrado para UF " + uf);
+                continue;
+            }
+            ufsPorEndpoint.computeIfAbsent(endpoint, e -> new ArrayList<>()).add(resultadoUf);
+        }
+        
+        logger.info("Consultando CNPJ {} na SEFAZ de {} UFs ({} endpoints)", cnpjLimpo, ufsConsulta.size(), ufsPorEndpoint.size());
+        long inicio = System.nanoTime();
+        
+        Map<String, SefazConsultaCadastroResponseJDOM> respostas = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> filas = new ArrayList<>();
+        for (List<SefazConsultaUfResult> grupo : ufsPorEndpoint.values()) {
+            int paralelas = Math.min(grupo.size(), concorrenciaBulkheadSefaz);
+            for (int i = 0; i < paralelas; i++) {
+                CompletableFuture<Void> fila = CompletableFuture.completedFuture(null);
+                for (int j = i; j < grupo.size(); j += paralelas) {
+                    SefazConsultaUfResult resultadoUf = grupo.get(j);
+                    fila = fila.thenCompose(anterior -> consultarUfAsync(cnpjLimpo, resultadoUf, respostas));
+                }
+                filas.add(fila);
+            }
+        }
+        
+        return CompletableFuture.allOf(filas.toArray(new CompletableFuture<?>[0])).thenApply(concluidas -> {
+            CnpjConsultaResult resultado = consolidarMultiUF(cnpjLimpo, resultadosUf, respostas);
+            logger.info("Consulta do CNPJ {} em {} UFs concluída em {}ms: {} inscrição(ões) encontrada(s)", cnpjLimpo,
+                    ufsConsulta.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio),
+                    resultado.getInscricoesEstaduais().size());
+            return resultado;
+        });
+    }
+    
+    /**
+     * Consulta uma UF da consulta em várias UFs, registrando situação e tempo no resultado da UF
+     */
+    private CompletableFuture<Void> consultarUfAsync(String cnpjLimpo, SefazConsultaUfResult resultadoUf,
+            Map<String, SefazConsultaCadastroResponseJDOM> respostas) {
+        String uf = resultadoUf.getUf();
+        CnpjConsultaResult parcial = new CnpjConsultaResult(cnpjLimpo);
+        long inicio = System.nanoTime();
+        
+        CompletableFuture<SefazConsultaCadastroResponseJDOM> consulta;
+        try {
+            consulta = obterDadosSefazAsync(uf, cnpjLimpo, parcial, null);
+        } catch (RuntimeException e) {
+            consulta = new CompletableFuture<>();
+            consulta.completeExceptionally(e);
+        }
+        
+        return consulta.handle((resposta, erro) -> {
+            resultadoUf.setTempoMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+            
+            if (erro != null || resposta == null) {
+                resultadoUf.setStatusSefaz(parcial.getStatusSefaz() != null && parcial.getStatusSefaz() != StatusSefaz.CONSULTADA
+                        ? parcial.getStatusSefaz() : StatusSefaz.ERRO);
+                resultadoUf.setMensagemErro(erro != null ? "Erro inesperado: " + erro.getMessage() : parcial.getMensagemErro());
+                return null;
+            }
+            
+            resultadoUf.setStatusSefaz(StatusSefaz.CONSULTADA);
+            resultadoUf.setOrigem(parcial.getOrigemSefaz());
+            if (resposta.getInfCons() != null) {
+                resultadoUf.setcStat(resposta.getInfCons().getcStat());
+                resultadoUf.setxMotivo(resposta.getInfCons().getxMotivo());
+                resultadoUf.setTotalInscricoes(resposta.getInfCons().getInfCad() != null ? resposta.getInfCons().getInfCad().size() : 0);
+            }
+            respostas.put(uf, resposta);
+            return null;
+        });
+    }
+    
+    /**
+     * Reúne as inscrições de todas as UFs consultadas em um único resultado
+     */
+    private CnpjConsultaResult consolidarMultiUF(String cnpjLimpo, List<SefazConsultaUfResult> resultadosUf,
+            Map<String, SefazConsultaCadastroResponseJDOM> respostas) {
+        CnpjConsultaResult resultado = new CnpjConsultaResult(cnpjLimpo);
+        List<SefazConsultaCadastroResponseJDOM.InfCad> inscricoes = new ArrayList<>();
+        boolean algumaConsultada = false;
+        
+        for (SefazConsultaUfResult resultadoUf : resultadosUf) {
+            SefazConsultaCadastroResponseJDOM resposta = respostas.get(resultadoUf.getUf());
+            if (resposta == null) {
+                continue;
+            }
+            
+            algumaConsultada = true;
+            if (resposta.getInfCons() != null && resposta.getInfCons().getInfCad() != null) {
+                inscricoes.addAll(resposta.getInfCons().getInfCad());
+            }
+        }
+        
+        resultado.setResultadosUf(resultadosUf);
+        resultado.setInscricoesEstaduais(inscricoes);
+        resultado.setSucesso(algumaConsultada);
+        resultado.setStatusSefaz(algumaConsultada ? StatusSefaz.CONSULTADA : StatusSefaz.ERRO);
+        if (!algumaConsultada) {
+            resultado.setMensagemErro("Nenhuma UF respondeu à consulta SEFAZ");
+        }
+        
+        SefazConsultaCadastroResponseJDOM.InfCad principal = consolidarInscricao(resultado, inscricoes);
+        if (principal != null) {
+            resultado.setRazaoSocial(principal.getxNome());
+            resultado.setNomeFantasia(principal.getxFant());
+        }
+        return resultado;
+    }
+    
     /**
      * Consulta apenas SEFAZ para uma UF específica
      * 
@@ -295,9 +1402,8 @@ public class CnpjConsultaService {
         logger.info("Consultando SEFAZ para UF: {}, CNPJ: {}", uf, cnpjLimpo);
         
         try {
-            SefazConsultaCadastroResponseJDOM sefazResponse = sefazService.consultarCadastro(uf.toUpperCase(), cnpjLimpo);
-            
             CnpjConsultaResult resultado = new CnpjConsultaResult(cnpjLimpo);
+            SefazConsultaCadastroResponseJDOM sefazResponse = obterDadosSefaz(uf.toUpperCase(), cnpjLimpo, resultado, null);
             
             if (sefazResponse != null) {
                 logger.info("Consulta SEFAZ realizada com sucesso para UF: {}", uf);
@@ -306,7 +1412,9 @@ public class CnpjConsultaService {
             } else {
                 logger.error("Erro na consulta SEFAZ para UF: {}, CNPJ: {}", uf, cnpjLimpo);
                 resultado.setSucesso(false);
-                resultado.setMensagemErro("Erro na consulta SEFAZ");
+                if (resultado.getStatusSefaz() != StatusSefaz.INDISPONIVEL) {
+                    resultado.setMensagemErro("Erro na consulta SEFAZ");
+                }
             }
             
             return resultado;
@@ -319,6 +1427,21 @@ public class CnpjConsultaService {
             return resultado;
         }
     }
+    
+    /**
+     * Consulta SEFAZ iniciada na UF prevista, com seu próprio resultado até ser confirmada
+     */
+    private static final class EspeculacaoSefaz {
+        private final String uf;
+        private final CnpjConsultaResult resultado;
+        private final CompletableFuture<SefazConsultaCadastroResponseJDOM> consulta;
+        
+        EspeculacaoSefaz(String uf, CnpjConsultaResult resultado, CompletableFuture<SefazConsultaCadastroResponseJDOM> consulta) {
+            this.uf = uf;
+            this.resultado = resultado;
+            this.consulta = consulta;
+        }
+    }
 }
 
 
@@ -0,0 +1,524 @@
+package br.com.dabu.service;
+
+import br.com.dabu.model.CnpjConsultaDTO;
+import br.com.dabu.model.CnpjConsultaResult;
+import br.com.dabu.model.StatusSefaz;
+import br.com.dabu.util.CheckpointLote;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline de consulta em lote arquivo a arquivo: lê CNPJs de um CSV/TXT
+ * e grava cada CnpjConsultaDTO em NDJSON (um JSON por linha) assim que concluído
+ *
+ * Leitor, consultas e escritor são ligados por filas limitadas: quando as consultas
+ * ou a gravação ficam para trás, o leitor bloqueia, mantendo o uso de memória
+ * constante independente do tamanho do arquivo de entrada.
+ *
+ * Com um arquivo de checkpoint configurado, o pipeline pode ser retomado após uma
+ * falha: as linhas com resultado definitivo são puladas (sem nova consulta à
+ * ReceitaWS/SEFAZ) e a saída NDJSON é cortada no tamanho registrado no checkpoint
+ * antes de ser complementada, descartando o que foi gravado depois do último registro.
+ * Linhas cuja consulta falhou (tempo esgotado, indisponibilidade, erro) são consultadas
+ * de novo e o novo resultado é acrescentado à saída; para um mesmo CNPJ vale a última linha.
+ */
+public class ConsultaLotePipeline {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConsultaLotePipeline.class);
+    
+    private static final int INTERVALO_LOG_PROGRESSO = 1000;
+    private static final int MAX_PENDENTES_CHECKPOINT = 64;
+    
+    // Marcadores de fim de fluxo entre as etapas
+    private static final Item FIM_ENTRADA = new Item(-1, null);
+    private static final Concluido FIM_CONSULTA = new Concluido(-1, null, false);
+    
+    private final CnpjConsultaService consultaService;
+    private final ObjectWriter jsonWriter;
+    
+    private int concorrencia = BatchOptions.MAX_CONCORRENCIA_PADRAO;
+    private int capacidadeFila = 256;
+    private char separador = ';';
+    private int colunaCnpj = 0;
+    private boolean ignorarCabecalho = false;
+    private Path arquivoCheckpoint;
+    
+    public ConsultaLotePipeline(CnpjConsultaService consultaService) {
+        this.consultaService = consultaService;
+        
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        this.jsonWriter = objectMapper.writerFor(CnpjConsultaDTO.class);
+    }
+    
+    /**
+     * Executa o pipeline completo
+     *
+     * @param entrada Arquivo CSV/TXT com um CNPJ por linha (ou na coluna configurada)
+     * @param saida Arquivo NDJSON de saída (sobrescrito, exceto na retomada de um checkpoint)
+     * @return Resumo da execução
+     * @throws IOException Em caso de erro de leitura ou gravação
+     */
+    public Resumo executar(Path entrada, Path saida) throws IOException {
+        logger.info("Iniciando pipeline de consulta em lote: {} -> {} (concorrência: {}, fila: {})",
+            entrada, saida, concorrencia, capacidadeFila);
+        
+        long inicio = System.currentTimeMillis();
+        
+        BlockingQueue<Item> filaEntrada = new ArrayBlockingQueue<>(capacidadeFila);
+        BlockingQueue<Concluido> filaSaida = new ArrayBlockingQueue<>(capacidadeFila);
+        Resumo resumo = new Resumo();
+        IOException[] erroLeitura = new IOException[1];
+        
+        CheckpointLote checkpoint = arquivoCheckpoint != null ? CheckpointLote.abrir(arquivoCheckpoint) : null;
+        BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(entrada, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            fecharCheckpoint(checkpoint);
+            throw e;
+        }
+        
+        Thread leitor = new Thread(() -> ler(reader, filaEntrada, resumo, erroLeitura, checkpoint), "consulta-lote-leitor");
+        leitor.setDaemon(true);
+        
+        List<Thread> consultores = new ArrayList<>(concorrencia);
+        for (int i = 0; i < concorrencia; i++) {
+            Thread consultor = new Thread(() -> consultar(filaEntrada, filaSaida), "consulta-lote-" + (i + 1));
+            consultor.setDaemon(true);
+            consultores.add(consultor);
+        }
+        
+        leitor.start();
+        consultores.forEach(Thread::start);
+        
+        // Na retomada a saída é complementada a partir do ponto registrado no checkpoint;
+        // sem checkpoint (ou com um checkpoint novo) ela começa vazia
+        long bytesSaida = checkpoint != null ? checkpoint.getBytesSaida() : 0;
+        
+        try (ContadorBytes contador = abrirSaida(saida, bytesSaida);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(contador, StandardCharsets.UTF_8))) {
+            gravar(writer, contador, filaSaida, resumo, checkpoint);
+        } catch (IOException | RuntimeException e) {
+            // Falha na gravação: interrompe as demais etapas para não bloquearem nas filas
+            leitor.interrupt();
+            consultores.forEach(Thread::interrupt);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leitor.interrupt();
+            consultores.forEach(Thread::interrupt);
+            throw new IOException("Pipeline de consulta em lote interrompido", e);
+        } finally {
+            fecharCheckpoint(checkpoint);
+        }
+        
+        if (erroLeitura[0] != null) {
+            throw erroLeitura[0];
+        }
+        
+        resumo.tempoMs = System.currentTimeMillis() - inicio;
+        logger.info("Pipeline de consulta em lote concluído: {}", resumo);
+        return resumo;
+    }
+    
+    /**
+     * Abre a saída cortada no tamanho informado, descartando uma linha parcial ou
+     * resultados não registrados no checkpoint antes de uma queda
+     */
+    private static ContadorBytes abrirSaida(Path saida, long bytesSaida) throws IOException {
+        FileChannel canal = FileChannel.open(saida, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (canal.size() < bytesSaida) {
+                throw new IOException("Arquivo de saída " + saida + " menor que o registrado no checkpoint ("
+                    + canal.size() + " de " + bytesSaida + " bytes)");
+            }
+            canal.truncate(bytesSaida);
+            canal.position(bytesSaida);
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+        return new ContadorBytes(Channels.newOutputStream(canal), bytesSaida);
+    }
+    
+    /**
+     * Etapa de leitura: extrai os CNPJs e alimenta a fila de entrada
+     */
+    private void ler(BufferedReader reader, BlockingQueue<Item> filaEntrada, Resumo resumo, IOException[] erroLeitura,
+            CheckpointLote checkpoint) {
+        try (BufferedReader entrada = reader) {
+            String linha;
+            long numeroLinha = 0;
+            while ((linha = entrada.readLine()) != null) {
+                numeroLinha++;
+                if (numeroLinha == 1 && ignorarCabecalho) {
+                    continue;
+                }
+                
+                String cnpj = extrairCnpj(linha);
+                if (cnpj == null) {
+                    continue;
+                }
+                
+                resumo.lidos.incrementAndGet();
+                
+                // Linha concluída em execução anterior
+                if (checkpoint != null && checkpoint.isConcluida(numeroLinha)) {
+                    resumo.ignorados.incrementAndGet();
+                    continue;
+                }
+                
+                filaEntrada.put(new Item(numeroLinha, cnpj));
+            }
+        } catch (IOException e) {
+            logger.error("Erro ao ler arquivo de entrada do lote: {}", e.getMessage(), e);
+            erroLeitura[0] = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        
+        // Um marcador de fim para cada thread de consulta
+        try {
+            for (int i = 0; i < concorrencia; i++) {
+                filaEntrada.put(FIM_ENTRADA);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Etapa de consulta: consome a fila de entrada e publica os DTOs na fila de saída
+     */
+    private void consultar(BlockingQueue<Item> filaEntrada, BlockingQueue<Concluido> filaSaida) {
+        try {
+            Item item;
+            while ((item = filaEntrada.take()) != FIM_ENTRADA) {
+                filaSaida.put(consultarItem(item));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Sempre sinaliza o fim, senão a gravação aguardaria esta thread indefinidamente
+            try {
+                filaSaida.put(FIM_CONSULTA);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Consulta um CNPJ e monta o DTO gravável
+     * Qualquer falha (na consulta ou na montagem do DTO) vira um DTO de erro
+     */
+    private Concluido consultarItem(Item item) {
+        try {
+            CnpjConsultaResult resultado = consultaService.consultarCNPJ(item.cnpj);
+            return new Concluido(item.linha, new CnpjConsultaDTO(resultado), isDefinitivo(item.cnpj, resultado));
+        } catch (Exception e) {
+            logger.error("Erro inesperado no lote (linha {}) para CNPJ {}: {}", item.linha, item.cnpj, e.getMessage(), e);
+            CnpjConsultaResult resultado = new CnpjConsultaResult(item.cnpj);
+            resultado.setMensagemErro("Erro inesperado: " + e.getMessage());
+            return new Concluido(item.linha, new CnpjConsultaDTO(resultado), false);
+        }
+    }
+    
+    /**
+     * Verifica se repetir a consulta não mudaria o resultado: CNPJ inválido ou consulta
+     * concluída sem falha na SEFAZ. Tempo esgotado, indisponibilidade e erros não são
+     * definitivos e voltam a ser consultados na retomada.
+     */
+    private boolean isDefinitivo(String cnpj, CnpjConsultaResult resultado) {
+        if (!consultaService.isCnpjValido(cnpj)) {
+            return true;
+        }
+        
+        StatusSefaz statusSefaz = resultado.getStatusSefaz();
+        return resultado.isSucesso()
+            && statusSefaz != StatusSefaz.TEMPO_ESGOTADO
+            && statusSefaz != StatusSefaz.INDISPONIVEL
+            && statusSefaz != StatusSefaz.ERRO;
+    }
+    
+    /**
+     * Etapa de gravação: escreve cada DTO como uma linha NDJSON
+     * As linhas só são registradas no checkpoint depois de descarregadas no arquivo de saída,
+     * junto com o tamanho da saída nesse momento
+     */
+    private void gravar(BufferedWriter writer, ContadorBytes contador, BlockingQueue<Concluido> filaSaida,
+            Resumo resumo, CheckpointLote checkpoint) throws IOException, InterruptedException {
+        List<Long> pendentesCheckpoint = new ArrayList<>(MAX_PENDENTES_CHECKPOINT);
+        int consultoresAtivos = concorrencia;
+        while (consultoresAtivos > 0) {
+            Concluido concluido = filaSaida.take();
+            if (concluido == FIM_CONSULTA) {
+                consultoresAtivos--;
+                continue;
+            }
+            
+            CnpjConsultaDTO dto = concluido.dto;
+            jsonWriter.writeValue(writer, dto);
+            writer.write('\n');
+            if (concluido.definitivo) {
+                pendentesCheckpoint.add(concluido.linha);
+            }
+            
+            long gravados = resumo.gravados.incrementAndGet();
+            if (dto.isReceitaWSSucesso()) {
+                resumo.sucessos.incrementAndGet();
+            } else {
+                resumo.erros.incrementAndGet();
+            }
+            
+            // Libera o buffer quando não há mais resultados prontos
+            if (filaSaida.isEmpty() || pendentesCheckpoint.size() >= MAX_PENDENTES_CHECKPOINT) {
+                writer.flush();
+                registrarCheckpoint(checkpoint, pendentesCheckpoint, contador.getTotal());
+            }
+            
+            if (gravados % INTERVALO_LOG_PROGRESSO == 0) {
+                logger.info("Lote em andamento: {} lidos, {} gravados", resumo.lidos.get(), gravados);
+            }
+        }
+        
+        writer.flush();
+        registrarCheckpoint(checkpoint, pendentesCheckpoint, contador.getTotal());
+    }
+    
+    /**
+     * Registra no checkpoint as linhas já descarregadas na saída e o tamanho da saída
+     */
+    private void registrarCheckpoint(CheckpointLote checkpoint, List<Long> linhas, long bytesSaida) throws IOException {
+        if (checkpoint != null) {
+            checkpoint.registrar(linhas, bytesSaida);
+        }
+        linhas.clear();
+    }
+    
+    private void fecharCheckpoint(CheckpointLote checkpoint) {
+        if (checkpoint == null) {
+            return;
+        }
+        
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            logger.warn("Erro ao fechar checkpoint {}: {}", checkpoint.getArquivo(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Extrai o CNPJ da linha conforme separador e coluna configurados
+     *
+     * @return CNPJ (sem aspas e espaços) ou null se a linha não possuir valor
+     */
+    String extrairCnpj(String linha) {
+        String valor = linha;
+        
+        if (colunaCnpj > 0 || linha.indexOf(separador) >= 0) {
+            int inicio = 0;
+            for (int coluna = 0; coluna < colunaCnpj && inicio >= 0; coluna++) {
+                int proximo = linha.indexOf(separador, inicio);
+                inicio = proximo >= 0 ? proximo + 1 : -1;
+            }
+            if (inicio < 0) {
+                return null;
+            }
+            int fim = linha.indexOf(separador, inicio);
+            valor = fim >= 0 ? linha.substring(inicio, fim) : linha.substring(inicio);
+        }
+        
+        valor = valor.replace("\"", "").trim();
+        return valor.isEmpty() ? null : valor;
+    }
+    
+    // Getters e Setters
+    public int getConcorrencia() {
+        return concorrencia;
+    }
+    
+    public void setConcorrencia(int concorrencia) {
+        if (concorrencia < 1) {
+            throw new IllegalArgumentException("concorrencia deve ser maior que zero");
+        }
+        this.concorrencia = concorrencia;
+    }
+    
+    public int getCapacidadeFila() {
+        return capacidadeFila;
+    }
+    
+    public void setCapacidadeFila(int capacidadeFila) {
+        if (capacidadeFila < 1) {
+            throw new IllegalArgumentException("capacidadeFila deve ser maior que zero");
+        }
+        this.capacidadeFila = capacidadeFila;
+    }
+    
+    public char getSeparador() {
+        return separador;
+    }
+    
+    public void setSeparador(char separador) {
+        this.separador = separador;
+    }
+    
+    public int getColunaCnpj() {
+        return colunaCnpj;
+    }
+    
+    public void setColunaCnpj(int colunaCnpj) {
+        this.colunaCnpj = colunaCnpj;
+    }
+    
+    public Path getArquivoCheckpoint() {
+        return arquivoCheckpoint;
+    }
+    
+    /**
+     * Define o arquivo de checkpoint que permite retomar o lote após uma falha
+     * Se não informado (ou se o arquivo ainda não existir), o lote começa do início e sobrescreve a saída
+     */
+    public void setArquivoCheckpoint(Path arquivoCheckpoint) {
+        this.arquivoCheckpoint = arquivoCheckpoint;
+    }
+    
+    public boolean isIgnorarCabecalho() {
+        return ignorarCabecalho;
+    }
+    
+    public void setIgnorarCabecalho(boolean ignorarCabecalho) {
+        this.ignorarCabecalho = ignorarCabecalho;
+    }
+    
+    /**
+     * CNPJ lido e a linha de origem no arquivo
+     */
+    private static final class Item {
+        private final long linha;
+        private final String cnpj;
+        
+        Item(long linha, String cnpj) {
+            this.linha = linha;
+            this.cnpj = cnpj;
+        }
+    }
+    
+    /**
+     * DTO gravável e a linha de origem no arquivo
+     */
+    private static final class Concluido {
+        private final long linha;
+        private final CnpjConsultaDTO dto;
+        private final boolean definitivo;
+        
+        Concluido(long linha, CnpjConsultaDTO dto, boolean definitivo) {
+            this.linha = linha;
+            this.dto = dto;
+            this.definitivo = definitivo;
+        }
+    }
+    
+    /**
+     * Conta os bytes gravados na saída, partindo do tamanho em que ela foi aberta
+     */
+    private static final class ContadorBytes extends FilterOutputStream {
+        private long total;
+        
+        ContadorBytes(OutputStream out, long inicial) {
+            super(out);
+            this.total = inicial;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            total++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            total += len;
+        }
+        
+        long getTotal() {
+            return total;
+        }
+    }
+    
+    /**
+     * Resumo da execução do pipeline
+     */
+    public static class Resumo {
+        private final AtomicLong lidos = new AtomicLong();
+        private final AtomicLong ignorados = new AtomicLong();
+        private final AtomicLong gravados = new AtomicLong();
+        private final AtomicLong sucessos = new AtomicLong();
+        private final AtomicLong erros = new AtomicLong();
+        private long tempoMs;
+        
+        public long getLidos() {
+            return lidos.get();
+        }
+        
+        /**
+         * CNPJs pulados por já estarem concluídos no checkpoint
+         */
+        public long getIgnorados() {
+            return ignorados.get();
+        }
+        
+        public long getGravados() {
+            return gravados.get();
+        }
+        
+        public long getSucessos() {
+            return sucessos.get();
+        }
+        
+        public long getErros() {
+            return erros.get();
+        }
+        
+        public long getTempoMs() {
+            return tempoMs;
+        }
+        
+        @Override
+        public String toString() {
+            return "Resumo{" +
+                    "lidos=" + lidos +
+                    ", ignorados=" + ignorados +
+                    ", gravados=" + gravados +
+                    ", sucessos=" + sucessos +
+                    ", erros=" + erros +
+                    ", tempoMs=" + tempoMs +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package br.com.dabu.service;
+
+import br.com.dabu.util.CertificadoManager;
+import br.com.dabu.util.LimitadorTaxa;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool de certificados A1 para distribuir as consultas SEFAZ entre as empresas do grupo
+ *
+ * Cada certificado tem seu próprio CertificadoManager, seu próprio SefazHttpClientRegistry
+ * (pools de conexões separados, já que as conexões TLS são autenticadas pelo certificado)
+ * e, se configurada, sua própria cota de requisições por minuto. A seleção é por rodízio
+ * ou pelo certificado usado há mais tempo.
+ *
+ * A SEFAZ controla o consumo indevido (cStat 656) por certificado: o certificado bloqueado
+ * sai da seleção até o fim do bloqueio e os demais continuam atendendo.
+ *
+ * Recarregar ou fechar o pool encerra as esperas de cota dos certificados anteriores
+ * (sem liberar a consulta) e fecha seus clientes HTTP.
+ *
+ * Thread-safe.
+ */
+public class PoolCertificadosSefaz implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PoolCertificadosSefaz.class);
+    
+    public static final String CSTAT_CONSUMO_INDEVIDO = "656";
+    public static final long BLOQUEIO_CONSUMO_INDEVIDO_MS = TimeUnit.HOURS.toMillis(1);
+    
+    /**
+     * Critério de escolha do certificado de cada consulta
+     */
+    public enum Selecao {
+        /** Um certificado de cada vez, na ordem em que foram carregados */
+        ROUND_ROBIN,
+        /** O certificado cuja última consulta é a mais antiga */
+        MENOS_RECENTE
+    }
+    
+    private volatile List<Membro> membros = Collections.emptyList();
+    private volatile Selecao selecao = Selecao.ROUND_ROBIN;
+    private volatile int cotaPorMinuto;
+    
+    private int proximo;
+    private long sequenciaUso;
+    private ScheduledExecutorService agendadorCota;
+    
+    /**
+     * Carrega os certificados informados, substituindo os do pool
+     * Certificados que não puderem ser carregados são ignorados
+     *
+     * @param senhasPorArquivo Senha de cada arquivo da pasta resources/certificado
+     * @return Quantidade de certificados carregados
+     */
+    public int carregar(Map<String, String> senhasPorArquivo) {
+        List<Membro> carregados = new ArrayList<>();
+        for (Map.Entry<String, String> entry : senhasPorArquivo.entrySet()) {
+            CertificadoManager manager = new CertificadoManager();
+            if (manager.carregarCertificado(entry.getKey(), entry.getValue())) {
+                carregados.add(new Membro(entry.getKey(), manager, criarCota(cotaPorMinuto)));
+            } else {
+                logger.warn("Certificado {} não incluído no pool", entry.getKey());
+            }
+        }
+        
+        List<Membro> anteriores;
+        synchronized (this) {
+            anteriores = membros;
+            membros = Collections.unmodifiableList(carregados);
+            proximo = 0;
+        }
+        anteriores.forEach(Membro::fechar);
+        
+        logger.info("Pool de certificados SEFAZ com {} certificado(s): {}", carregados.size(), getCertificados());
+        return carregados.size();
+    }
+    
+    /**
+     * Carrega todos os certificados com nome padrão presentes na pasta resources/certificado
+     *
+     * @param senha Senha dos certificados (a mesma para todos)
+     * @return Quantidade de certificados carregados
+     */
+    public int carregarPadrao(String senha) {
+        Map<String, String> senhasPorArquivo = new LinkedHashMap<>();
+        for (String nomeArquivo : new CertificadoManager().listarCertificadosEncontrados()) {
+            senhasPorArquivo.put(nomeArquivo, senha);
+        }
+        return carregar(senhasPorArquivo);
+    }
+    
+    /**
+     * Define o critério de escolha do certificado
+     */
+    public void setSelecao(Selecao selecao) {
+        if (selecao == null) {
+            throw new IllegalArgumentException("selecao não pode ser nula");
+        }
+        this.selecao = selecao;
+    }
+    
+    /**
+     * Define a cota de consultas por minuto de cada certificado
+     *
+     * @param requisicoesPorMinuto Cota por certificado (0 para não limitar)
+     */
+    public void setCotaPorMinuto(int requisicoesPorMinuto) {
+        if (requisicoesPorMinuto < 0) {
+            throw new IllegalArgumentException("requisicoesPorMinuto não pode ser negativo");
+        }
+        this.cotaPorMinuto = requisicoesPorMinuto;
+        for (Membro membro : membros) {
+            membro.cota = criarCota(requisicoesPorMinuto);
+        }
+    }
+    
+    /**
+     * Verifica se há certificados no pool
+     */
+    public boolean possuiCertificados() {
+        return !membros.isEmpty();
+    }
+    
+    /**
+     * Escolhe o certificado da próxima consulta, ignorando os bloqueados por consumo indevido
+     *
+     * @return Certificado escolhido ou null se todos estiverem bloqueados
+     */
+    synchronized Membro selecionar() {
+        List<Membro> atuais = membros;
+        long agora = System.currentTimeMillis();
+        Membro escolhido = null;
+        
+        if (selecao == Selecao.ROUND_ROBIN) {
+            for (int i = 0; i < atuais.size() && escolhido == null; i++) {
+                Membro membro = atuais.get(proximo);
+                proximo = (proximo + 1) % atuais.size();
+                if (membro.isDisponivel(agora)) {
+                    escolhido = membro;
+                }
+            }
+        } else {
+            for (Membro membro : atuais) {
+                if (membro.isDisponivel(agora) && (escolhido == null || membro.ultimoUso < escolhido.ultimoUso)) {
+                    escolhido = membro;
+                }
+            }
+        }
+        
+        if (escolhido != null) {
+            // Sequência em vez de relógio: certificados nunca usados (0) são sempre os mais antigos
+            escolhido.ultimoUso = ++sequenciaUso;
+            escolhido.requisicoes.incrementAndGet();
+        }
+        return escolhido;
+    }
+    
+    /**
+     * Aguarda a cota do certificado, se configurada
+     *
+     * @param esperaMaximaMillis Espera máxima aceita
+     * @return false se a espera passaria do máximo (nada é reservado)
+     */
+    boolean aguardarCota(Membro membro, long esperaMaximaMillis) throws InterruptedException {
+        LimitadorTaxa cota = membro.cota;
+        if (cota == null) {
+            return true;
+        }
+        LimitadorTaxa.Reserva reserva = cota.reservar(esperaMaximaMillis);
+        if (reserva == null) {
+            return false;
+        }
+        reserva.aguardar();
+        return true;
+    }
+    
+    /**
+     * Aguarda a cota do certificado sem ocupar thread durante a espera
+     *
+     * @param esperaMaximaMillis Espera máxima aceita
+     * @return Future com true quando a consulta for liberada, ou false se a espera passaria
+     *         do máximo (nada é reservado) ou se o certificado saiu do pool durante a espera
+     */
+    CompletableFuture<Boolean> aguardarCotaAsync(Membro membro, long esperaMaximaMillis) {
+        LimitadorTaxa cota = membro.cota;
+        if (cota == null) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        
+        LimitadorTaxa.Reserva reserva = cota.reservar(esperaMaximaMillis);
+        if (reserva == null) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        long restante = reserva.getRestanteMillis();
+        if (restante <= 0) {
+            reserva.liberar();
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        
+        CompletableFuture<Boolean> liberada = new CompletableFuture<>();
+        liberada.whenComplete((resultado, erro) -> reserva.liberar());
+        if (!membro.registrarEspera(liberada)) {
+            liberada.complete(Boolean.FALSE);
+            return liberada;
+        }
+        
+        try {
+            getAgendadorCota().schedule(() -> liberada.complete(Boolean.TRUE), restante, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Pool fechado entre a reserva e o agendamento
+            liberada.complete(Boolean.FALSE);
+        }
+        return liberada;
+    }
+    
+    /**
+     * Tira o certificado da seleção pelo tempo de bloqueio da SEFAZ
+     */
+    void registrarConsumoIndevido(Membro membro) {
+        membro.bloqueadoAte = System.currentTimeMillis() + BLOQUEIO_CONSUMO_INDEVIDO_MS;
+        logger.warn("Consumo indevido na SEFAZ com o certificado {}; fora do pool por {} min",
+                membro.nome, TimeUnit.MILLISECONDS.toMinutes(BLOQUEIO_CONSUMO_INDEVIDO_MS));
+    }
+    
+    /**
+     * Nomes dos certificados do pool, na ordem de carga
+     */
+    public List<String> getCertificados() {
+        List<String> nomes = new ArrayList<>();
+        for (Membro membro : membros) {
+            nomes.add(membro.nome);
+        }
+        return nomes;
+    }
+    
+    /**
+     * Consultas encaminhadas a cada certificado desde a carga
+     */
+    public Map<String, Long> getRequisicoesPorCertificado() {
+        Map<String, Long> requisicoes = new LinkedHashMap<>();
+        for (Membro membro : membros) {
+            requisicoes.put(membro.nome, membro.requisicoes.get());
+        }
+        return requisicoes;
+    }
+    
+    /**
+     * Certificados fora da seleção por consumo indevido
+     */
+    public Set<String> getCertificadosBloqueados() {
+        long agora = System.currentTimeMillis();
+        Set<String> bloqueados = new LinkedHashSet<>();
+        for (Membro membro : membros) {
+            if (agora < membro.bloqueadoAte) {
+                bloqueados.add(membro.nome);
+            }
+        }
+        return bloqueados;
+    }
+    
+    /**
+     * Fecha os clientes HTTP de todos os certificados e o agendador de cota
+     * As esperas de cota pendentes terminam sem liberar a consulta
+     */
+    @Override
+    public void close() {
+        List<Membro> anteriores;
+        ScheduledExecutorService agendador;
+        synchronized (this) {
+            anteriores = membros;
+            membros = Collections.emptyList();
+            agendador = agendadorCota;
+            agendadorCota = null;
+        }
+        // Encerra as esperas antes do agendador, que descarta as liberações pendentes
+        anteriores.forEach(Membro::fechar);
+        if (agendador != null) {
+            agendador.shutdownNow();
+        }
+    }
+    
+    private synchronized ScheduledExecutorService getAgendadorCota() {
+        if (agendadorCota == null) {
+            ScheduledThreadPoolExecutor agendador = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "sefaz-cota-certificado");
+                thread.setDaemon(true);
+                return thread;
+            });
+            agendador.setRemoveOnCancelPolicy(true);
+            agendadorCota = agendador;
+        }
+        return agendadorCota;
+    }
+    
+    private static LimitadorTaxa criarCota(int requisicoesPorMinuto) {
+        return requisicoesPorMinuto > 0 ? new LimitadorTaxa(requisicoesPorMinuto, 1) : null;
+    }
+    
+    /**
+     * Certificado do pool com seus clientes HTTP, cota e bloqueio
+     */
+    static final class Membro {
+        private final String nome;
+        private final CertificadoManager manager;
+        private final SefazHttpClientRegistry registry;
+        private final AtomicLong requisicoes = new AtomicLong();
+        private final Set<CompletableFuture<Boolean>> esperas = ConcurrentHashMap.newKeySet();
+        private volatile LimitadorTaxa cota;
+        private volatile long bloqueadoAte;
+        
+        // Alterado apenas dentro de selecionar()
+        private long ultimoUso;
+        
+        // Alterado apenas com o lock do membro
+        private boolean fechado;
+        
+        Membro(String nome, CertificadoManager manager, LimitadorTaxa cota) {
+            this.nome = nome;
+            this.manager = manager;
+            this.registry = new SefazHttpClientRegistry(manager);
+            this.cota = cota;
+        }
+        
+        String getNome() {
+            return nome;
+        }
+        
+        SefazHttpClientRegistry getRegistry() {
+            return registry;
+        }
+        
+        /**
+         * Obtém o cliente assíncrono do certificado
+         *
+         * @return Cliente ou null se o certificado já saiu do pool
+         */
+        synchronized CloseableHttpAsyncClient obterClienteAsync() {
+            return fechado ? null : registry.getHttpAsyncClient();
+        }
+        
+        private boolean isDisponivel(long agora) {
+            return agora >= bloqueadoAte && manager.isCertificadoCarregado();
+        }
+        
+        /**
+         * Acompanha a espera de cota até ela terminar, para encerrá-la se o certificado sair do pool
+         *
+         * @return false se o certificado já saiu do pool
+         */
+        private synchronized boolean registrarEspera(CompletableFuture<Boolean> espera) {
+            if (fechado) {
+                return false;
+            }
+            esperas.add(espera);
+            espera.whenComplete((resultado, erro) -> esperas.remove(espera));
+            return true;
+        }
+        
+        private void fechar() {
+            synchronized (this) {
+                fechado = true;
+                registry.close();
+            }
+            for (CompletableFuture<Boolean> espera : esperas) {
+                espera.complete(Boolean.FALSE);
+            }
+        }
+    }
+}
@@ -1,19 +1,42 @@
 package br.com.dabu.service;
 
 import br.com.dabu.model.ReceitaWSResponse;
+import br.com.dabu.util.CorpoResposta;
+import br.com.dabu.util.HttpAsyncUtil;
+import br.com.dabu.util.LeitorReceitaWS;
+import br.com.dabu.util.LimitadorTaxa;
+import br.com.dabu.util.Prazo;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Serviço para integração com a API ReceitaWS
+ *
+ * As requisições passam por um limitador de taxa com fila justa, configurado pela cota do
+ * plano (gratuito: 3 consultas por minuto). Quem precisa esperar pela cota é avisado da
+ * posição na fila e do tempo estimado pelo EsperaCotaListener.
+ *
+ * As requisições têm timeouts de conexão e de leitura; consultarCNPJ(cnpj, prazo)
+ * ainda os limita ao prazo informado e aborta a requisição quando ele esgota.
  */
 public class ReceitaWSService {
     
@@ -21,23 +44,125 @@ public class ReceitaWSService {
     
     private static final String RECEITA_WS_BASE_URL = "https://receitaws.com.br/v1/cnpj/";
     
+    public static final int REQUISICOES_POR_MINUTO_GRATUITO = 3;
+    private static final long ESPERA_PADRAO_429_MS = 60_000;
+    private static final int MAX_TENTATIVAS_COTA = 2;
+    
+    private static final int TIMEOUT_CONEXAO_MS = 10_000;
+    private static final int TIMEOUT_LEITURA_MS = 30_000;
+    
+    public static final long TAMANHO_MAXIMO_RESPOSTA_PADRAO = 1024 * 1024;
+    
+    private static final RequestConfig REQUEST_CONFIG_PADRAO = RequestConfig.custom()
+            .setConnectTimeout(TIMEOUT_CONEXAO_MS)
+            .setSocketTimeout(TIMEOUT_LEITURA_MS)
+            .setConnectionRequestTimeout(TIMEOUT_CONEXAO_MS)
+            .build();
+    
+    /**
+     * Recebe avisos quando uma consulta precisa aguardar a cota da ReceitaWS
+     */
+    public interface EsperaCotaListener {
+        void onEsperaCota(String cnpj, int posicaoFila, long esperaMillis);
+    }
+    
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
     
+    private volatile LimitadorTaxa limitador = new LimitadorTaxa(REQUISICOES_POR_MINUTO_GRATUITO, 1);
+    private volatile String token;
+    private volatile EsperaCotaListener esperaCotaListener;
+    private volatile long tamanhoMaximoResposta = TAMANHO_MAXIMO_RESPOSTA_PADRAO;
+    private volatile boolean projecao;
+    
+    // Agenda a liberação das consultas assíncronas que aguardam cota
+    private ScheduledExecutorService agendadorCota;
+    
+    // Cliente NIO criado sob demanda na primeira consulta assíncrona
+    private volatile CloseableHttpAsyncClient httpAsyncClient;
+    
     public ReceitaWSService() {
         this.httpClient = HttpClientBuilder.create()
                 .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(REQUEST_CONFIG_PADRAO)
                 .build();
         this.objectMapper = new ObjectMapper();
     }
     
+    /**
+     * Configura a cota do plano contratado
+     * 
+     * @param requisicoesPorMinuto Consultas por minuto permitidas pelo plano
+     * @param token Token da API comercial (null no plano gratuito)
+     */
+    public void configurarPlano(int requisicoesPorMinuto, String token) {
+        this.limitador = new LimitadorTaxa(requisicoesPorMinuto, 1);
+        this.token = token;
+        logger.info("Plano ReceitaWS configurado: {} consultas por minuto{}", requisicoesPorMinuto,
+                token != null ? " (API comercial)" : "");
+    }
+    
+    public void setEsperaCotaListener(EsperaCotaListener esperaCotaListener) {
+        this.esperaCotaListener = esperaCotaListener;
+    }
+    
+    /**
+     * Define o tamanho máximo aceito no corpo das respostas da ReceitaWS
+     * 
+     * @param tamanhoMaximoBytes Máximo de bytes (padrão: 1 MB)
+     */
+    public void setTamanhoMaximoResposta(long tamanhoMaximoBytes) {
+        if (tamanhoMaximoBytes < 1) {
+            throw new IllegalArgumentException("tamanhoMaximoBytes deve ser maior que zero");
+        }
+        this.tamanhoMaximoResposta = tamanhoMaximoBytes;
+    }
+    
+    /**
+     * Ativa o modo projeção: apenas os campos usados na consolidação e no DTO são materializados
+     * Os demais (ex.: extra, cnaes_secundarios) ficam null, inclusive no cache
+     */
+    public void setProjecao(boolean projecao) {
+        this.projecao = projecao;
+    }
+    
+    /**
+     * Estima quanto uma nova consulta aguardaria pela cota
+     * 
+     * @return Espera estimada em milissegundos (0 se houver cota disponível)
+     */
+    public long estimarEsperaCotaMillis() {
+        return limitador.estimarEsperaMillis();
+    }
+    
+    /**
+     * Número de consultas aguardando cota
+     */
+    public int getConsultasAguardandoCota() {
+        return limitador.getAguardando();
+    }
+    
     /**
      * Consulta dados de CNPJ na ReceitaWS
+     * Aguarda a cota do plano antes da requisição; um HTTP 429 suspende a fila pelo
+     * tempo indicado no Retry-After e a consulta é refeita uma vez
      * 
      * @param cnpj CNPJ a ser consultado (apenas números)
      * @return Resposta da ReceitaWS ou null em caso de erro
      */
     public ReceitaWSResponse consultarCNPJ(String cnpj) {
+        return consultarCNPJ(cnpj, null);
+    }
+    
+    /**
+     * Consulta dados de CNPJ na ReceitaWS respeitando um prazo
+     * Se a espera pela cota ultrapassar o prazo, a consulta nem é enviada
+     * 
+     * @param cnpj CNPJ a ser consultado (apenas números)
+     * @param prazo Prazo da consulta (null para usar apenas os timeouts padrão)
+     * @return Resposta da ReceitaWS ou null em caso de erro ou prazo esgotado
+     */
+    public ReceitaWSResponse consultarCNPJ(String cnpj, Prazo prazo) {
         if (cnpj == null || cnpj.trim().isEmpty()) {
             logger.error("CNPJ não pode ser nulo ou vazio");
             return null;
@@ -54,56 +179,47 @@ public class ReceitaWSService {
         String url = RECEITA_WS_BASE_URL + cnpjLimpo;
         
         try {
-            logger.info("Consultando CNPJ {} na ReceitaWS: {}", cnpjLimpo, url);
-            
-            HttpGet request = new HttpGet(url);
-            request.setHeader("Accept", "application/json");
-            request.setHeader("User-Agent", "CNPJ-Consulta-Service/1.0");
-            
-            HttpResponse response = httpClient.execute(request);
-            int statusCode = response.getStatusLine().getStatusCode();
-            
-            if (statusCode == 200) {
-                String jsonResponse = EntityUtils.toString(response.getEntity(), "UTF-8");
-                logger.debug("Resposta ReceitaWS: {}", jsonResponse);
-                
-                // Verifica se a resposta contém erro antes de fazer parse
-                if (jsonResponse.contains("\"status\":\"ERROR\"")) {
-                    logger.error("Erro na consulta ReceitaWS para CNPJ {}: {}", cnpjLimpo, jsonResponse);
+            for (int tentativa = 1; ; tentativa++) {
+                // Verificação do prazo e reserva atômicas: chamadas concorrentes não passam juntas do prazo
+                LimitadorTaxa.Reserva reserva = prazo != null ? limitador.reservar(prazo.getRestanteMillis()) : limitador.reservar();
+                if (reserva == null) {
+                    logger.warn("Prazo de {} insuficiente para aguardar a cota da ReceitaWS para CNPJ: {}", prazo, cnpjLimpo);
                     return null;
                 }
+                avisarEsperaCota(cnpjLimpo, reserva).aguardar();
                 
-                ReceitaWSResponse receitaResponse = objectMapper.readValue(jsonResponse, ReceitaWSResponse.class);
-                
-                // Log dos dados recebidos para debug
-                logger.debug("Dados ReceitaWS processados:");
-                logger.debug("- CNPJ: {}", receitaResponse.getCnpj());
-                logger.debug("- Razão Social: {}", receitaResponse.getRazaoSocial());
-                logger.debug("- Nome Fantasia: {}", receitaResponse.getNomeFantasia());
-                logger.debug("- UF: {}", receitaResponse.getUf());
-                logger.debug("- Situação: {}", receitaResponse.getDescricaoSituacaoCadastral());
-                
-                // Verifica se campos essenciais estão presentes
-                if (receitaResponse.getRazaoSocial() == null || receitaResponse.getRazaoSocial().trim().isEmpty()) {
-                    logger.warn("Razão Social não encontrada na resposta ReceitaWS para CNPJ: {}", cnpjLimpo);
+                logger.info("Consultando CNPJ {} na ReceitaWS: {}", cnpjLimpo, url);
+                HttpGet request = criarRequisicao(url);
+                ScheduledFuture<?> abort = null;
+                if (prazo != null) {
+                    request.setConfig(prazo.limitar(REQUEST_CONFIG_PADRAO));
+                    abort = prazo.abortarAoEsgotar(request);
                 }
                 
-                if (receitaResponse.getUf() == null || receitaResponse.getUf().trim().isEmpty()) {
-                    logger.warn("UF não encontrada na resposta ReceitaWS para CNPJ: {}", cnpjLimpo);
+                try {
+                    HttpResponse response = httpClient.execute(request);
+                    
+                    if (isCotaExcedida(response) && tentativa < MAX_TENTATIVAS_COTA) {
+                        tratarCotaExcedida(response, cnpjLimpo);
+                        continue;
+                    }
+                    return processarResposta(response, cnpjLimpo);
+                } finally {
+                    if (abort != null) {
+                        abort.cancel(false);
+                    }
                 }
-                
-                logger.info("Consulta ReceitaWS realizada com sucesso para CNPJ: {}", cnpjLimpo);
-                return receitaResponse;
-                
-            } else if (statusCode == 429) {
-                logger.warn("Rate limit atingido na ReceitaWS para CNPJ: {}", cnpjLimpo);
-                return null;
-            } else {
-                logger.error("Erro na consulta ReceitaWS para CNPJ {}: Status {}", cnpjLimpo, statusCode);
-                return null;
             }
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Espera pela cota da ReceitaWS interrompida para CNPJ: {}", cnpjLimpo);
+            return null;
         } catch (IOException e) {
+            if (prazo != null && prazo.isEsgotado()) {
+                logger.warn("Prazo esgotado na consulta ReceitaWS para CNPJ {}: {}", cnpjLimpo, e.getMessage());
+                return null;
+            }
             logger.error("Erro de comunicação com ReceitaWS para CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
             return null;
         } catch (Exception e) {
@@ -112,6 +228,250 @@ public class ReceitaWSService {
         }
     }
     
+    /**
+     * Consulta dados de CNPJ na ReceitaWS sem bloquear a thread chamadora
+     * A requisição é conduzida pelas threads de I/O do cliente NIO
+     * 
+     * @param cnpj CNPJ a ser consultado (apenas números)
+     * @return Future com a resposta da ReceitaWS ou null em caso de erro
+     */
+    public CompletableFuture<ReceitaWSResponse> consultarCNPJAsync(String cnpj) {
+        if (cnpj == null || cnpj.trim().isEmpty()) {
+            logger.error("CNPJ não pode ser nulo ou vazio");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String cnpjLimpo = limparCNPJ(cnpj);
+        
+        if (!validarCNPJ(cnpjLimpo)) {
+            logger.error("CNPJ inválido: {}", cnpj);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String url = RECEITA_WS_BASE_URL + cnpjLimpo;
+        
+        return executarAsync(cnpjLimpo, url, 1)
+                .exceptionally(e -> {
+                    logger.error("Erro de comunicação com ReceitaWS para CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
+                    return null;
+                });
+    }
+    
+    /**
+     * Aguarda a cota sem bloquear e executa a requisição assíncrona, refazendo-a após um HTTP 429
+     */
+    private CompletableFuture<ReceitaWSResponse> executarAsync(String cnpjLimpo, String url, int tentativa) {
+        return aguardarCotaAsync(avisarEsperaCota(cnpjLimpo, limitador.reservar()))
+                .thenCompose(liberada -> {
+                    logger.info("Consultando CNPJ {} na ReceitaWS (assíncrono): {}", cnpjLimpo, url);
+                    return HttpAsyncUtil.executar(getHttpAsyncClient(), criarRequisicao(url), tamanhoMaximoResposta);
+                })
+                .thenCompose(response -> {
+                    if (isCotaExcedida(response) && tentativa < MAX_TENTATIVAS_COTA) {
+                        tratarCotaExcedida(response, cnpjLimpo);
+                        return executarAsync(cnpjLimpo, url, tentativa + 1);
+                    }
+                    
+                    try {
+                        return CompletableFuture.completedFuture(processarResposta(response, cnpjLimpo));
+                    } catch (IOException e) {
+                        logger.error("Erro ao ler resposta da ReceitaWS para CNPJ {}: {}", cnpjLimpo, e.getMessage(), e);
+                        return CompletableFuture.completedFuture(null);
+                    }
+                });
+    }
+    
+    /**
+     * Registra a espera da reserva na fila da cota, avisando o listener se houver espera
+     */
+    private LimitadorTaxa.Reserva avisarEsperaCota(String cnpjLimpo, LimitadorTaxa.Reserva reserva) {
+        if (reserva.getEsperaMillis() > 0) {
+            logger.info("Aguardando cota da ReceitaWS para CNPJ {}: posição {} na fila, ~{}s",
+                    cnpjLimpo, reserva.getPosicaoFila(), TimeUnit.MILLISECONDS.toSeconds(reserva.getEsperaMillis()));
+            
+            EsperaCotaListener listener = esperaCotaListener;
+            if (listener != null) {
+                try {
+                    listener.onEsperaCota(cnpjLimpo, reserva.getPosicaoFila(), reserva.getEsperaMillis());
+                } catch (Exception e) {
+                    logger.warn("Erro no listener de espera da cota: {}", e.getMessage(), e);
+                }
+            }
+        }
+        return reserva;
+    }
+    
+    /**
+     * Completa quando a reserva for liberada, sem ocupar thread durante a espera
+     */
+    private CompletableFuture<Void> aguardarCotaAsync(LimitadorTaxa.Reserva reserva) {
+        long restante = reserva.getRestanteMillis();
+        if (restante <= 0) {
+            reserva.liberar();
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        CompletableFuture<Void> liberada = new CompletableFuture<>();
+        getAgendadorCota().schedule(() -> {
+            reserva.liberar();
+            liberada.complete(null);
+        }, restante, TimeUnit.MILLISECONDS);
+        return liberada;
+    }
+    
+    private boolean isCotaExcedida(HttpResponse response) {
+        return response.getStatusLine().getStatusCode() == 429;
+    }
+    
+    /**
+     * Suspende a fila pelo Retry-After do HTTP 429 e descarta a resposta
+     */
+    private void tratarCotaExcedida(HttpResponse response, String cnpjLimpo) {
+        long espera = ESPERA_PADRAO_429_MS;
+        Header retryAfter = response.getFirstHeader("Retry-After");
+        if (retryAfter != null) {
+            try {
+                espera = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.getValue().trim()));
+            } catch (NumberFormatException e) {
+                logger.debug("Retry-After não numérico: {}", retryAfter.getValue());
+            }
+        }
+        
+        EntityUtils.consumeQuietly(response.getEntity());
+        limitador.suspender(espera);
+        logger.warn("Rate limit atingido na ReceitaWS para CNPJ {}; fila suspensa por {}s e consulta reagendada",
+                cnpjLimpo, TimeUnit.MILLISECONDS.toSeconds(espera));
+    }
+    
+    /**
+     * Cria requisição GET para a ReceitaWS
+     */
+    private HttpGet criarRequisicao(String url) {
+        HttpGet request = new HttpGet(url);
+        request.setHeader("Accept", "application/json");
+        request.setHeader("User-Agent", "CNPJ-Consulta-Service/1.0");
+        
+        String tokenPlano = token;
+        if (tokenPlano != null) {
+            request.setHeader("Authorization", "Bearer " + tokenPlano);
+        }
+        return request;
+    }
+    
+    /**
+     * Converte a resposta HTTP da ReceitaWS
+     * 
+     * @return Resposta da ReceitaWS ou null em caso de erro
+     */
+    private ReceitaWSResponse processarResposta(HttpResponse response, String cnpjLimpo) throws IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        
+        if (statusCode == 200) {
+            // Jackson lê os tokens direto do stream (detecta UTF-8/16/32 pelo próprio JSON)
+            ReceitaWSResponse receitaResponse;
+            try (InputStream conteudo = CorpoResposta.abrir(response, tamanhoMaximoResposta)) {
+                receitaResponse = LeitorReceitaWS.ler(objectMapper, conteudo, projecao);
+            }
+            
+            if (receitaResponse == null) {
+                logger.error("Resposta sem dados da ReceitaWS para CNPJ: {}", cnpjLimpo);
+                return null;
+            }
+            
+            // Status ERROR é detectado no próprio token, antes de converter o restante
+            if (LeitorReceitaWS.isErro(receitaResponse)) {
+                logger.error("Erro na consulta ReceitaWS para CNPJ {}: {}", cnpjLimpo, receitaResponse.getMensagem());
+                return null;
+            }
+            
+            // Log dos dados recebidos para debug
+            logger.debug("Dados ReceitaWS processados:");
+            logger.debug("- CNPJ: {}", receitaResponse.getCnpj());
+            logger.debug("- Razão Social: {}", receitaResponse.getRazaoSocial());
+            logger.debug("- Nome Fantasia: {}", receitaResponse.getNomeFantasia());
+            logger.debug("- UF: {}", receitaResponse.getUf());
+            logger.debug("- Situação: {}", receitaResponse.getDescricaoSituacaoCadastral());
+            
+            // Verifica se campos essenciais estão presentes
+            if (receitaResponse.getRazaoSocial() == null || receitaResponse.getRazaoSocial().trim().isEmpty()) {
+                logger.warn("Razão Social não encontrada na resposta ReceitaWS para CNPJ: {}", cnpjLimpo);
+            }
+            
+            if (receitaResponse.getUf() == null || receitaResponse.getUf().trim().isEmpty()) {
+                logger.warn("UF não encontrada na resposta ReceitaWS para CNPJ: {}", cnpjLimpo);
+            }
+            
+            logger.info("Consulta ReceitaWS realizada com sucesso para CNPJ: {}", cnpjLimpo);
+            return receitaResponse;
+        }
+        
+        // Descarta o corpo para liberar a conexão
+        EntityUtils.consumeQuietly(response.getEntity());
+        
+        if (statusCode == 429) {
+            logger.warn("Rate limit atingido na ReceitaWS para CNPJ: {}", cnpjLimpo);
+        } else {
+            logger.error("Erro na consulta ReceitaWS para CNPJ {}: Status {}", cnpjLimpo, statusCode);
+        }
+        return null;
+    }
+    
+    /**
+     * Obtém o cliente assíncrono, iniciando-o na primeira utilização
+     */
+    private CloseableHttpAsyncClient getHttpAsyncClient() {
+        CloseableHttpAsyncClient client = httpAsyncClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpAsyncClient;
+                if (client == null) {
+                    client = HttpAsyncClients.custom()
+                            .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(1).build())
+                            .setDefaultRequestConfig(REQUEST_CONFIG_PADRAO)
+                            .build();
+                    client.start();
+                    httpAsyncClient = client;
+                }
+            }
+        }
+        return client;
+    }
+    
+    /**
+     * Obtém o agendador das esperas de cota, criando-o na primeira utilização
+     */
+    private synchronized ScheduledExecutorService getAgendadorCota() {
+        if (agendadorCota == null) {
+            ScheduledThreadPoolExecutor agendador = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "receitaws-cota");
+                thread.setDaemon(true);
+                return thread;
+            });
+            agendador.setRemoveOnCancelPolicy(true);
+            agendadorCota = agendador;
+        }
+        return agendadorCota;
+    }
+    
+    /**
+     * Encerra o cliente assíncrono e o agendador de cota, se iniciados
+     */
+    public synchronized void encerrar() {
+        if (agendadorCota != null) {
+            agendadorCota.shutdownNow();
+            agendadorCota = null;
+        }
+        
+        if (httpAsyncClient != null) {
+            try {
+                httpAsyncClient.close();
+            } catch (IOException e) {
+                logger.warn("Erro ao encerrar cliente assíncrono da ReceitaWS: {}", e.getMessage());
+            }
+            httpAsyncClient = null;
+        }
+    }
+    
     /**
      * Remove formatação do CNPJ, deixando apenas números
      * 
@@ -3,31 +3,89 @@ package br.com.dabu.service;
 import br.com.dabu.config.SefazEndpoints;
 import br.com.dabu.model.SefazConsultaCadastroResponseJDOM;
 import br.com.dabu.util.CertificadoManager;
-import br.com.dabu.util.CertificadoUtil;
-import br.com.dabu.util.XMLUtil;
+import br.com.dabu.util.CircuitBreaker;
+import br.com.dabu.util.CorpoResposta;
+import br.com.dabu.util.EnvelopeConsultaCadastro;
+import br.com.dabu.util.HttpAsyncUtil;
+import br.com.dabu.util.LeitorRetConsCad;
+import br.com.dabu.util.LimiteAdaptativo;
+import br.com.dabu.util.Prazo;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.SSLContext;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Serviço para integração com SEFAZ NfeConsultaCadastro usando JDOM
+ *
+ * A concorrência de cada endpoint físico é controlada por um limite adaptativo,
+ * ajustado pela latência e pelos erros observados nas consultas daquele endpoint.
+ * Cada endpoint também tem um circuit breaker: após falhas seguidas as consultas
+ * falham imediatamente até que uma sonda confirme que a SEFAZ voltou.
+ *
+ * Com o pool de certificados carregado, cada consulta usa um dos certificados do pool
+ * (com seus próprios clientes HTTP e cota) em vez do certificado único.
+ *
+ * Thread-safe: o certificado é lido como um CertificadoCarregado imutável em cada consulta.
  */
 public class SefazConsultaCadastroService {
     
     private static final Logger logger = LoggerFactory.getLogger(SefazConsultaCadastroService.class);
     
     private final CertificadoManager certificadoManager;
+    private static final int LIMITE_CONCORRENCIA_INICIAL = 4;
+    private static final long ESPERA_MAXIMA_CONCORRENCIA_MS = 60_000;
+    private static final int LIMITE_FALHAS_CIRCUITO = 5;
+    private static final long TEMPO_CIRCUITO_ABERTO_MS = 30_000;
+    
+    public static final long TAMANHO_MAXIMO_RESPOSTA_PADRAO = 4 * 1024 * 1024;
+    private static final int TAMANHO_MAXIMO_LOG_ERRO = 64 * 1024;
+    
+    private final SefazHttpClientRegistry httpClientRegistry;
+    
+    // Certificados das empresas do grupo; quando vazio, vale o certificado único
+    private final PoolCertificadosSefaz poolCertificados = new PoolCertificadosSefaz();
+    
+    // Limite de concorrência por endpoint físico (UFs do SVRS compartilham o mesmo)
+    private final ConcurrentMap<String, LimiteAdaptativo> limitesConcorrencia = new ConcurrentHashMap<>();
+    
+    // Circuit breaker por endpoint físico
+    private final ConcurrentMap<String, CircuitBreaker> circuitos = new ConcurrentHashMap<>();
+    
+    private volatile long tamanhoMaximoResposta = TAMANHO_MAXIMO_RESPOSTA_PADRAO;
     
     public SefazConsultaCadastroService() {
         this.certificadoManager = new CertificadoManager();
+        this.httpClientRegistry = new SefazHttpClientRegistry(certificadoManager);
+    }
+    
+    /**
+     * Define o tamanho máximo aceito no corpo das respostas da SEFAZ
+     * Respostas maiores são descartadas e contam como falha da consulta
+     * 
+     * @param tamanhoMaximoBytes Máximo de bytes (padrão: 4 MB)
+     */
+    public void setTamanhoMaximoResposta(long tamanhoMaximoBytes) {
+        if (tamanhoMaximoBytes < 1) {
+            throw new IllegalArgumentException("tamanhoMaximoBytes deve ser maior que zero");
+        }
+        this.tamanhoMaximoResposta = tamanhoMaximoBytes;
     }
     
     /**
@@ -51,6 +109,13 @@ public class SefazConsultaCadastroService {
         return certificadoManager.carregarCertificado(nomeArquivo, senha);
     }
     
+    /**
+     * Obtém o pool de certificados (carga, critério de seleção, cota e situação de cada certificado)
+     */
+    public PoolCertificadosSefaz getPoolCertificados() {
+        return poolCertificados;
+    }
+    
     /**
      * Consulta cadastro na SEFAZ usando JDOM
      * 
@@ -59,6 +124,19 @@ public class SefazConsultaCadastroService {
      * @return Resposta da SEFAZ ou null em caso de erro
      */
     public SefazConsultaCadastroResponseJDOM consultarCadastro(String uf, String cnpj) {
+        return consultarCadastro(uf, cnpj, null);
+    }
+    
+    /**
+     * Consulta cadastro na SEFAZ respeitando um prazo
+     * Os timeouts da requisição são limitados ao tempo restante e ela é abortada quando o prazo esgota
+     * 
+     * @param uf Unidade Federativa
+     * @param cnpj CNPJ a ser consultado (apenas números)
+     * @param prazo Prazo da consulta (null para usar apenas os timeouts padrão)
+     * @return Resposta da SEFAZ ou null em caso de erro ou prazo esgotado
+     */
+    public SefazConsultaCadastroResponseJDOM consultarCadastro(String uf, String cnpj, Prazo prazo) {
         if (uf == null || uf.trim().isEmpty()) {
             logger.error("UF não pode ser nula ou vazia");
             return null;
@@ -69,7 +147,7 @@ public class SefazConsultaCadastroService {
             return null;
         }
         
-        if (!certificadoManager.isCertificadoCarregado()) {
+        if (!isCertificadoConfigurado()) {
             logger.error("Certificado não configurado. Configure o certificado antes de fazer consultas.");
             return null;
         }
@@ -80,112 +158,442 @@ public class SefazConsultaCadastroService {
             return null;
         }
         
+        if (!getCircuitBreaker(endpoint).isDisponivel()) {
+            logger.warn("SEFAZ indisponível (circuito aberto) - UF: {}, CNPJ: {}", uf, cnpj);
+            return null;
+        }
+        
         try {
             logger.info("Consultando cadastro na SEFAZ - UF: {}, CNPJ: {}", uf, cnpj);
             
-            // Cria XML da requisição usando JDOM
-            String xmlRequest = XMLUtil.criarXMLConsultaCadastro(uf.toUpperCase(), cnpj);
-            if (xmlRequest == null) {
-                logger.error("Erro ao criar XML da requisição");
+            byte[] soapEnvelope = montarEnvelopeSOAP(uf, cnpj);
+            if (soapEnvelope == null) {
                 return null;
             }
             
-            logger.info("=== XML REQUEST SEFAZ ===");
-            logger.info("XML Request (tamanho: {} bytes):\n{}", xmlRequest.length(), xmlRequest);
+            SefazHttpClientRegistry registry = httpClientRegistry;
+            PoolCertificadosSefaz.Membro certificado = null;
+            if (poolCertificados.possuiCertificados()) {
+                certificado = selecionarCertificado(uf);
+                if (certificado == null) {
+                    return null;
+                }
+                registry = certificado.getRegistry();
+            }
             
-            // Cria envelope SOAP usando JDOM
-            String soapEnvelope = XMLUtil.criarEnvelopeSOAP(xmlRequest, uf);
-            if (soapEnvelope == null) {
-                logger.error("Erro ao criar envelope SOAP");
+            // Circuito antes da cota: com ele aberto a cota do certificado não é consumida
+            CircuitBreaker circuito = getCircuitBreaker(endpoint);
+            if (!circuito.tentarAdquirir()) {
+                logger.warn("SEFAZ indisponível (circuito aberto) - UF: {}, CNPJ: {}", uf, cnpj);
                 return null;
             }
             
-            logger.info("=== SOAP ENVELOPE SEFAZ ===");
-            logger.info("SOAP Envelope (tamanho: {} bytes):\n{}", soapEnvelope.length(), soapEnvelope);
-            
-            // Executa requisição SOAP
-            String xmlResponse = executarRequisicaoSOAP(endpoint, soapEnvelope, uf);
-            if (xmlResponse == null) {
+            boolean liberada = false;
+            try {
+                long esperaMaxima = prazo != null ? prazo.limitarTimeout(ESPERA_MAXIMA_CONCORRENCIA_MS) : ESPERA_MAXIMA_CONCORRENCIA_MS;
+                liberada = certificado == null || poolCertificados.aguardarCota(certificado, esperaMaxima);
+            } finally {
+                if (!liberada) {
+                    circuito.cancelar();
+                }
+            }
+            if (!liberada) {
+                logger.warn("Cota do certificado {} esgotada para o prazo da consulta - UF: {}", certificado.getNome(), uf);
                 return null;
             }
             
-            logger.info("=== XML RESPONSE SEFAZ ===");
-            logger.info("XML Response (tamanho: {} bytes):\n{}", xmlResponse.length(), xmlResponse);
-            
-            // Extrai corpo da resposta
-            String corpoResposta = XMLUtil.extrairCorpoResposta(xmlResponse);
-            
-            logger.info("=== CORPO RESPOSTA SEFAZ ===");
-            logger.info("Corpo Resposta (tamanho: {} bytes):\n{}", 
-                corpoResposta != null ? corpoResposta.length() : 0, 
-                corpoResposta);
-            
-            // Cria resposta usando JDOM
-            SefazConsultaCadastroResponseJDOM responseJDOM = SefazConsultaCadastroResponseJDOM.fromXML(corpoResposta);
-            
-            logger.info("=== RESULTADO PARSING JDOM ===");
-            if (responseJDOM != null) {
-                logger.info("✓ Parsing JDOM realizado com sucesso");
-                if (responseJDOM.getInfCons() != null) {
-                    logger.info("✓ InfCons encontrado");
-                    logger.info("  - UF: {}", responseJDOM.getInfCons().getUf());
-                    logger.info("  - VerAplic: {}", responseJDOM.getInfCons().getVerAplic());
-                    logger.info("  - CStat: {}", responseJDOM.getInfCons().getcStat());
-                    logger.info("  - XMotivo: {}", responseJDOM.getInfCons().getxMotivo());
-                    logger.info("  - Total InfCad: {}", 
-                        responseJDOM.getInfCons().getInfCad() != null ? 
-                        responseJDOM.getInfCons().getInfCad().size() : 0);
-                } else {
-                    logger.warn("⚠ InfCons é null");
-                }
-            } else {
-                logger.error("✗ Falha no parsing JDOM");
+            // Executa requisição SOAP
+            SefazConsultaCadastroResponseJDOM resposta = executarRequisicaoSOAP(registry, circuito, endpoint, soapEnvelope, uf, prazo);
+            if (resposta == null) {
+                return null;
             }
             
-            return responseJDOM;
+            return registrarRespostaSOAP(verificarConsumoIndevido(certificado, resposta));
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Espera pela cota do certificado interrompida - UF: {}", uf);
+            return null;
         } catch (Exception e) {
             logger.error("Erro na consulta SEFAZ - UF: {}, CNPJ: {}: {}", uf, cnpj, e.getMessage(), e);
             return null;
         }
     }
     
+    /**
+     * Consulta cadastro na SEFAZ sem bloquear a thread chamadora
+     * A requisição é conduzida pelas threads de I/O do cliente NIO
+     * 
+     * @param uf Unidade Federativa
+     * @param cnpj CNPJ a ser consultado (apenas números)
+     * @return Future com a resposta da SEFAZ ou null em caso de erro
+     */
+    public CompletableFuture<SefazConsultaCadastroResponseJDOM> consultarCadastroAsync(String uf, String cnpj) {
+        return consultarCadastroAsync(uf, cnpj, null);
+    }
+    
+    /**
+     * Consulta cadastro na SEFAZ sem bloquear a thread chamadora, dentro do prazo informado
+     * Cancelar o Future retornado aborta a requisição HTTP ou, se ela ainda aguarda cota ou vaga,
+     * faz com que nem seja enviada
+     * 
+     * @param uf Unidade Federativa
+     * @param cnpj CNPJ a ser consultado (apenas números)
+     * @param prazo Prazo da consulta (null para usar apenas os timeouts padrão)
+     * @return Future com a resposta da SEFAZ ou null em caso de erro
+     */
+    public CompletableFuture<SefazConsultaCadastroResponseJDOM> consultarCadastroAsync(String uf, String cnpj, Prazo prazo) {
+        if (uf == null || uf.trim().isEmpty()) {
+            logger.error("UF não pode ser nula ou vazia");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        if (cnpj == null || cnpj.trim().isEmpty()) {
+            logger.error("CNPJ não pode ser nulo ou vazio");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        if (!isCertificadoConfigurado()) {
+            logger.error("Certificado não configurado. Configure o certificado antes de fazer consultas.");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String endpoint = SefazEndpoints.getEndpointConsultaCadastro(uf.toUpperCase());
+        if (endpoint == null) {
+            logger.error("Endpoint não encontrado para UF: {}", uf);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        if (!getCircuitBreaker(endpoint).isDisponivel()) {
+            logger.warn("SEFAZ indisponível (circuito aberto) - UF: {}, CNPJ: {}", uf, cnpj);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        logger.info("Consultando cadastro na SEFAZ (assíncrono) - UF: {}, CNPJ: {}", uf, cnpj);
+        
+        byte[] soapEnvelope = montarEnvelopeSOAP(uf, cnpj);
+        if (soapEnvelope == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        PoolCertificadosSefaz.Membro certificado = null;
+        if (poolCertificados.possuiCertificados()) {
+            certificado = selecionarCertificado(uf);
+            if (certificado == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        
+        // Circuito antes da cota: com ele aberto a cota do certificado não é consumida
+        CircuitBreaker circuito = getCircuitBreaker(endpoint);
+        if (!circuito.tentarAdquirir()) {
+            logger.warn("SEFAZ indisponível (circuito aberto) - UF: {}, CNPJ: {}", uf, cnpj);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        PoolCertificadosSefaz.Membro certificadoUsado = certificado;
+        long esperaMaxima = prazo != null ? prazo.limitarTimeout(ESPERA_MAXIMA_CONCORRENCIA_MS) : ESPERA_MAXIMA_CONCORRENCIA_MS;
+        CompletableFuture<Boolean> cota = certificado != null
+                ? poolCertificados.aguardarCotaAsync(certificado, esperaMaxima)
+                : CompletableFuture.completedFuture(Boolean.TRUE);
+        
+        // Resultado entregue ao chamador; cancelá-lo cancela a requisição em andamento
+        CompletableFuture<SefazConsultaCadastroResponseJDOM> resultado = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> requisicao = new AtomicReference<>();
+        
+        cota.thenCompose(liberada -> {
+                    if (!liberada) {
+                        logger.warn("Cota do certificado {} esgotada ou certificado fora do pool - UF: {}",
+                                certificadoUsado.getNome(), uf);
+                        return CompletableFuture.<SefazConsultaCadastroResponseJDOM>completedFuture(null);
+                    }
+                    return getLimiteConcorrencia(endpoint).adquirirAsync().thenCompose(permissao -> {
+                        // Cancelada ou com o prazo esgotado durante as esperas: a requisição nem é enviada
+                        if (resultado.isDone() || (prazo != null && prazo.isEsgotado())) {
+                            permissao.descartar();
+                            return CompletableFuture.<SefazConsultaCadastroResponseJDOM>completedFuture(null);
+                        }
+                        
+                        // Cliente obtido só agora: o pool pode ter sido recarregado durante as esperas
+                        CloseableHttpAsyncClient httpAsyncClient = certificadoUsado != null
+                                ? certificadoUsado.obterClienteAsync() : httpClientRegistry.getHttpAsyncClient();
+                        if (httpAsyncClient == null) {
+                            permissao.descartar();
+                            logger.error("Erro ao obter HttpAsyncClient para endpoint: {}", endpoint);
+                            return CompletableFuture.<SefazConsultaCadastroResponseJDOM>completedFuture(null);
+                        }
+                        
+                        HttpPost request = criarRequisicaoSOAP(endpoint, soapEnvelope, uf);
+                        if (prazo != null) {
+                            request.setConfig(prazo.limitar(SefazHttpClientRegistry.REQUEST_CONFIG_PADRAO));
+                        }
+                        CompletableFuture<HttpResponse> execucao = HttpAsyncUtil.executar(httpAsyncClient, request, tamanhoMaximoResposta);
+                        ScheduledFuture<?> cancelamento = prazo != null ? prazo.cancelarAoEsgotar(execucao) : null;
+                        requisicao.set(execucao);
+                        if (resultado.isDone()) {
+                            execucao.cancel(true);
+                        }
+                        
+                        return execucao.thenApply(response -> lerRespostaSOAP(response, uf))
+                                .whenComplete((resposta, erro) -> {
+                                    if (cancelamento != null) {
+                                        cancelamento.cancel(false);
+                                    }
+                                    // Cancelamento pelo chamador ou prazo esgotado não dizem nada sobre a saúde da SEFAZ
+                                    if (resposta == null && execucao.isCancelled()) {
+                                        permissao.descartar();
+                                        circuito.cancelar();
+                                    } else {
+                                        boolean sucesso = erro == null && resposta != null;
+                                        permissao.liberar(sucesso);
+                                        registrarResultado(circuito, sucesso);
+                                    }
+                                });
+                    });
+                })
+                .whenComplete((resposta, erro) -> {
+                    // Requisição não enviada: devolve a vez obtida no circuito antes da cota
+                    if (requisicao.get() == null) {
+                        circuito.cancelar();
+                    }
+                })
+                .thenApply(resposta -> resposta != null
+                        ? registrarRespostaSOAP(verificarConsumoIndevido(certificadoUsado, resposta)) : null)
+                .exceptionally(e -> {
+                    if (e instanceof CancellationException || e.getCause() instanceof CancellationException) {
+                        logger.warn("Consulta SEFAZ cancelada ou com prazo esgotado - UF: {}, CNPJ: {}", uf, cnpj);
+                    } else {
+                        logger.error("Erro na consulta SEFAZ - UF: {}, CNPJ: {}: {}", uf, cnpj, e.getMessage(), e);
+                    }
+                    return null;
+                })
+                .thenAccept(resultado::complete);
+        
+        resultado.whenComplete((resposta, erro) -> {
+            CompletableFuture<HttpResponse> execucao = requisicao.get();
+            if (resultado.isCancelled() && execucao != null) {
+                execucao.cancel(true);
+            }
+        });
+        return resultado;
+    }
+    
+    /**
+     * Monta o envelope SOAP da consulta cadastro
+     * Usa os fragmentos pré-compilados de EnvelopeConsultaCadastro, com os mesmos bytes da montagem via JDOM
+     * 
+     * @return Envelope SOAP em UTF-8 ou null em caso de erro
+     */
+    private byte[] montarEnvelopeSOAP(String uf, String cnpj) {
+        byte[] soapEnvelope = EnvelopeConsultaCadastro.montar(uf.toUpperCase(), cnpj);
+        if (soapEnvelope == null) {
+            logger.error("Erro ao criar envelope SOAP");
+            return null;
+        }
+        
+        logger.info("=== SOAP ENVELOPE SEFAZ ===");
+        logger.info("SOAP Envelope (tamanho: {} bytes)", soapEnvelope.length);
+        if (logger.isDebugEnabled()) {
+            logger.debug("SOAP Envelope:\n{}", new String(soapEnvelope, StandardCharsets.UTF_8));
+        }
+        
+        return soapEnvelope;
+    }
+    
+    /**
+     * Escolhe o certificado do pool para a consulta
+     * 
+     * @return Certificado ou null se todos estiverem bloqueados por consumo indevido
+     */
+    private PoolCertificadosSefaz.Membro selecionarCertificado(String uf) {
+        PoolCertificadosSefaz.Membro certificado = poolCertificados.selecionar();
+        if (certificado == null) {
+            logger.error("Todos os certificados do pool estão bloqueados por consumo indevido - UF: {}", uf);
+        } else {
+            logger.debug("Consulta SEFAZ com o certificado {} - UF: {}", certificado.getNome(), uf);
+        }
+        return certificado;
+    }
+    
+    /**
+     * Tira do pool o certificado que recebeu cStat de consumo indevido
+     */
+    private SefazConsultaCadastroResponseJDOM verificarConsumoIndevido(PoolCertificadosSefaz.Membro certificado,
+            SefazConsultaCadastroResponseJDOM resposta) {
+        if (certificado != null && resposta.getInfCons() != null
+                && PoolCertificadosSefaz.CSTAT_CONSUMO_INDEVIDO.equals(resposta.getInfCons().getcStat())) {
+            poolCertificados.registrarConsumoIndevido(certificado);
+        }
+        return resposta;
+    }
+    
+    /**
+     * Registra em log o retConsCad lido da resposta SOAP
+     */
+    private SefazConsultaCadastroResponseJDOM registrarRespostaSOAP(SefazConsultaCadastroResponseJDOM responseJDOM) {
+        logger.info("=== RESULTADO PARSING ===");
+        if (responseJDOM.getInfCons() != null) {
+            logger.info("✓ InfCons encontrado");
+            logger.info("  - UF: {}", responseJDOM.getInfCons().getUf());
+            logger.info("  - VerAplic: {}", responseJDOM.getInfCons().getVerAplic());
+            logger.info("  - CStat: {}", responseJDOM.getInfCons().getcStat());
+            logger.info("  - XMotivo: {}", responseJDOM.getInfCons().getxMotivo());
+            logger.info("  - Total InfCad: {}", 
+                responseJDOM.getInfCons().getInfCad() != null ? 
+                responseJDOM.getInfCons().getInfCad().size() : 0);
+        } else {
+            logger.warn("⚠ InfCons é null");
+        }
+        
+        return responseJDOM;
+    }
+    
     /**
      * Executa requisição SOAP
+     * Reutiliza o HttpClient (e as conexões TLS) do endpoint físico no registro do certificado usado
+     * A vez no circuito já foi obtida pelo chamador e é devolvida se a requisição não for enviada
      */
-    private String executarRequisicaoSOAP(String endpoint, String soapEnvelope, String uf) {
+    private SefazConsultaCadastroResponseJDOM executarRequisicaoSOAP(SefazHttpClientRegistry registry, CircuitBreaker circuito,
+            String endpoint, byte[] soapEnvelope, String uf, Prazo prazo) {
+        CloseableHttpClient httpClient = registry.getHttpClient(endpoint);
+        if (httpClient == null) {
+            circuito.cancelar();
+            logger.error("Erro ao obter HttpClient para endpoint: {}", endpoint);
+            return null;
+        }
+        
+        LimiteAdaptativo.Permissao permissao;
         try {
-            // Cria SSLContext com certificado
-            SSLContext sslContext = CertificadoUtil.criarSSLContext(
-                certificadoManager.getKeyStore(), 
-                certificadoManager.getSenhaCertificado()
-            );
-            
-            if (sslContext == null) {
-                logger.error("Erro ao criar SSLContext");
-                return null;
+            long esperaMaxima = prazo != null ? prazo.limitarTimeout(ESPERA_MAXIMA_CONCORRENCIA_MS) : ESPERA_MAXIMA_CONCORRENCIA_MS;
+            permissao = getLimiteConcorrencia(endpoint).adquirir(esperaMaxima);
+        } catch (InterruptedException e) {
+            circuito.cancelar();
+            Thread.currentThread().interrupt();
+            logger.warn("Espera por vaga na SEFAZ interrompida - UF: {}", uf);
+            return null;
+        }
+        
+        if (permissao == null) {
+            circuito.cancelar();
+            logger.error("Tempo de espera por vaga esgotado na SEFAZ - UF: {} ({})", uf, getLimiteConcorrencia(endpoint));
+            return null;
+        }
+        
+        HttpPost request = criarRequisicaoSOAP(endpoint, soapEnvelope, uf);
+        ScheduledFuture<?> abort = null;
+        if (prazo != null) {
+            request.setConfig(prazo.limitar(SefazHttpClientRegistry.REQUEST_CONFIG_PADRAO));
+            abort = prazo.abortarAoEsgotar(request);
+        }
+        SefazConsultaCadastroResponseJDOM resposta = null;
+        
+        // Executa requisição; fechar a resposta devolve a conexão ao pool
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            resposta = lerRespostaSOAP(response, uf);
+            return resposta;
+        } catch (Exception e) {
+            if (prazo != null && prazo.isEsgotado()) {
+                logger.warn("Prazo esgotado na requisição SOAP - UF: {}: {}", uf, e.getMessage());
+            } else {
+                logger.error("Erro ao executar requisição SOAP - UF: {}: {}", uf, e.getMessage(), e);
             }
-            
-            // Configura HttpClient com SSL
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
-            HttpClient httpClient = HttpClientBuilder.create()
-                    .setSSLSocketFactory(sslSocketFactory)
-                    .build();
-            
-            // Cria requisição POST
-            HttpPost request = new HttpPost(endpoint);
-            request.setHeader("Content-Type", "text/xml; charset=utf-8");
-            request.setHeader("SOAPAction", SefazEndpoints.getSoapAction(uf));
-            request.setEntity(new StringEntity(soapEnvelope, "UTF-8"));
-            
-            logger.info("=== HTTP REQUEST SEFAZ ===");
-            logger.info("Endpoint: {}", endpoint);
-            logger.info("SOAPAction: {}", SefazEndpoints.getSoapAction(uf));
-            logger.info("Content-Type: text/xml; charset=utf-8");
-            logger.info("Request Body Size: {} bytes", soapEnvelope.length());
-            
-            // Executa requisição
-            HttpResponse response = httpClient.execute(request);
+            return null;
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+            // Prazo do chamador esgotado não diz nada sobre a saúde da SEFAZ
+            if (resposta == null && prazo != null && prazo.isEsgotado()) {
+                permissao.descartar();
+                circuito.cancelar();
+            } else {
+                permissao.liberar(resposta != null);
+                registrarResultado(circuito, resposta != null);
+            }
+        }
+    }
+    
+    private void registrarResultado(CircuitBreaker circuito, boolean sucesso) {
+        if (sucesso) {
+            circuito.registrarSucesso();
+        } else {
+            circuito.registrarFalha();
+        }
+    }
+    
+    /**
+     * Obtém o circuit breaker do endpoint físico
+     */
+    private CircuitBreaker getCircuitBreaker(String endpoint) {
+        return circuitos.computeIfAbsent(endpoint, url -> new CircuitBreaker(url, LIMITE_FALHAS_CIRCUITO, TEMPO_CIRCUITO_ABERTO_MS));
+    }
+    
+    /**
+     * Verifica se a SEFAZ da UF está aceitando consultas (circuito não aberto)
+     * 
+     * @param uf Unidade Federativa
+     * @return false se o circuito do endpoint da UF estiver aberto
+     */
+    public boolean isSefazDisponivel(String uf) {
+        String endpoint = uf != null ? SefazEndpoints.getEndpointConsultaCadastro(uf.toUpperCase()) : null;
+        return endpoint == null || getCircuitBreaker(endpoint).isDisponivel();
+    }
+    
+    /**
+     * Obtém o estado do circuito de cada endpoint já consultado
+     * 
+     * @return Mapa endpoint -> estado do circuito
+     */
+    public Map<String, CircuitBreaker.Estado> getEstadosCircuito() {
+        Map<String, CircuitBreaker.Estado> estados = new TreeMap<>();
+        circuitos.forEach((endpoint, circuito) -> estados.put(endpoint, circuito.getEstado()));
+        return estados;
+    }
+    
+    /**
+     * Obtém o limite de concorrência adaptativo do endpoint físico
+     */
+    private LimiteAdaptativo getLimiteConcorrencia(String endpoint) {
+        return limitesConcorrencia.computeIfAbsent(endpoint, url -> new LimiteAdaptativo(url,
+                LIMITE_CONCORRENCIA_INICIAL, 1, SefazHttpClientRegistry.MAX_CONEXOES_POR_ENDPOINT));
+    }
+    
+    /**
+     * Obtém o limite de concorrência atual de cada endpoint já consultado
+     * 
+     * @return Mapa endpoint -> concorrência permitida no momento
+     */
+    public Map<String, Integer> getLimitesConcorrencia() {
+        Map<String, Integer> limites = new TreeMap<>();
+        limitesConcorrencia.forEach((endpoint, limite) -> limites.put(endpoint, limite.getLimite()));
+        return limites;
+    }
+    
+    /**
+     * Cria requisição POST com o envelope SOAP
+     */
+    private HttpPost criarRequisicaoSOAP(String endpoint, byte[] soapEnvelope, String uf) {
+        HttpPost request = new HttpPost(endpoint);
+        request.setHeader("Content-Type", "text/xml; charset=utf-8");
+        request.setHeader("SOAPAction", SefazEndpoints.getSoapAction(uf));
+        request.setEntity(new ByteArrayEntity(soapEnvelope));
+        
+        logger.info("=== HTTP REQUEST SEFAZ ===");
+        logger.info("Endpoint: {}", endpoint);
+        logger.info("SOAPAction: {}", SefazEndpoints.getSoapAction(uf));
+        logger.info("Content-Type: text/xml; charset=utf-8");
+        logger.info("Request Body Size: {} bytes", soapEnvelope.length);
+        
+        return request;
+    }
+    
+    /**
+     * Lê o retConsCad do corpo da resposta HTTP da SEFAZ, em uma única passada sobre o stream
+     * 
+     * @return Resposta da SEFAZ ou null se o status não for 200 ou o XML for inválido
+     */
+    private SefazConsultaCadastroResponseJDOM lerRespostaSOAP(HttpResponse response, String uf) {
+        try {
             int statusCode = response.getStatusLine().getStatusCode();
             
             logger.info("=== HTTP RESPONSE SEFAZ ===");
@@ -199,15 +607,25 @@ public class SefazConsultaCadastroService {
             }
             
             if (statusCode == 200) {
-                String xmlResponse = EntityUtils.toString(response.getEntity(), "UTF-8");
-                logger.info("Consulta SEFAZ realizada com sucesso - UF: {}", uf);
-                logger.info("Response Body Size: {} bytes", xmlResponse.length());
-                return xmlResponse;
+                Charset charset = CorpoResposta.getCharset(response);
+                
+                // Fechar o stream consome o restante do envelope e devolve a conexão ao pool
+                SefazConsultaCadastroResponseJDOM resposta;
+                try (InputStream conteudo = CorpoResposta.abrir(response, tamanhoMaximoResposta)) {
+                    resposta = LeitorRetConsCad.ler(conteudo, charset != null ? charset.name() : null);
+                }
+                
+                if (resposta != null) {
+                    logger.info("Consulta SEFAZ realizada com sucesso - UF: {}", uf);
+                } else {
+                    logger.error("Resposta SEFAZ com XML inválido - UF: {}", uf);
+                }
+                return resposta;
             } else {
                 logger.error("Erro na consulta SEFAZ - UF: {}, Status: {}", uf, statusCode);
                 // Tenta ler o corpo da resposta mesmo em caso de erro
                 try {
-                    String errorResponse = EntityUtils.toString(response.getEntity(), "UTF-8");
+                    String errorResponse = CorpoResposta.lerTexto(response, TAMANHO_MAXIMO_LOG_ERRO);
                     logger.error("Error Response Body ({} bytes):\n{}", errorResponse.length(), errorResponse);
                 } catch (Exception e) {
                     logger.error("Não foi possível ler o corpo da resposta de erro: {}", e.getMessage());
@@ -216,16 +634,16 @@ public class SefazConsultaCadastroService {
             }
             
         } catch (Exception e) {
-            logger.error("Erro ao executar requisição SOAP - UF: {}: {}", uf, e.getMessage(), e);
+            logger.error("Erro ao ler resposta SOAP - UF: {}: {}", uf, e.getMessage(), e);
             return null;
         }
     }
     
     /**
-     * Verifica se o certificado está configurado
+     * Verifica se o certificado está configurado (certificado único ou pool)
      */
     public boolean isCertificadoConfigurado() {
-        return certificadoManager.isCertificadoCarregado();
+        return certificadoManager.isCertificadoCarregado() || poolCertificados.possuiCertificados();
     }
     
     /**
@@ -241,6 +659,14 @@ public class SefazConsultaCadastroService {
     public java.util.List<String> listarCertificadosDisponiveis() {
         return certificadoManager.listarCertificadosDisponiveis();
     }
+    
+    /**
+     * Encerra os clientes HTTP e fecha as conexões mantidas no pool
+     */
+    public void encerrar() {
+        httpClientRegistry.close();
+        poolCertificados.close();
+    }
 }
 
 
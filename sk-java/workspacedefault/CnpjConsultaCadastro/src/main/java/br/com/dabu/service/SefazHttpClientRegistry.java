@@ -0,0 +1,297 @@
+package br.com.dabu.service;
+
+import br.com.dabu.util.CertificadoCarregado;
+import br.com.dabu.util.CertificadoManager;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro de HttpClients da SEFAZ, um por endpoint físico (URL de SefazEndpoints)
+ *
+ * Cada cliente possui seu próprio pool de conexões e reaproveita as conexões TLS
+ * entre consultas, evitando um handshake mútuo completo a cada requisição.
+ * Os clientes são recriados apenas quando o CertificadoManager carrega outro certificado.
+ *
+ * Para consultas assíncronas há um único HttpAsyncClient (NIO) por certificado,
+ * com limite de conexões por rota, ou seja, por endpoint físico.
+ *
+ * Todos os clientes têm timeouts de conexão e de leitura, para que uma SEFAZ fora do ar
+ * não prenda a thread indefinidamente.
+ *
+ * Thread-safe. Ao trocar ou remover o certificado, os clientes da geração anterior são
+ * fechados na hora: consultas ainda em andamento com eles falham e devem ser repetidas.
+ * Quem obteve a geração anterior pouco antes da troca recebe um cliente da geração atual.
+ */
+public class SefazHttpClientRegistry implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SefazHttpClientRegistry.class);
+    
+    static final int MAX_CONEXOES_POR_ENDPOINT = 20;
+    private static final int MAX_CONEXOES_ASYNC_TOTAL = 200;
+    private static final long KEEP_ALIVE_PADRAO_MS = 30_000;
+    private static final long TEMPO_MAXIMO_OCIOSO_SEGUNDOS = 60;
+    private static final int VALIDAR_APOS_INATIVIDADE_MS = 2_000;
+    
+    static final int TIMEOUT_CONEXAO_MS = 10_000;
+    static final int TIMEOUT_LEITURA_MS = 30_000;
+    static final int TIMEOUT_POOL_MS = 30_000;
+    
+    static final RequestConfig REQUEST_CONFIG_PADRAO = RequestConfig.custom()
+            .setConnectTimeout(TIMEOUT_CONEXAO_MS)
+            .setSocketTimeout(TIMEOUT_LEITURA_MS)
+            .setConnectionRequestTimeout(TIMEOUT_POOL_MS)
+            .build();
+    
+    // Usa o Keep-Alive informado pelo servidor ou o padrão quando ausente
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE = (response, context) -> {
+        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return keepAlive > 0 ? keepAlive : KEEP_ALIVE_PADRAO_MS;
+    };
+    
+    private final CertificadoManager certificadoManager;
+    private final Runnable ouvinteTroca = this::descartarGeracaoAnterior;
+    
+    private volatile Geracao geracaoAtual;
+    
+    public SefazHttpClientRegistry(CertificadoManager certificadoManager) {
+        this.certificadoManager = certificadoManager;
+        certificadoManager.adicionarOuvinteTroca(ouvinteTroca);
+    }
+    
+    /**
+     * Obtém o HttpClient do endpoint informado, criando-o na primeira utilização
+     *
+     * @param endpoint URL do endpoint (SefazEndpoints)
+     * @return HttpClient configurado com o certificado atual ou null em caso de erro
+     */
+    public CloseableHttpClient getHttpClient(String endpoint) {
+        while (true) {
+            Geracao geracao = obterGeracao();
+            if (geracao == null) {
+                return null;
+            }
+            CloseableHttpClient cliente = geracao.obterCliente(endpoint);
+            if (cliente != null) {
+                return cliente;
+            }
+            // Geração fechada por uma troca de certificado concorrente: tenta com a atual
+        }
+    }
+    
+    /**
+     * Obtém o HttpAsyncClient compartilhado entre os endpoints, iniciando-o na primeira utilização
+     *
+     * @return HttpAsyncClient configurado com o certificado atual ou null em caso de erro
+     */
+    public CloseableHttpAsyncClient getHttpAsyncClient() {
+        while (true) {
+            Geracao geracao = obterGeracao();
+            if (geracao == null) {
+                return null;
+            }
+            CloseableHttpAsyncClient cliente = geracao.obterClienteAsync();
+            if (cliente != null) {
+                return cliente;
+            }
+        }
+    }
+    
+    /**
+     * Obtém a geração de clientes correspondente ao certificado atual,
+     * descartando a anterior quando o certificado foi trocado
+     */
+    private Geracao obterGeracao() {
+        // KeyStore, senha e versão lidos do mesmo certificado, mesmo com troca concorrente
+        CertificadoCarregado certificado = certificadoManager.getCertificado();
+        if (certificado == null) {
+            logger.error("Nenhum certificado carregado");
+            return null;
+        }
+        
+        long versao = certificado.getVersao();
+        Geracao geracao = geracaoAtual;
+        if (geracao != null && geracao.versaoCertificado == versao) {
+            return geracao;
+        }
+        
+        synchronized (this) {
+            geracao = geracaoAtual;
+            if (geracao != null && geracao.versaoCertificado == versao) {
+                return geracao;
+            }
+            
+            // Outra thread já criou a geração de um certificado mais novo
+            if (geracao != null && geracao.versaoCertificado > versao) {
+                return geracao;
+            }
+            
+            if (geracao != null) {
+                logger.info("Certificado alterado, recriando clientes HTTP da SEFAZ");
+                geracao.fechar();
+                geracaoAtual = null;
+            }
+            
+            // SSLContext já criado na carga do certificado: nada de chave privada aqui
+            geracaoAtual = new Geracao(certificado);
+            return geracaoAtual;
+        }
+    }
+    
+    /**
+     * Fecha a geração atual assim que o certificado é trocado ou removido,
+     * sem esperar pela próxima consulta
+     */
+    private synchronized void descartarGeracaoAnterior() {
+        CertificadoCarregado certificado = certificadoManager.getCertificado();
+        Geracao geracao = geracaoAtual;
+        if (geracao != null && (certificado == null || geracao.versaoCertificado < certificado.getVersao())) {
+            logger.info("Certificado alterado ou removido, fechando clientes HTTP da SEFAZ");
+            geracao.fechar();
+            geracaoAtual = null;
+        }
+    }
+    
+    /**
+     * Cria HttpClient com pool de conexões dedicado ao endpoint
+     */
+    private static CloseableHttpClient criarHttpClient(String endpoint, SSLConnectionSocketFactory sslSocketFactory) {
+        logger.info("Criando HttpClient com pool de conexões para endpoint: {}", endpoint);
+        
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("https", sslSocketFactory)
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .build();
+        
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(MAX_CONEXOES_POR_ENDPOINT);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONEXOES_POR_ENDPOINT);
+        connectionManager.setValidateAfterInactivity(VALIDAR_APOS_INATIVIDADE_MS);
+        
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(KEEP_ALIVE)
+                .setDefaultRequestConfig(REQUEST_CONFIG_PADRAO)
+                // O cliente é exclusivo de um certificado: sem isso as conexões autenticadas
+                // ficariam associadas ao principal TLS e não seriam reaproveitadas
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(TEMPO_MAXIMO_OCIOSO_SEGUNDOS, TimeUnit.SECONDS)
+                .build();
+    }
+    
+    /**
+     * Fecha todos os clientes e conexões abertas
+     */
+    @Override
+    public synchronized void close() {
+        certificadoManager.removerOuvinteTroca(ouvinteTroca);
+        if (geracaoAtual != null) {
+            geracaoAtual.fechar();
+            geracaoAtual = null;
+        }
+    }
+    
+    /**
+     * Clientes criados para uma mesma versão de certificado
+     */
+    private static final class Geracao {
+        private final long versaoCertificado;
+        private final SSLContext sslContext;
+        private final SSLConnectionSocketFactory sslSocketFactory;
+        private final Map<String, CloseableHttpClient> clientes = new ConcurrentHashMap<>();
+        private CloseableHttpAsyncClient clienteAsync;
+        
+        // Depois de fechada, a geração não cria mais clientes (alterado só com o lock)
+        private boolean fechada;
+        
+        Geracao(CertificadoCarregado certificado) {
+            this.versaoCertificado = certificado.getVersao();
+            this.sslContext = certificado.getSslContext();
+            this.sslSocketFactory = certificado.getSslSocketFactory();
+        }
+        
+        /**
+         * Obtém o cliente do endpoint, criando-o na primeira utilização
+         *
+         * @return Cliente ou null se a geração já foi fechada
+         */
+        CloseableHttpClient obterCliente(String endpoint) {
+            CloseableHttpClient cliente = clientes.get(endpoint);
+            if (cliente != null) {
+                return cliente;
+            }
+            
+            synchronized (this) {
+                if (fechada) {
+                    return null;
+                }
+                return clientes.computeIfAbsent(endpoint, e -> criarHttpClient(e, sslSocketFactory));
+            }
+        }
+        
+        /**
+         * Obtém o cliente assíncrono, iniciando-o na primeira utilização
+         *
+         * @return Cliente ou null se a geração já foi fechada
+         */
+        synchronized CloseableHttpAsyncClient obterClienteAsync() {
+            if (fechada) {
+                return null;
+            }
+            if (clienteAsync == null) {
+                logger.info("Criando HttpAsyncClient da SEFAZ");
+                clienteAsync = HttpAsyncClients.custom()
+                        .setSSLContext(sslContext)
+                        .setMaxConnPerRoute(MAX_CONEXOES_POR_ENDPOINT)
+                        .setMaxConnTotal(MAX_CONEXOES_ASYNC_TOTAL)
+                        .setKeepAliveStrategy(KEEP_ALIVE)
+                        .setDefaultRequestConfig(REQUEST_CONFIG_PADRAO)
+                        .disableConnectionState()
+                        .build();
+                clienteAsync.start();
+            }
+            return clienteAsync;
+        }
+        
+        synchronized void fechar() {
+            fechada = true;
+            for (Map.Entry<String, CloseableHttpClient> entry : clientes.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    logger.warn("Erro ao fechar HttpClient do endpoint {}: {}", entry.getKey(), e.getMessage());
+                }
+            }
+            clientes.clear();
+            
+            if (clienteAsync != null) {
+                try {
+                    clienteAsync.close();
+                } catch (IOException e) {
+                    logger.warn("Erro ao fechar HttpAsyncClient: {}", e.getMessage());
+                }
+                clienteAsync = null;
+            }
+        }
+    }
+}
@@ -71,6 +71,8 @@ public class TesteComParametros {
             System.out.println("✗ Erro na consulta: " + resultado.getMensagemErro());
         }
 
+        service.encerrar();
+        
         System.out.println("\n=== TESTE CONCLUÍDO ===");
     }
 
@@ -0,0 +1,231 @@
+package br.com.dabu.teste;
+
+import br.com.dabu.config.SefazEndpoints;
+import br.com.dabu.model.CnpjConsultaResult;
+import br.com.dabu.service.CnpjConsultaService;
+import br.com.dabu.service.SefazHttpClientRegistry;
+import br.com.dabu.util.CertificadoCarregado;
+import br.com.dabu.util.CertificadoManager;
+
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Teste de estresse do modo thread-safe: uma única instância usada por várias threads.
+ * Uso: java TesteConcorrencia <senha_certificado> <certificado>[,<certificado>...] [threads] [segundos] [cnpj ...]
+ *
+ * 1) Troca de certificado: uma thread alterna entre os certificados informados (e às vezes remove o atual)
+ *    enquanto as demais leem o CertificadoManager e obtêm clientes do SefazHttpClientRegistry.
+ *    Cada leitura confere se nome, KeyStore e versão pertencem ao mesmo certificado.
+ * 2) Consultas (se houver CNPJs): as threads consultam os mesmos CNPJs no mesmo CnpjConsultaService
+ *    e conferem se todas receberam o mesmo resultado para cada CNPJ.
+ */
+public class TesteConcorrencia {
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== TESTE DE CONCORRÊNCIA ===");
+        
+        if (args.length < 2) {
+            System.out.println("Uso: java TesteConcorrencia <senha_certificado> <certificado>[,<certificado>...] [threads] [segundos] [cnpj ...]");
+            System.out.println("Exemplo: java TesteConcorrencia minhaSenha empresa1.pfx,empresa2.pfx 16 10 36897740000110");
+            return;
+        }
+        
+        String senha = args[0];
+        List<String> certificados = Arrays.asList(args[1].split(","));
+        int threads = args.length >= 3 ? Integer.parseInt(args[2]) : 16;
+        int segundos = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+        List<String> cnpjs = args.length >= 5 ? Arrays.asList(args).subList(4, args.length) : new ArrayList<>();
+        
+        boolean sucesso = testarTrocaCertificado(senha, certificados, threads, segundos);
+        if (!cnpjs.isEmpty()) {
+            sucesso &= testarConsultas(senha, certificados.get(0), cnpjs, threads);
+        }
+        
+        System.out.println(sucesso ? "\n✓ Nenhuma inconsistência encontrada" : "\n✗ Foram encontradas inconsistências");
+        System.out.println("\n=== TESTE CONCLUÍDO ===");
+    }
+    
+    /**
+     * Leituras concorrentes com trocas de certificado em andamento
+     */
+    private static boolean testarTrocaCertificado(String senha, List<String> certificados, int threads, int segundos)
+            throws Exception {
+        System.out.println("\n--- Troca de certificado (" + threads + " threads, " + segundos + "s) ---");
+        
+        // Certificado esperado para cada arquivo, carregado uma vez antes do teste
+        CertificadoManager manager = new CertificadoManager();
+        Map<String, Certificate> esperados = new HashMap<>();
+        for (String nome : certificados) {
+            if (!manager.carregarCertificado(nome, senha)) {
+                System.out.println("✗ Falha ao carregar o certificado " + nome);
+                return false;
+            }
+            esperados.put(nome, primeiroCertificado(manager.getCertificado().getKeyStore()));
+        }
+        
+        SefazHttpClientRegistry registry = new SefazHttpClientRegistry(manager);
+        String endpoint = SefazEndpoints.getEndpointConsultaCadastro("SP");
+        
+        AtomicBoolean executando = new AtomicBoolean(true);
+        AtomicLong leituras = new AtomicLong();
+        AtomicLong clientes = new AtomicLong();
+        AtomicLong trocas = new AtomicLong();
+        AtomicLong inconsistencias = new AtomicLong();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> tarefas = new ArrayList<>();
+        
+        tarefas.add(executor.submit(() -> {
+            largada.await();
+            while (executando.get()) {
+                if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                    manager.limparCertificado();
+                } else {
+                    String nome = certificados.get(ThreadLocalRandom.current().nextInt(certificados.size()));
+                    manager.carregarCertificado(nome, senha);
+                }
+                trocas.incrementAndGet();
+            }
+            return null;
+        }));
+        
+        for (int i = 0; i < threads; i++) {
+            boolean usaRegistry = i % 4 == 0;
+            tarefas.add(executor.submit(() -> {
+                largada.await();
+                long ultimaVersao = -1;
+                while (executando.get()) {
+                    if (usaRegistry) {
+                        if (registry.getHttpClient(endpoint) != null) {
+                            clientes.incrementAndGet();
+                        }
+                        continue;
+                    }
+                    
+                    CertificadoCarregado certificado = manager.getCertificado();
+                    leituras.incrementAndGet();
+                    if (certificado == null) {
+                        continue;
+                    }
+                    
+                    Certificate esperado = esperados.get(certificado.getNome());
+                    if (!Objects.equals(esperado, primeiroCertificado(certificado.getKeyStore()))
+                            || !senha.equals(certificado.getSenha())
+                            || certificado.getVersao() < ultimaVersao) {
+                        inconsistencias.incrementAndGet();
+                    }
+                    ultimaVersao = certificado.getVersao();
+                }
+                return null;
+            }));
+        }
+        
+        largada.countDown();
+        TimeUnit.SECONDS.sleep(segundos);
+        executando.set(false);
+        
+        long erros = 0;
+        for (Future<?> tarefa : tarefas) {
+            try {
+                tarefa.get();
+            } catch (Exception e) {
+                erros++;
+                System.out.println("✗ Erro em thread do teste: " + e.getCause());
+            }
+        }
+        executor.shutdown();
+        registry.close();
+        
+        System.out.println("Trocas de certificado: " + trocas.get());
+        System.out.println("Leituras do certificado: " + leituras.get());
+        System.out.println("Clientes HTTP obtidos: " + clientes.get());
+        System.out.println("Inconsistências: " + inconsistencias.get());
+        System.out.println("Exceções: " + erros);
+        
+        return inconsistencias.get() == 0 && erros == 0;
+    }
+    
+    /**
+     * Consultas simultâneas dos mesmos CNPJs no mesmo serviço
+     */
+    private static boolean testarConsultas(String senha, String certificado, List<String> cnpjs, int threads)
+            throws Exception {
+        System.out.println("\n--- Consultas compartilhadas (" + threads + " threads, " + cnpjs.size() + " CNPJs) ---");
+        
+        CnpjConsultaService service = new CnpjConsultaService();
+        if (!service.configurarCertificado(certificado, senha)) {
+            System.out.println("✗ Falha ao configurar o certificado. A consulta SEFAZ será pulada.");
+        }
+        
+        ConcurrentMap<String, String> resultados = new ConcurrentHashMap<>();
+        AtomicLong consultas = new AtomicLong();
+        AtomicLong divergencias = new AtomicLong();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> tarefas = new ArrayList<>();
+        long inicio = System.currentTimeMillis();
+        
+        for (int i = 0; i < threads; i++) {
+            int deslocamento = i;
+            tarefas.add(executor.submit(() -> {
+                largada.await();
+                for (int j = 0; j < cnpjs.size(); j++) {
+                    String cnpj = cnpjs.get((j + deslocamento) % cnpjs.size());
+                    CnpjConsultaResult resultado = service.consultarCNPJ(cnpj);
+                    consultas.incrementAndGet();
+                    
+                    String resumo = resultado.isSucesso() + "|" + resultado.getRazaoSocial() + "|" + resultado.getInscricaoEstadual();
+                    String anterior = resultados.putIfAbsent(cnpj, resumo);
+                    if (anterior != null && !anterior.equals(resumo)) {
+                        divergencias.incrementAndGet();
+                        System.out.println("✗ Resultado divergente para " + cnpj + ": " + anterior + " x " + resumo);
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        largada.countDown();
+        long erros = 0;
+        for (Future<?> tarefa : tarefas) {
+            try {
+                tarefa.get();
+            } catch (Exception e) {
+                erros++;
+                System.out.println("✗ Erro em thread do teste: " + e.getCause());
+            }
+        }
+        executor.shutdown();
+        
+        System.out.println("Consultas: " + consultas.get() + " em " + (System.currentTimeMillis() - inicio) + "ms");
+        System.out.println("Cache: " + service.getCache().getEstatisticasReceita());
+        System.out.println("Divergências: " + divergencias.get());
+        System.out.println("Exceções: " + erros);
+        
+        service.encerrar();
+        return divergencias.get() == 0 && erros == 0;
+    }
+    
+    private static Certificate primeiroCertificado(KeyStore keyStore) throws Exception {
+        return keyStore.getCertificate(keyStore.aliases().nextElement());
+    }
+}
@@ -0,0 +1,56 @@
+package br.com.dabu.teste;
+
+import br.com.dabu.service.CnpjConsultaService;
+import br.com.dabu.service.ConsultaLotePipeline;
+
+import java.nio.file.Paths;
+
+/**
+ * Classe de teste para consulta em lote de arquivo (CSV/TXT) para NDJSON.
+ * Uso: java TesteConsultaLote <arquivo_entrada> <arquivo_saida> [concorrencia] [nome_certificado senha_certificado]
+ * O progresso é salvo em <arquivo_saida>.checkpoint; executar novamente retoma de onde parou.
+ */
+public class TesteConsultaLote {
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== TESTE CONSULTA EM LOTE ===");
+        
+        if (args.length < 2) {
+            System.out.println("Uso: java TesteConsultaLote <arquivo_entrada> <arquivo_saida> [concorrencia] [nome_certificado senha_certificado]");
+            System.out.println("Exemplo: java TesteConsultaLote fornecedores.csv resultado.ndjson 8 certificado.p12 minhaSenha");
+            return;
+        }
+        
+        CnpjConsultaService service = new CnpjConsultaService();
+        
+        if (args.length >= 5) {
+            System.out.println("\nConfigurando certificado...");
+            if (service.configurarCertificado(args[3], args[4])) {
+                System.out.println("✓ Certificado configurado com sucesso!");
+            } else {
+                System.out.println("✗ Falha ao configurar o certificado. A consulta SEFAZ será pulada.");
+            }
+        }
+        
+        ConsultaLotePipeline pipeline = new ConsultaLotePipeline(service);
+        if (args.length >= 3) {
+            pipeline.setConcorrencia(Integer.parseInt(args[2]));
+        }
+        pipeline.setArquivoCheckpoint(Paths.get(args[1] + ".checkpoint"));
+        
+        System.out.println("\nProcessando " + args[0] + " -> " + args[1] + "...");
+        ConsultaLotePipeline.Resumo resumo = pipeline.executar(Paths.get(args[0]), Paths.get(args[1]));
+        
+        System.out.println("\n=== RESUMO DO LOTE ===");
+        System.out.println("CNPJs lidos: " + resumo.getLidos());
+        System.out.println("Já concluídos (checkpoint): " + resumo.getIgnorados());
+        System.out.println("Resultados gravados: " + resumo.getGravados());
+        System.out.println("Sucessos: " + resumo.getSucessos());
+        System.out.println("Erros: " + resumo.getErros());
+        System.out.println("Tempo total: " + resumo.getTempoMs() + "ms");
+        
+        service.encerrar();
+        
+        System.out.println("\n=== TESTE CONCLUÍDO ===");
+    }
+}
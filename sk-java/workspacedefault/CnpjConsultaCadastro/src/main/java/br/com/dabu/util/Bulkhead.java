@@ -0,0 +1,139 @@
+package br.com.dabu.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compartimento isolado (bulkhead) para as chamadas a um serviço remoto
+ *
+ * Possui um pool próprio com maxConcorrentes threads e aceita no máximo maxFila tarefas
+ * aguardando. Com o compartimento cheio a tarefa é recusada na hora, de forma que um serviço
+ * lento retém no máximo maxConcorrentes + maxFila chamadores e não afeta os demais compartimentos.
+ * Chamadas assíncronas (NIO) não usam o pool, mas ocupam as mesmas vagas enquanto em andamento.
+ */
+public class Bulkhead {
+    
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+    
+    private static final long TEMPO_OCIOSO_THREADS_SEGUNDOS = 60;
+    
+    private final String nome;
+    private final int capacidade;
+    private final Semaphore vagas;
+    private final ThreadPoolExecutor executor;
+    
+    /**
+     * @param nome Identificação usada em logs e no nome das threads (ex.: endpoint)
+     * @param maxConcorrentes Tarefas executando ao mesmo tempo
+     * @param maxFila Tarefas aguardando uma thread livre
+     */
+    public Bulkhead(String nome, int maxConcorrentes, int maxFila) {
+        if (maxConcorrentes < 1 || maxFila < 0) {
+            throw new IllegalArgumentException("maxConcorrentes deve ser maior que zero e maxFila não pode ser negativo");
+        }
+        
+        this.nome = nome;
+        this.capacidade = maxConcorrentes + maxFila;
+        this.vagas = new Semaphore(capacidade);
+        
+        AtomicInteger contador = new AtomicInteger();
+        // A fila do executor não precisa de limite: as vagas já restringem o total de tarefas
+        this.executor = new ThreadPoolExecutor(maxConcorrentes, maxConcorrentes,
+                TEMPO_OCIOSO_THREADS_SEGUNDOS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bulkhead-" + nome + "-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Executa a tarefa no pool do compartimento
+     *
+     * @param tarefa Tarefa bloqueante (ex.: requisição HTTP síncrona)
+     * @return Future da tarefa (cancel(true) interrompe a thread) ou null se o compartimento estiver cheio
+     */
+    public <T> Future<T> executar(Callable<T> tarefa) {
+        if (!vagas.tryAcquire()) {
+            logger.warn("Bulkhead {} cheio ({} tarefas); tarefa recusada", nome, capacidade);
+            return null;
+        }
+        
+        // done() é chamado uma única vez, seja ao concluir ou ao cancelar
+        FutureTask<T> futuro = new FutureTask<T>(tarefa) {
+            @Override
+            protected void done() {
+                vagas.release();
+            }
+        };
+        
+        try {
+            executor.execute(futuro);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Bulkhead {} encerrado; tarefa recusada", nome);
+            futuro.cancel(false);
+            return null;
+        }
+        return futuro;
+    }
+    
+    /**
+     * Inicia uma tarefa assíncrona ocupando uma vaga do compartimento até sua conclusão
+     *
+     * @param tarefa Fornece o future da operação assíncrona
+     * @return Future da tarefa ou null se o compartimento estiver cheio
+     */
+    public <T> CompletableFuture<T> executarAsync(Supplier<CompletableFuture<T>> tarefa) {
+        if (!vagas.tryAcquire()) {
+            logger.warn("Bulkhead {} cheio ({} tarefas); tarefa recusada", nome, capacidade);
+            return null;
+        }
+        
+        CompletableFuture<T> futuro;
+        try {
+            futuro = tarefa.get();
+        } catch (RuntimeException e) {
+            vagas.release();
+            throw e;
+        }
+        
+        futuro.whenComplete((resultado, erro) -> vagas.release());
+        return futuro;
+    }
+    
+    /**
+     * Obtém quantas tarefas ocupam o compartimento (em execução ou aguardando)
+     */
+    public int getOcupacao() {
+        return capacidade - vagas.availablePermits();
+    }
+    
+    public int getCapacidade() {
+        return capacidade;
+    }
+    
+    /**
+     * Encerra o pool, interrompendo as tarefas em execução
+     */
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+    
+    @Override
+    public String toString() {
+        return nome + " [" + getOcupacao() + "/" + capacidade + "]";
+    }
+}
@@ -0,0 +1,85 @@
+package br.com.dabu.util;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+
+import javax.net.ssl.SSLContext;
+import java.security.KeyStore;
+
+/**
+ * Certificado A1 carregado pelo CertificadoManager
+ *
+ * Traz o SSLContext já inicializado com a chave do certificado e a fábrica de sockets
+ * TLS do HttpClient, criados uma única vez na carga.
+ *
+ * Imutável: KeyStore, senha, nome e versão são publicados juntos e o KeyStore não é
+ * alterado depois de carregado, então a mesma instância pode ser lida por várias threads
+ * sem sincronização. Trocar de certificado cria outra instância.
+ */
+public final class CertificadoCarregado {
+    
+    private final String nome;
+    private final KeyStore keyStore;
+    private final String senha;
+    private final long versao;
+    private final SSLContext sslContext;
+    private final SSLConnectionSocketFactory sslSocketFactory;
+    
+    CertificadoCarregado(String nome, KeyStore keyStore, String senha, long versao, SSLContext sslContext) {
+        this.nome = nome;
+        this.keyStore = keyStore;
+        this.senha = senha;
+        this.versao = versao;
+        this.sslContext = sslContext;
+        this.sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
+    }
+    
+    /**
+     * Verifica se o KeyStore e a senha informados correspondem a este certificado
+     */
+    boolean isMesmoCertificado(KeyStore ks, String senha) {
+        return CertificadoUtil.mesmoCertificado(this.keyStore, ks) && this.senha.equals(senha);
+    }
+    
+    /**
+     * Obtém o nome do arquivo do certificado
+     */
+    public String getNome() {
+        return nome;
+    }
+    
+    /**
+     * Obtém o KeyStore do certificado (não deve ser alterado)
+     */
+    public KeyStore getKeyStore() {
+        return keyStore;
+    }
+    
+    /**
+     * Obtém a senha do certificado
+     */
+    public String getSenha() {
+        return senha;
+    }
+    
+    /**
+     * Obtém a versão do certificado no CertificadoManager
+     * Recarregar o mesmo certificado mantém a versão
+     */
+    public long getVersao() {
+        return versao;
+    }
+    
+    /**
+     * Obtém o SSLContext com a chave deste certificado
+     */
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+    
+    /**
+     * Obtém a fábrica de sockets TLS do HttpClient para este certificado
+     */
+    public SSLConnectionSocketFactory getSslSocketFactory() {
+        return sslSocketFactory;
+    }
+}
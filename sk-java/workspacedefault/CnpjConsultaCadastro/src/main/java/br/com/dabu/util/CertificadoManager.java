@@ -3,13 +3,26 @@ package br.com.dabu.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLContext;
 import java.io.InputStream;
 import java.security.KeyStore;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Gerenciador de certificados que carrega automaticamente da pasta resources/certificado
+ *
+ * O SSLContext é criado uma vez na carga do certificado e descartado na troca ou remoção,
+ * então as consultas nunca acessam a chave privada.
+ *
+ * Thread-safe: o certificado atual é um CertificadoCarregado imutável, trocado de forma
+ * atômica. Leituras não bloqueiam e sempre veem KeyStore, senha, nome e versão do mesmo
+ * certificado; para usar mais de um desses valores juntos, obtenha-os de getCertificado().
+ * Cargas e remoções concorrentes são serializadas e a última a terminar prevalece.
+ * Cada mudança de versão é avisada aos ouvintes de troca, fora do lock.
  */
 public class CertificadoManager {
     
@@ -24,9 +37,12 @@ public class CertificadoManager {
         "WJC_SISTEMAS_LTDA_51926609000127.pfx"
     );
     
-    private KeyStore keyStore;
-    private String senhaCertificado;
-    private String nomeCertificado;
+    private final AtomicReference<CertificadoCarregado> certificadoAtual = new AtomicReference<>();
+    
+    // Incrementada sempre que um certificado diferente é carregado ou removido (alterada só com o lock)
+    private volatile long versaoCertificado;
+    
+    private final List<Runnable> ouvintesTroca = new CopyOnWriteArrayList<>();
     
     /**
      * Carrega certificado automaticamente da pasta resources/certificado
@@ -56,9 +72,10 @@ public class CertificadoManager {
                     
                     // Valida certificado
                     if (CertificadoUtil.validarCertificado(ks)) {
-                        this.keyStore = ks;
-                        this.senhaCertificado = senha;
-                        this.nomeCertificado = nomeArquivo;
+                        if (!definirCertificado(ks, senha, nomeArquivo)) {
+                            logger.warn("Não foi possível criar o SSLContext do certificado {}", nomeArquivo);
+                            continue;
+                        }
                         
                         logger.info("Certificado {} carregado e validado com sucesso", nomeArquivo);
                         logger.info("Informações do certificado:\n{}", 
@@ -114,9 +131,10 @@ public class CertificadoManager {
             
             // Valida certificado
             if (CertificadoUtil.validarCertificado(ks)) {
-                this.keyStore = ks;
-                this.senhaCertificado = senha;
-                this.nomeCertificado = nomeArquivo;
+                if (!definirCertificado(ks, senha, nomeArquivo)) {
+                    logger.error("Não foi possível criar o SSLContext do certificado {}", nomeArquivo);
+                    return false;
+                }
                 
                 logger.info("Certificado {} carregado e validado com sucesso", nomeArquivo);
                 logger.info("Informações do certificado:\n{}", 
@@ -134,6 +152,36 @@ public class CertificadoManager {
         }
     }
     
+    /**
+     * Guarda o certificado carregado junto com o SSLContext criado a partir dele,
+     * incrementando a versão apenas quando o certificado for diferente do atual
+     * (recarga do mesmo arquivo reaproveita o SSLContext e não invalida clientes HTTP já criados)
+     * 
+     * @return false se não foi possível criar o SSLContext (o certificado atual é mantido)
+     */
+    private boolean definirCertificado(KeyStore ks, String senha, String nomeArquivo) {
+        synchronized (this) {
+            CertificadoCarregado anterior = certificadoAtual.get();
+            if (anterior != null && anterior.isMesmoCertificado(ks, senha)) {
+                certificadoAtual.set(new CertificadoCarregado(nomeArquivo, ks, senha, anterior.getVersao(),
+                        anterior.getSslContext()));
+                return true;
+            }
+            
+            // Única inicialização do KeyManagerFactory (decifra a chave privada) para este certificado
+            SSLContext sslContext = CertificadoUtil.criarSSLContext(ks, senha);
+            if (sslContext == null) {
+                return false;
+            }
+            
+            versaoCertificado++;
+            certificadoAtual.set(new CertificadoCarregado(nomeArquivo, ks, senha, versaoCertificado, sslContext));
+        }
+        
+        notificarTroca();
+        return true;
+    }
+    
     /**
      * Lista certificados disponíveis na pasta resources/certificado
      * 
@@ -145,45 +193,81 @@ public class CertificadoManager {
         return NOMES_PADRAO;
     }
     
+    /**
+     * Lista os certificados com nome padrão presentes na pasta resources/certificado
+     * 
+     * @return Nomes dos arquivos encontrados, na ordem de NOMES_PADRAO
+     */
+    public List<String> listarCertificadosEncontrados() {
+        List<String> encontrados = new ArrayList<>();
+        for (String nomeArquivo : NOMES_PADRAO) {
+            if (getClass().getResource(CERTIFICADO_PATH + nomeArquivo) != null) {
+                encontrados.add(nomeArquivo);
+            }
+        }
+        return encontrados;
+    }
+    
     /**
      * Verifica se há certificado carregado
      */
     public boolean isCertificadoCarregado() {
-        return keyStore != null;
+        return certificadoAtual.get() != null;
+    }
+    
+    /**
+     * Obtém o certificado carregado
+     * 
+     * @return Certificado atual ou null se nenhum estiver carregado
+     */
+    public CertificadoCarregado getCertificado() {
+        return certificadoAtual.get();
     }
     
     /**
      * Obtém o KeyStore carregado
      */
     public KeyStore getKeyStore() {
-        return keyStore;
+        CertificadoCarregado certificado = certificadoAtual.get();
+        return certificado != null ? certificado.getKeyStore() : null;
     }
     
     /**
      * Obtém a senha do certificado
      */
     public String getSenhaCertificado() {
-        return senhaCertificado;
+        CertificadoCarregado certificado = certificadoAtual.get();
+        return certificado != null ? certificado.getSenha() : null;
     }
     
     /**
      * Obtém o nome do certificado carregado
      */
     public String getNomeCertificado() {
-        return nomeCertificado;
+        CertificadoCarregado certificado = certificadoAtual.get();
+        return certificado != null ? certificado.getNome() : null;
+    }
+    
+    /**
+     * Obtém a versão do certificado carregado
+     * Muda a cada troca de certificado, permitindo invalidar recursos derivados dele
+     */
+    public long getVersaoCertificado() {
+        return versaoCertificado;
     }
     
     /**
      * Obtém informações do certificado carregado
      */
     public String getInformacoesCertificado() {
-        if (keyStore == null) {
+        CertificadoCarregado certificado = certificadoAtual.get();
+        if (certificado == null) {
             return "Nenhum certificado carregado";
         }
         
         StringBuilder info = new StringBuilder();
-        info.append("Certificado: ").append(nomeCertificado).append("\n");
-        info.append(CertificadoUtil.obterInformacoesCertificado(keyStore));
+        info.append("Certificado: ").append(certificado.getNome()).append("\n");
+        info.append(CertificadoUtil.obterInformacoesCertificado(certificado.getKeyStore()));
         
         return info.toString();
     }
@@ -192,10 +276,37 @@ public class CertificadoManager {
      * Limpa certificado carregado
      */
     public void limparCertificado() {
-        this.keyStore = null;
-        this.senhaCertificado = null;
-        this.nomeCertificado = null;
+        synchronized (this) {
+            this.versaoCertificado++;
+            this.certificadoAtual.set(null);
+        }
         logger.info("Certificado removido da memória");
+        notificarTroca();
+    }
+    
+    /**
+     * Registra uma ação executada após cada troca ou remoção do certificado,
+     * para liberar na hora os recursos criados com o certificado anterior
+     */
+    public void adicionarOuvinteTroca(Runnable ouvinte) {
+        ouvintesTroca.add(ouvinte);
+    }
+    
+    /**
+     * Remove uma ação registrada em adicionarOuvinteTroca
+     */
+    public void removerOuvinteTroca(Runnable ouvinte) {
+        ouvintesTroca.remove(ouvinte);
+    }
+    
+    private void notificarTroca() {
+        for (Runnable ouvinte : ouvintesTroca) {
+            try {
+                ouvinte.run();
+            } catch (RuntimeException e) {
+                logger.warn("Erro ao avisar troca de certificado: {}", e.getMessage(), e);
+            }
+        }
     }
 }
 
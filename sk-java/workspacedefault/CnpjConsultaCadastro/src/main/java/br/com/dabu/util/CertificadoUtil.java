@@ -148,6 +148,28 @@ public class CertificadoUtil {
         }
     }
     
+    /**
+     * Verifica se dois KeyStores contêm o mesmo certificado
+     * 
+     * @param atual KeyStore atual (pode ser null)
+     * @param novo KeyStore novo (pode ser null)
+     * @return true se ambos possuem o mesmo certificado, false caso contrário
+     */
+    public static boolean mesmoCertificado(KeyStore atual, KeyStore novo) {
+        if (atual == null || novo == null) {
+            return false;
+        }
+        
+        try {
+            X509Certificate certAtual = (X509Certificate) atual.getCertificate(atual.aliases().nextElement());
+            X509Certificate certNovo = (X509Certificate) novo.getCertificate(novo.aliases().nextElement());
+            return certAtual != null && certAtual.equals(certNovo);
+        } catch (Exception e) {
+            logger.debug("Erro ao comparar certificados: {}", e.getMessage());
+            return false;
+        }
+    }
+    
     /**
      * Obtém informações do certificado
      * 
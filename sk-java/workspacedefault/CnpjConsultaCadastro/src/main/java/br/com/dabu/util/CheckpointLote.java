@@ -0,0 +1,223 @@
+package br.com.dabu.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checkpoint em disco de um processamento em lote, permitindo retomá-lo após falha
+ *
+ * Formato do arquivo: cabeçalho (assinatura + linha processada + bytes da saída)
+ * seguido de um log append-only com os números de linha concluídos fora de ordem.
+ * A linha processada indica que todas as linhas até ela foram concluídas.
+ *
+ * Cada registro de progresso grava, de uma vez, as linhas concluídas e um marcador com
+ * o tamanho da saída já descarregada (gravado como -(bytes + 1), para não se confundir
+ * com um número de linha). Linhas sem marcador depois delas (queda no meio do registro)
+ * são descartadas, de modo que linhas e tamanho da saída sempre correspondem.
+ *
+ * Na abertura o log é compactado: o trecho contínuo vira a nova linha processada e apenas
+ * as demais linhas são regravadas.
+ */
+public class CheckpointLote implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointLote.class);
+    
+    private static final int ASSINATURA = 0x434B5032; // "CKP2"
+    private static final int TAMANHO_CABECALHO = 20;
+    private static final int TAMANHO_REGISTRO = 8;
+    
+    private final Path arquivo;
+    private final BitSet concluidas;
+    private final long linhaProcessada;
+    private final FileChannel canal;
+    private ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_REGISTRO * 64);
+    private long totalConcluidas;
+    private long bytesSaida;
+    
+    private CheckpointLote(Path arquivo, BitSet concluidas, long linhaProcessada, long bytesSaida, FileChannel canal) {
+        this.arquivo = arquivo;
+        this.concluidas = concluidas;
+        this.linhaProcessada = linhaProcessada;
+        this.bytesSaida = bytesSaida;
+        this.canal = canal;
+        this.totalConcluidas = linhaProcessada + concluidas.cardinality();
+    }
+    
+    /**
+     * Abre (ou cria) o checkpoint, carregando e compactando o progresso anterior
+     *
+     * @param arquivo Arquivo do checkpoint
+     * @return Checkpoint pronto para registrar novas linhas concluídas (sem progresso anterior, se novo)
+     * @throws IOException Em caso de erro de leitura/gravação ou arquivo inválido
+     */
+    public static CheckpointLote abrir(Path arquivo) throws IOException {
+        long linhaProcessada = 0;
+        long bytesSaida = 0;
+        BitSet concluidas = new BitSet();
+        
+        if (Files.exists(arquivo) && Files.size(arquivo) >= TAMANHO_CABECALHO) {
+            ByteBuffer conteudo = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+            if (conteudo.getInt() != ASSINATURA) {
+                throw new IOException("Arquivo de checkpoint inválido: " + arquivo);
+            }
+            linhaProcessada = conteudo.getLong();
+            bytesSaida = conteudo.getLong();
+            
+            // Linhas só valem com o marcador de saída gravado depois delas; um registro
+            // incompleto no final (queda durante a gravação) é descartado
+            List<Long> pendentes = new ArrayList<>();
+            while (conteudo.remaining() >= TAMANHO_REGISTRO) {
+                long registro = conteudo.getLong();
+                if (registro >= 0) {
+                    pendentes.add(registro);
+                    continue;
+                }
+                
+                bytesSaida = -registro - 1;
+                for (long linha : pendentes) {
+                    if (linha > linhaProcessada) {
+                        concluidas.set(indice(linha, linhaProcessada));
+                    }
+                }
+                pendentes.clear();
+            }
+            
+            // Avança a linha processada sobre o trecho contínuo já concluído
+            int contiguas = concluidas.nextClearBit(0);
+            if (contiguas > 0) {
+                linhaProcessada += contiguas;
+                concluidas = concluidas.get(contiguas, Math.max(contiguas, concluidas.length()));
+            }
+            
+            logger.info("Checkpoint carregado de {}: linhas concluídas até {}, mais {} fora de ordem, {} bytes de saída",
+                arquivo, linhaProcessada, concluidas.cardinality(), bytesSaida);
+        }
+        
+        compactar(arquivo, linhaProcessada, bytesSaida, concluidas);
+        
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new CheckpointLote(arquivo, concluidas, linhaProcessada, bytesSaida, canal);
+    }
+    
+    /**
+     * Regrava o arquivo apenas com o cabeçalho e as linhas fora do trecho contínuo
+     */
+    private static void compactar(Path arquivo, long linhaProcessada, long bytesSaida, BitSet concluidas)
+            throws IOException {
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+            cabecalho.putInt(ASSINATURA).putLong(linhaProcessada).putLong(bytesSaida).flip();
+            escrever(canal, cabecalho);
+            
+            ByteBuffer registros = ByteBuffer.allocate(TAMANHO_REGISTRO * 512);
+            for (int i = concluidas.nextSetBit(0); i >= 0; i = concluidas.nextSetBit(i + 1)) {
+                if (!registros.hasRemaining()) {
+                    registros.flip();
+                    escrever(canal, registros);
+                    registros.clear();
+                }
+                registros.putLong(linhaProcessada + 1 + i);
+            }
+            registros.flip();
+            escrever(canal, registros);
+            canal.force(true);
+        }
+        
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void escrever(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+    }
+    
+    private static int indice(long linha, long linhaProcessada) {
+        return Math.toIntExact(linha - linhaProcessada - 1);
+    }
+    
+    /**
+     * Verifica se a linha (a partir de 1) já foi concluída em execução anterior ou nesta
+     */
+    public synchronized boolean isConcluida(long linha) {
+        return linha <= linhaProcessada || concluidas.get(indice(linha, linhaProcessada));
+    }
+    
+    /**
+     * Registra as linhas como concluídas junto com o tamanho da saída que já as contém
+     * O registro vai direto para o arquivo, sobrevivendo a uma queda da JVM
+     *
+     * @param linhas Linhas concluídas desde o último registro (pode ser vazia)
+     * @param bytesSaida Tamanho da saída já descarregada, incluindo o resultado dessas linhas
+     */
+    public synchronized void registrar(Collection<Long> linhas, long bytesSaida) throws IOException {
+        if (linhas.isEmpty() && bytesSaida == this.bytesSaida) {
+            return;
+        }
+        
+        int tamanho = (linhas.size() + 1) * TAMANHO_REGISTRO;
+        if (buffer.capacity() < tamanho) {
+            buffer = ByteBuffer.allocate(tamanho);
+        }
+        buffer.clear();
+        for (long linha : linhas) {
+            buffer.putLong(linha);
+        }
+        buffer.putLong(-bytesSaida - 1).flip();
+        escrever(canal, buffer);
+        
+        for (long linha : linhas) {
+            if (!isConcluida(linha)) {
+                concluidas.set(indice(linha, linhaProcessada));
+                totalConcluidas++;
+            }
+        }
+        this.bytesSaida = bytesSaida;
+    }
+    
+    /**
+     * Obtém o total de linhas concluídas, incluindo execuções anteriores
+     */
+    public synchronized long getTotalConcluidas() {
+        return totalConcluidas;
+    }
+    
+    /**
+     * Obtém o tamanho da saída correspondente às linhas concluídas
+     * Na retomada, o que houver na saída depois desse ponto deve ser descartado
+     */
+    public synchronized long getBytesSaida() {
+        return bytesSaida;
+    }
+    
+    public Path getArquivo() {
+        return arquivo;
+    }
+    
+    /**
+     * Sincroniza o checkpoint com o disco e fecha o arquivo
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (canal.isOpen()) {
+            canal.force(true);
+            canal.close();
+        }
+    }
+}
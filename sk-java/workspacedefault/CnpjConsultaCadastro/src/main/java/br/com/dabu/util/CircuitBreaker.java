@@ -0,0 +1,122 @@
+package br.com.dabu.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker para um serviço remoto
+ *
+ * FECHADO: as chamadas passam normalmente; após N falhas consecutivas o circuito abre.
+ * ABERTO: as chamadas falham imediatamente, sem acessar o serviço, até o fim do tempo de espera.
+ * MEIO_ABERTO: uma única chamada de sonda é permitida; sucesso fecha o circuito, falha o reabre.
+ */
+public class CircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    public enum Estado {
+        FECHADO,
+        ABERTO,
+        MEIO_ABERTO
+    }
+    
+    private final String nome;
+    private final int limiteFalhas;
+    private final long tempoAbertoMillis;
+    
+    private Estado estado = Estado.FECHADO;
+    private int falhasConsecutivas;
+    private long abertoAte;
+    private boolean sondaEmAndamento;
+    
+    /**
+     * @param nome Identificação usada em logs (ex.: endpoint)
+     * @param limiteFalhas Falhas consecutivas que abrem o circuito
+     * @param tempoAbertoMillis Tempo em aberto antes de permitir uma sonda
+     */
+    public CircuitBreaker(String nome, int limiteFalhas, long tempoAbertoMillis) {
+        this.nome = nome;
+        this.limiteFalhas = limiteFalhas;
+        this.tempoAbertoMillis = tempoAbertoMillis;
+    }
+    
+    /**
+     * Solicita permissão para uma chamada
+     * Com o circuito aberto e o tempo de espera esgotado, a chamada permitida é a sonda
+     *
+     * @return true se a chamada pode ser feita; após a chamada, registrar sucesso ou falha
+     */
+    public synchronized boolean tentarAdquirir() {
+        switch (estado) {
+            case FECHADO:
+                return true;
+            case ABERTO:
+                if (System.currentTimeMillis() < abertoAte) {
+                    return false;
+                }
+                estado = Estado.MEIO_ABERTO;
+                sondaEmAndamento = true;
+                logger.info("Circuito {} meio-aberto: enviando sonda", nome);
+                return true;
+            default:
+                if (sondaEmAndamento) {
+                    return false;
+                }
+                sondaEmAndamento = true;
+                return true;
+        }
+    }
+    
+    /**
+     * Indica se uma chamada seria permitida agora, sem consumir a sonda
+     */
+    public synchronized boolean isDisponivel() {
+        switch (estado) {
+            case FECHADO:
+                return true;
+            case ABERTO:
+                return System.currentTimeMillis() >= abertoAte;
+            default:
+                return !sondaEmAndamento;
+        }
+    }
+    
+    public synchronized void registrarSucesso() {
+        if (estado != Estado.FECHADO) {
+            logger.info("Circuito {} fechado: serviço respondeu novamente", nome);
+        }
+        estado = Estado.FECHADO;
+        falhasConsecutivas = 0;
+        sondaEmAndamento = false;
+    }
+    
+    public synchronized void registrarFalha() {
+        falhasConsecutivas++;
+        
+        if (estado == Estado.MEIO_ABERTO || (estado == Estado.FECHADO && falhasConsecutivas >= limiteFalhas)) {
+            estado = Estado.ABERTO;
+            abertoAte = System.currentTimeMillis() + tempoAbertoMillis;
+            sondaEmAndamento = false;
+            logger.warn("Circuito {} aberto após {} falhas consecutivas; nova tentativa em {}s",
+                nome, falhasConsecutivas, tempoAbertoMillis / 1000);
+        }
+    }
+    
+    /**
+     * Devolve a permissão sem resultado (ex.: chamada abortada pelo prazo do chamador)
+     * Uma sonda cancelada libera a vez para a próxima chamada
+     */
+    public synchronized void cancelar() {
+        if (estado == Estado.MEIO_ABERTO) {
+            sondaEmAndamento = false;
+        }
+    }
+    
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+    
+    public String getNome() {
+        return nome;
+    }
+}
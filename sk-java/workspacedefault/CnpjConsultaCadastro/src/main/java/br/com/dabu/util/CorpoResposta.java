@@ -0,0 +1,177 @@
+package br.com.dabu.util;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Leitura do corpo das respostas HTTP direto do stream, com tamanho máximo
+ *
+ * O corpo é entregue ao parser sem passar por String. Uma resposta que declara ou
+ * envia mais bytes que o máximo falha com ContentTooLongException; a conexão é
+ * fechada em vez de drenada, para não ler o restante do corpo só para devolvê-la ao pool.
+ */
+public final class CorpoResposta {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CorpoResposta.class);
+    
+    private CorpoResposta() {
+    }
+    
+    /**
+     * Abre o corpo da resposta limitado ao tamanho máximo
+     *
+     * @param response Resposta HTTP (se Closeable, é fechada ao exceder o limite)
+     * @param tamanhoMaximo Máximo de bytes aceitos
+     * @return Stream do corpo (vazio se a resposta não tiver corpo)
+     * @throws ContentTooLongException se o Content-Length já ultrapassar o limite
+     */
+    public static InputStream abrir(HttpResponse response, long tamanhoMaximo) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new EntradaLimitada(null, tamanhoMaximo, null);
+        }
+        
+        Closeable conexao = response instanceof Closeable ? (Closeable) response : null;
+        long declarado = entity.getContentLength();
+        if (declarado > tamanhoMaximo) {
+            fecharConexao(conexao);
+            throw new ContentTooLongException("Corpo da resposta com " + declarado
+                    + " bytes excede o limite de " + tamanhoMaximo + " bytes");
+        }
+        return new EntradaLimitada(entity.getContent(), tamanhoMaximo, conexao);
+    }
+    
+    /**
+     * Charset informado no Content-Type da resposta
+     *
+     * @return Charset ou null se ausente
+     */
+    public static Charset getCharset(HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        ContentType contentType = entity != null ? ContentType.get(entity) : null;
+        return contentType != null ? contentType.getCharset() : null;
+    }
+    
+    /**
+     * Lê o início do corpo como texto, para log de respostas de erro
+     * O que passar do tamanho máximo é descartado junto com a conexão
+     *
+     * @return Texto lido (truncado no tamanho máximo)
+     */
+    public static String lerTexto(HttpResponse response, int tamanhoMaximo) throws IOException {
+        Charset charset = getCharset(response);
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        byte[] bloco = new byte[4096];
+        
+        InputStream entrada = abrir(response, Long.MAX_VALUE);
+        int lidos;
+        while (saida.size() < tamanhoMaximo
+                && (lidos = entrada.read(bloco, 0, Math.min(bloco.length, tamanhoMaximo - saida.size()))) != -1) {
+            saida.write(bloco, 0, lidos);
+        }
+        
+        if (saida.size() >= tamanhoMaximo && response instanceof Closeable) {
+            fecharConexao((Closeable) response);
+        } else {
+            entrada.close();
+        }
+        return new String(saida.toByteArray(), charset != null ? charset : StandardCharsets.UTF_8);
+    }
+    
+    private static void fecharConexao(Closeable conexao) {
+        if (conexao == null) {
+            return;
+        }
+        try {
+            conexao.close();
+        } catch (IOException e) {
+            logger.debug("Erro ao fechar conexão: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Stream que falha ao passar do tamanho máximo
+     */
+    private static final class EntradaLimitada extends FilterInputStream {
+        private final long tamanhoMaximo;
+        private final Closeable conexao;
+        private long lidos;
+        private boolean excedido;
+        
+        EntradaLimitada(InputStream entrada, long tamanhoMaximo, Closeable conexao) {
+            super(entrada);
+            this.tamanhoMaximo = tamanhoMaximo;
+            this.conexao = conexao;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (in == null) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                contar(1);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (in == null) {
+                return -1;
+            }
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                contar(n);
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            if (in == null) {
+                return 0;
+            }
+            long pulados = in.skip(n);
+            if (pulados > 0) {
+                contar(pulados);
+            }
+            return pulados;
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            // Após exceder, a conexão já foi fechada: nada a drenar
+            if (in != null && !excedido) {
+                in.close();
+            }
+        }
+        
+        private void contar(long n) throws IOException {
+            lidos += n;
+            if (lidos > tamanhoMaximo) {
+                excedido = true;
+                fecharConexao(conexao);
+                throw new ContentTooLongException("Corpo da resposta excede o limite de " + tamanhoMaximo + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package br.com.dabu.util;
+
+import org.jdom2.Verifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Montagem do envelope SOAP da consulta cadastro a partir de fragmentos pré-compilados
+ *
+ * Produz exatamente os mesmos bytes que XMLUtil.criarXMLConsultaCadastro seguido de
+ * XMLUtil.criarEnvelopeSOAP, mas sem montar documento JDOM nem reparsear o ConsCad:
+ * as partes fixas do envelope ficam em byte[] estáticos e apenas UF, CNPJ ou IE são
+ * escritos (normalizados e escapados) em um buffer reaproveitado pela thread.
+ */
+public final class EnvelopeConsultaCadastro {
+    
+    private static final Logger logger = LoggerFactory.getLogger(EnvelopeConsultaCadastro.class);
+    
+    private static final byte[] INICIO = bytes(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns:cad=\"http://www.portalfiscal.inf.br/nfe/wsdl/CadConsultaCadastro4\">"
+            + "<soap:Header /><soap:Body><cad:consultaCadastro>"
+            + "<cad:nfeCabecMsg><cad:versaoDados>2.00</cad:versaoDados></cad:nfeCabecMsg>"
+            + "<cad:nfeDadosMsg><ConsCad xmlns=\"http://www.portalfiscal.inf.br/nfe\" versao=\"2.00\">"
+            + "<infCons><xServ>CONS-CAD</xServ>");
+    
+    private static final byte[] FIM = bytes(
+            "</infCons></ConsCad></cad:nfeDadosMsg></cad:consultaCadastro></soap:Body></soap:Envelope>");
+    
+    private static final Campo UF = new Campo("UF");
+    private static final Campo CNPJ = new Campo("CNPJ");
+    private static final Campo IE = new Campo("IE");
+    
+    private static final byte[] AMP = bytes("&amp;");
+    private static final byte[] LT = bytes("&lt;");
+    private static final byte[] GT = bytes("&gt;");
+    private static final byte[] REFERENCIA = bytes("&#x");
+    
+    private static final int TAMANHO_INICIAL_BUFFER = 1024;
+    
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+    
+    private EnvelopeConsultaCadastro() {
+    }
+    
+    /**
+     * Monta o envelope da consulta por CNPJ
+     * Assim como em XMLUtil.criarXMLConsultaCadastro, o elemento CNPJ é omitido se o CNPJ estiver vazio
+     *
+     * @param uf Unidade Federativa (usada como informada)
+     * @param cnpj CNPJ a ser consultado
+     * @return Envelope SOAP em UTF-8 ou null se algum valor tiver caractere inválido em XML
+     */
+    public static byte[] montar(String uf, String cnpj) {
+        Buffer buffer = BUFFER.get();
+        buffer.reiniciar();
+        buffer.escrever(INICIO);
+        
+        if (!escreverCampo(buffer, UF, uf)) {
+            return null;
+        }
+        if (cnpj != null && !cnpj.trim().isEmpty() && !escreverCampo(buffer, CNPJ, cnpj)) {
+            return null;
+        }
+        
+        buffer.escrever(FIM);
+        return buffer.copiar();
+    }
+    
+    /**
+     * Monta o envelope da consulta por Inscrição Estadual
+     *
+     * @param uf Unidade Federativa (usada como informada)
+     * @param ie Inscrição Estadual
+     * @return Envelope SOAP em UTF-8 ou null se algum valor tiver caractere inválido em XML
+     */
+    public static byte[] montarPorIE(String uf, String ie) {
+        Buffer buffer = BUFFER.get();
+        buffer.reiniciar();
+        buffer.escrever(INICIO);
+        
+        if (!escreverCampo(buffer, UF, uf) || !escreverCampo(buffer, IE, ie)) {
+            return null;
+        }
+        
+        buffer.escrever(FIM);
+        return buffer.copiar();
+    }
+    
+    /**
+     * Escreve o elemento com o valor normalizado como no formato compacto do JDOM:
+     * espaços em branco colapsados em um só e removidos das pontas, e elemento vazio como &lt;X /&gt;
+     */
+    private static boolean escreverCampo(Buffer buffer, Campo campo, String valor) {
+        int inicio = 0;
+        int fim = valor != null ? valor.length() : 0;
+        while (inicio < fim && isEspaco(valor.charAt(inicio))) {
+            inicio++;
+        }
+        while (fim > inicio && isEspaco(valor.charAt(fim - 1))) {
+            fim--;
+        }
+        
+        if (inicio == fim) {
+            buffer.escrever(campo.vazio);
+            return true;
+        }
+        
+        buffer.escrever(campo.abertura);
+        boolean espacoPendente = false;
+        for (int i = inicio; i < fim; i++) {
+            char c = valor.charAt(i);
+            if (isEspaco(c)) {
+                espacoPendente = true;
+                continue;
+            }
+            if (espacoPendente) {
+                buffer.escrever((byte) ' ');
+                espacoPendente = false;
+            }
+            
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < fim && Character.isLowSurrogate(valor.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, valor.charAt(++i));
+            }
+            if (!Verifier.isXMLCharacter(codePoint)) {
+                logger.error("Erro ao montar envelope SOAP: caractere inválido em XML no campo {} (0x{})",
+                    campo.nome, Integer.toHexString(codePoint));
+                return false;
+            }
+            
+            switch (codePoint) {
+                case '&':
+                    buffer.escrever(AMP);
+                    break;
+                case '<':
+                    buffer.escrever(LT);
+                    break;
+                case '>':
+                    buffer.escrever(GT);
+                    break;
+                default:
+                    if (Character.isSupplementaryCodePoint(codePoint)) {
+                        // O XMLOutputter escreve caracteres fora do BMP como referência numérica
+                        buffer.escreverReferencia(codePoint);
+                    } else {
+                        buffer.escreverUTF8(codePoint);
+                    }
+            }
+        }
+        buffer.escrever(campo.fechamento);
+        return true;
+    }
+    
+    private static boolean isEspaco(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+    
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Tags pré-compiladas de um campo do infCons
+     */
+    private static final class Campo {
+        private final String nome;
+        private final byte[] abertura;
+        private final byte[] fechamento;
+        private final byte[] vazio;
+        
+        Campo(String nome) {
+            this.nome = nome;
+            this.abertura = bytes("<" + nome + ">");
+            this.fechamento = bytes("</" + nome + ">");
+            this.vazio = bytes("<" + nome + " />");
+        }
+    }
+    
+    /**
+     * Buffer de bytes reaproveitado entre as montagens da mesma thread
+     */
+    private static final class Buffer {
+        private byte[] dados = new byte[TAMANHO_INICIAL_BUFFER];
+        private int tamanho;
+        
+        void reiniciar() {
+            tamanho = 0;
+        }
+        
+        void escrever(byte[] bytes) {
+            garantirCapacidade(bytes.length);
+            System.arraycopy(bytes, 0, dados, tamanho, bytes.length);
+            tamanho += bytes.length;
+        }
+        
+        void escrever(byte b) {
+            garantirCapacidade(1);
+            dados[tamanho++] = b;
+        }
+        
+        void escreverUTF8(int caractere) {
+            garantirCapacidade(3);
+            if (caractere < 0x80) {
+                dados[tamanho++] = (byte) caractere;
+            } else if (caractere < 0x800) {
+                dados[tamanho++] = (byte) (0xC0 | (caractere >> 6));
+                dados[tamanho++] = (byte) (0x80 | (caractere & 0x3F));
+            } else {
+                dados[tamanho++] = (byte) (0xE0 | (caractere >> 12));
+                dados[tamanho++] = (byte) (0x80 | ((caractere >> 6) & 0x3F));
+                dados[tamanho++] = (byte) (0x80 | (caractere & 0x3F));
+            }
+        }
+        
+        void escreverReferencia(int codePoint) {
+            escrever(REFERENCIA);
+            int digitos = (Integer.SIZE - Integer.numberOfLeadingZeros(codePoint) + 3) / 4;
+            garantirCapacidade(digitos + 1);
+            for (int i = digitos - 1; i >= 0; i--) {
+                dados[tamanho++] = (byte) Character.forDigit((codePoint >> (i * 4)) & 0xF, 16);
+            }
+            dados[tamanho++] = (byte) ';';
+        }
+        
+        byte[] copiar() {
+            return Arrays.copyOf(dados, tamanho);
+        }
+        
+        private void garantirCapacidade(int adicional) {
+            if (tamanho + adicional > dados.length) {
+                dados = Arrays.copyOf(dados, Math.max(dados.length * 2, tamanho + adicional));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.dabu.util;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Utilitário para executar requisições no HttpAsyncClient expondo CompletableFuture
+ */
+public class HttpAsyncUtil {
+
+    /**
+     * Executa a requisição sem bloquear a thread chamadora
+     * O cancelamento do CompletableFuture retornado cancela a requisição HTTP
+     *
+     * @param client HttpAsyncClient já iniciado
+     * @param request Requisição a ser executada
+     * @return Future completado com a resposta (corpo já em memória) ou com a exceção de I/O
+     */
+    public static CompletableFuture<HttpResponse> executar(HttpAsyncClient client, HttpUriRequest request) {
+        CompletableFuture<HttpResponse> resultado = new CompletableFuture<>();
+        return vincular(resultado, client.execute(request, callback(resultado)));
+    }
+
+    /**
+     * Executa a requisição sem bloquear a thread chamadora, limitando o corpo da resposta
+     * O corpo é acumulado em buffer de tamanho proporcional ao recebido; ao passar do limite
+     * a requisição falha com ContentTooLongException e a conexão é descartada
+     *
+     * @param client HttpAsyncClient já iniciado
+     * @param request Requisição a ser executada
+     * @param tamanhoMaximoResposta Máximo de bytes aceitos no corpo da resposta
+     * @return Future completado com a resposta (corpo já em memória) ou com a exceção de I/O
+     */
+    public static CompletableFuture<HttpResponse> executar(HttpAsyncClient client, HttpUriRequest request,
+            long tamanhoMaximoResposta) {
+        CompletableFuture<HttpResponse> resultado = new CompletableFuture<>();
+        return vincular(resultado, client.execute(HttpAsyncMethods.create(request),
+                new ConsumidorLimitado(tamanhoMaximoResposta), callback(resultado)));
+    }
+
+    private static FutureCallback<HttpResponse> callback(CompletableFuture<HttpResponse> resultado) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                resultado.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                resultado.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                resultado.cancel(false);
+            }
+        };
+    }
+
+    private static CompletableFuture<HttpResponse> vincular(CompletableFuture<HttpResponse> resultado,
+            Future<HttpResponse> execucao) {
+        resultado.whenComplete((response, erro) -> {
+            if (resultado.isCancelled()) {
+                execucao.cancel(true);
+            }
+        });
+
+        return resultado;
+    }
+
+    /**
+     * Consumidor que acumula a resposta em memória até o tamanho máximo
+     */
+    private static final class ConsumidorLimitado extends AbstractAsyncResponseConsumer<HttpResponse> {
+        private static final int TAMANHO_BUFFER_INICIAL = 4096;
+
+        private final long tamanhoMaximo;
+        private volatile HttpResponse response;
+        private volatile SimpleInputBuffer buffer;
+        private long recebidos;
+
+        ConsumidorLimitado(long tamanhoMaximo) {
+            this.tamanhoMaximo = tamanhoMaximo;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+            long declarado = entity.getContentLength();
+            if (declarado > tamanhoMaximo) {
+                throw new ContentTooLongException("Corpo da resposta com " + declarado
+                        + " bytes excede o limite de " + tamanhoMaximo + " bytes");
+            }
+            int tamanhoInicial = declarado > 0 && declarado <= Integer.MAX_VALUE ? (int) declarado : TAMANHO_BUFFER_INICIAL;
+            this.buffer = new SimpleInputBuffer(tamanhoInicial, HeapByteBufferAllocator.INSTANCE);
+            this.response.setEntity(new ContentBufferEntity(entity, buffer));
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+            int lidos = buffer.consumeContent(decoder);
+            if (lidos > 0) {
+                recebidos += lidos;
+                if (recebidos > tamanhoMaximo) {
+                    throw new ContentTooLongException("Corpo da resposta excede o limite de " + tamanhoMaximo + " bytes");
+                }
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) {
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            this.response = null;
+            this.buffer = null;
+        }
+    }
+}
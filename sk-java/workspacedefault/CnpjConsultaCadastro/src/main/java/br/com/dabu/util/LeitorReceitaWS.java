@@ -0,0 +1,155 @@
+package br.com.dabu.util;
+
+import br.com.dabu.model.ReceitaWSResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Leitor em streaming da resposta JSON da ReceitaWS
+ *
+ * Os tokens são lidos direto do InputStream e entregues ao Jackson, que preenche o
+ * ReceitaWSResponse na mesma passada. Um "status": "ERROR" no objeto raiz interrompe a
+ * leitura assim que o token é lido, sem converter o restante da resposta.
+ *
+ * No modo projeção, os campos raiz que nenhuma parte do serviço usa são pulados sem
+ * serem materializados (inclusive objetos como "extra").
+ */
+public final class LeitorReceitaWS {
+    
+    private static final String STATUS_ERRO = "ERROR";
+    
+    // Campos lidos por consolidarDados, CnpjConsultaDTO e pelo TTL do cache
+    private static final Set<String> CAMPOS_PROJECAO = new HashSet<>(Arrays.asList(
+            "cnpj", "nome", "fantasia", "situacao", "data_situacao", "motivo_situacao",
+            "uf", "municipio", "cep", "logradouro", "numero", "complemento", "bairro",
+            "abertura", "porte", "capital_social", "codigo_natureza_juridica", "natureza_juridica",
+            "cnae_fiscal", "cnae_fiscal_descricao", "atividade_principal", "atividades_secundarias",
+            "opcao_pelo_simples", "data_opcao_pelo_simples", "data_exclusao_do_simples", "opcao_pelo_mei",
+            "situacao_especial", "data_situacao_especial", "tipo", "email", "telefone",
+            "ddd_telefone_1", "ddd_telefone_2", "ddd_fax", "ultima_atualizacao", "efr",
+            "qsa", "simples", "simei", "billing", "status", "message"));
+    
+    private LeitorReceitaWS() {
+    }
+    
+    /**
+     * Lê a resposta da ReceitaWS
+     *
+     * @param objectMapper ObjectMapper usado na conversão
+     * @param entrada Corpo da resposta HTTP (não é fechado aqui; o encoding é detectado pelo JSON)
+     * @param projecao true para materializar apenas os campos usados pelo serviço
+     * @return Resposta preenchida; em erro, apenas status e mensagem; null se o JSON for null
+     * @throws IOException se o JSON for inválido ou vazio
+     */
+    public static ReceitaWSResponse ler(ObjectMapper objectMapper, InputStream entrada, boolean projecao) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(entrada)) {
+            Filtro filtro = new Filtro(parser, projecao);
+            try {
+                return objectMapper.readValue(filtro, ReceitaWSResponse.class);
+            } catch (StatusErro e) {
+                ReceitaWSResponse erro = new ReceitaWSResponse();
+                erro.setStatus(STATUS_ERRO);
+                erro.setMensagem(filtro.mensagem != null ? filtro.mensagem : lerMensagem(parser));
+                return erro;
+            }
+        }
+    }
+    
+    /**
+     * Indica se a resposta lida é um erro da ReceitaWS
+     */
+    public static boolean isErro(ReceitaWSResponse resposta) {
+        return STATUS_ERRO.equals(resposta.getStatus());
+    }
+    
+    /**
+     * Procura o "message" no restante do objeto raiz, pulando os demais valores
+     */
+    private static String lerMensagem(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = parser.getCurrentName();
+            parser.nextToken();
+            if ("message".equals(campo)) {
+                return parser.getValueAsString();
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+    
+    private static boolean isRaiz(JsonStreamContext contexto) {
+        return contexto.inObject() && contexto.getParent() != null && contexto.getParent().inRoot();
+    }
+    
+    /**
+     * Interrompe a conversão no primeiro token de status ERROR
+     * Não é JsonProcessingException, para o Jackson repassá-la sem embrulhar
+     */
+    private static final class StatusErro extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        StatusErro() {
+            super(STATUS_ERRO, null);
+        }
+        
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+    
+    /**
+     * Parser que detecta o status de erro e, no modo projeção, pula os campos raiz não usados
+     */
+    private static final class Filtro extends JsonParserDelegate {
+        private final boolean projecao;
+        
+        // "message" lido antes do status, para o caso de erro
+        private String mensagem;
+        
+        Filtro(JsonParser parser, boolean projecao) {
+            super(parser);
+            this.projecao = projecao;
+        }
+        
+        @Override
+        public JsonToken nextToken() throws IOException {
+            JsonToken token = delegate.nextToken();
+            if (token == null || !isRaiz(delegate.getParsingContext())) {
+                return token;
+            }
+            
+            while (projecao && token == JsonToken.FIELD_NAME && !CAMPOS_PROJECAO.contains(delegate.getCurrentName())) {
+                delegate.nextToken();
+                delegate.skipChildren();
+                token = delegate.nextToken();
+            }
+            
+            if (token == JsonToken.VALUE_STRING) {
+                String campo = delegate.getCurrentName();
+                if ("status".equals(campo) && STATUS_ERRO.equals(delegate.getText())) {
+                    throw new StatusErro();
+                }
+                if ("message".equals(campo)) {
+                    mensagem = delegate.getText();
+                }
+            }
+            return token;
+        }
+        
+        @Override
+        public JsonToken nextValue() throws IOException {
+            JsonToken token = nextToken();
+            return token == JsonToken.FIELD_NAME ? nextToken() : token;
+        }
+    }
+}
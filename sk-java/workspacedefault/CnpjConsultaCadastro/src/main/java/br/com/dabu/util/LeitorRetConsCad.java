@@ -0,0 +1,501 @@
+package br.com.dabu.util;
+
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM;
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM.Endereco;
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM.InfCad;
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM.InfCons;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leitor StAX do retConsCad na resposta SOAP da SEFAZ
+ *
+ * Lê o corpo da resposta HTTP para um buffer e o percorre em uma única passada, preenchendo
+ * InfCons/InfCad/Endereco sem montar documento. O envelope, o namespace e o elemento que
+ * embrulha o retorno (nfeResultMsg, consultaCadastro2Result...) variam por UF e são ignorados:
+ * vale o primeiro infCons encontrado. Os textos têm espaços normalizados, como no parse JDOM anterior.
+ *
+ * Os blocos infCad não são montados na leitura: a passada registra onde cada um está nos bytes
+ * da resposta e o InfCons recebe uma ListaInfCadSobDemanda, que decodifica cada bloco no primeiro
+ * acesso. Em respostas que não são ASCII-compatíveis (UTF-16...) os infCad são montados na hora.
+ */
+public final class LeitorRetConsCad {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LeitorRetConsCad.class);
+    
+    private static final XMLInputFactory FABRICA = criarFabrica(true);
+    
+    // Blocos infCad isolados não trazem as declarações de namespace dos ancestrais
+    private static final XMLInputFactory FABRICA_FRAGMENTO = criarFabrica(false);
+    
+    private static final byte[] INF_CAD = "infCad".getBytes(StandardCharsets.US_ASCII);
+    private static final int TAMANHO_BLOCO_LEITURA = 8192;
+    
+    private LeitorRetConsCad() {
+    }
+    
+    /**
+     * Lê a resposta da consulta cadastro
+     *
+     * @param entrada Corpo da resposta HTTP (não é fechado aqui)
+     * @param charset Charset informado no Content-Type ou null para detectar pelo próprio XML
+     * @return Resposta preenchida (infCons null se ausente) ou null se o XML for inválido
+     */
+    public static SefazConsultaCadastroResponseJDOM ler(InputStream entrada, String charset) {
+        byte[] conteudo;
+        try {
+            conteudo = lerBytes(entrada);
+        } catch (IOException e) {
+            logger.error("Erro ao ler resposta SEFAZ: {}", e.getMessage(), e);
+            return null;
+        }
+        
+        SefazConsultaCadastroResponseJDOM resposta = ler(conteudo, charset, isAsciiCompativel(conteudo, charset));
+        if (resposta != null && resposta.getInfCons() == null) {
+            logger.warn("Elemento infCons não encontrado na resposta SEFAZ");
+        }
+        return resposta;
+    }
+    
+    /**
+     * Lê a resposta a partir dos bytes
+     *
+     * @param sobDemanda true para registrar a posição dos infCad em vez de montá-los
+     */
+    private static SefazConsultaCadastroResponseJDOM ler(byte[] conteudo, String charset, boolean sobDemanda) {
+        XMLStreamReader leitor = null;
+        try {
+            InputStream entrada = new ByteArrayInputStream(conteudo);
+            leitor = charset != null ? FABRICA.createXMLStreamReader(entrada, charset) : FABRICA.createXMLStreamReader(entrada);
+            String encoding = charset != null ? charset : leitor.getEncoding();
+            
+            SefazConsultaCadastroResponseJDOM resposta = new SefazConsultaCadastroResponseJDOM();
+            while (leitor.hasNext()) {
+                if (leitor.next() == XMLStreamConstants.START_ELEMENT && "infCons".equals(leitor.getLocalName())) {
+                    resposta.setInfCons(lerInfCons(leitor, sobDemanda));
+                    break;
+                }
+            }
+            
+            if (sobDemanda && resposta.getInfCons() != null) {
+                InfCons infCons = resposta.getInfCons();
+                int total = infCons.getInfCad().size();
+                if (total > 0) {
+                    int[] posicoes = localizarInfCad(conteudo);
+                    if (posicoes.length != total * 2) {
+                        // Marcação fora do comum (ex.: infCad fora do infCons): monta tudo na hora
+                        logger.debug("Posições dos infCad não conferem ({} de {}), lendo sem adiamento", posicoes.length / 2, total);
+                        return ler(conteudo, charset, false);
+                    }
+                    infCons.setInfCad(criarLista(conteudo, posicoes, encoding));
+                }
+            }
+            return resposta;
+        
+        } catch (XMLStreamException e) {
+            logger.error("Erro ao ler XML da resposta SEFAZ: {}", e.getMessage(), e);
+            return null;
+        } finally {
+            fechar(leitor);
+        }
+    }
+    
+    /**
+     * Decodifica um bloco infCad isolado
+     *
+     * @param conteudo Bytes da resposta
+     * @param inicio Início do bloco (&lt;infCad)
+     * @param tamanho Tamanho do bloco até o fim de &lt;/infCad&gt;
+     * @param encoding Encoding da resposta
+     */
+    static InfCad lerInfCad(byte[] conteudo, int inicio, int tamanho, String encoding) {
+        XMLStreamReader leitor = null;
+        try {
+            InputStream entrada = new ByteArrayInputStream(conteudo, inicio, tamanho);
+            leitor = encoding != null ? FABRICA_FRAGMENTO.createXMLStreamReader(entrada, encoding)
+                    : FABRICA_FRAGMENTO.createXMLStreamReader(entrada);
+            leitor.nextTag();
+            return lerInfCad(leitor);
+        } catch (XMLStreamException e) {
+            // Os bytes já passaram pela leitura completa da resposta
+            throw new IllegalStateException("Erro ao decodificar infCad da resposta SEFAZ: " + e.getMessage(), e);
+        } finally {
+            fechar(leitor);
+        }
+    }
+    
+    private static InfCons lerInfCons(XMLStreamReader leitor, boolean sobDemanda) throws XMLStreamException {
+        Map<String, String> campos = new HashMap<>();
+        List<InfCad> infCadList = new ArrayList<>();
+        
+        while (avancarParaFilho(leitor)) {
+            if (!"infCad".equals(nomeLocal(leitor))) {
+                campos.putIfAbsent(nomeLocal(leitor), lerTexto(leitor));
+            } else if (sobDemanda) {
+                // Só a contagem; o conteúdo é decodificado a partir das posições
+                pularElemento(leitor);
+                infCadList.add(null);
+            } else {
+                infCadList.add(lerInfCad(leitor));
+            }
+        }
+        
+        InfCons infCons = new InfCons();
+        infCons.setVerAplic(campos.get("verAplic"));
+        infCons.setcStat(campos.get("cStat"));
+        infCons.setxMotivo(campos.get("xMotivo"));
+        infCons.setUf(campos.get("UF"));
+        infCons.setCnpj(campos.get("CNPJ"));
+        infCons.setCpf(campos.get("CPF"));
+        infCons.setDhCons(campos.get("dhCons"));
+        infCons.setcUF(campos.get("cUF"));
+        infCons.setInfCad(infCadList);
+        return infCons;
+    }
+    
+    private static InfCad lerInfCad(XMLStreamReader leitor) throws XMLStreamException {
+        Map<String, String> campos = new HashMap<>();
+        Endereco endereco = null;
+        
+        while (avancarParaFilho(leitor)) {
+            if (!"ender".equals(nomeLocal(leitor))) {
+                campos.putIfAbsent(nomeLocal(leitor), lerTexto(leitor));
+            } else if (endereco == null) {
+                endereco = lerEndereco(leitor);
+            } else {
+                lerTexto(leitor);
+            }
+        }
+        
+        InfCad infCad = new InfCad();
+        infCad.setIe(campos.get("IE"));
+        infCad.setCnpj(campos.get("CNPJ"));
+        infCad.setCpf(campos.get("CPF"));
+        infCad.setUf(campos.get("UF"));
+        infCad.setcSit(campos.get("cSit"));
+        infCad.setIndCredNFe(campos.get("indCredNFe"));
+        infCad.setIndCredCTe(campos.get("indCredCTe"));
+        infCad.setxNome(campos.get("xNome"));
+        infCad.setxFant(campos.get("xFant"));
+        infCad.setxRegApur(campos.get("xRegApur"));
+        infCad.setCnae(campos.get("CNAE"));
+        infCad.setdIniAtiv(campos.get("dIniAtiv"));
+        infCad.setdUltSit(campos.get("dUltSit"));
+        infCad.setdBaixa(campos.get("dBaixa"));
+        infCad.setIeUnica(campos.get("IEUnica"));
+        infCad.setIeAtual(campos.get("IEAtual"));
+        infCad.setEnder(endereco);
+        return infCad;
+    }
+    
+    private static Endereco lerEndereco(XMLStreamReader leitor) throws XMLStreamException {
+        Map<String, String> campos = new HashMap<>();
+        while (avancarParaFilho(leitor)) {
+            campos.putIfAbsent(nomeLocal(leitor), lerTexto(leitor));
+        }
+        
+        Endereco endereco = new Endereco();
+        endereco.setxLgr(campos.get("xLgr"));
+        endereco.setNro(campos.get("nro"));
+        endereco.setxCpl(campos.get("xCpl"));
+        endereco.setxBairro(campos.get("xBairro"));
+        endereco.setcMun(campos.get("cMun"));
+        endereco.setxMun(campos.get("xMun"));
+        endereco.setCep(campos.get("CEP"));
+        return endereco;
+    }
+    
+    /**
+     * Avança até o próximo filho do elemento atual
+     *
+     * @return true posicionado no início do filho; false ao chegar no fim do elemento atual
+     */
+    private static boolean avancarParaFilho(XMLStreamReader leitor) throws XMLStreamException {
+        while (leitor.hasNext()) {
+            int evento = leitor.next();
+            if (evento == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (evento == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Avança até o fim do elemento atual sem ler o conteúdo
+     */
+    private static void pularElemento(XMLStreamReader leitor) throws XMLStreamException {
+        int profundidade = 0;
+        while (leitor.hasNext()) {
+            int evento = leitor.next();
+            if (evento == XMLStreamConstants.START_ELEMENT) {
+                profundidade++;
+            } else if (evento == XMLStreamConstants.END_ELEMENT && profundidade-- == 0) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Lê o texto do elemento atual até o seu fim, ignorando elementos aninhados
+     *
+     * @return Texto com espaços normalizados (vazio se não houver texto)
+     */
+    private static String lerTexto(XMLStreamReader leitor) throws XMLStreamException {
+        StringBuilder texto = new StringBuilder();
+        int profundidade = 0;
+        
+        while (leitor.hasNext()) {
+            int evento = leitor.next();
+            if (evento == XMLStreamConstants.START_ELEMENT) {
+                profundidade++;
+            } else if (evento == XMLStreamConstants.END_ELEMENT) {
+                if (profundidade-- == 0) {
+                    break;
+                }
+            } else if (profundidade == 0 && (evento == XMLStreamConstants.CHARACTERS
+                    || evento == XMLStreamConstants.CDATA || evento == XMLStreamConstants.SPACE)) {
+                texto.append(leitor.getTextCharacters(), leitor.getTextStart(), leitor.getTextLength());
+            }
+        }
+        return normalizar(texto);
+    }
+    
+    private static String normalizar(CharSequence texto) {
+        StringBuilder normalizado = new StringBuilder(texto.length());
+        boolean espaco = false;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (Character.isWhitespace(c)) {
+                espaco = normalizado.length() > 0;
+            } else {
+                if (espaco) {
+                    normalizado.append(' ');
+                    espaco = false;
+                }
+                normalizado.append(c);
+            }
+        }
+        return normalizado.toString();
+    }
+    
+    /**
+     * Nome do elemento sem prefixo (no leitor de fragmentos, sem namespaces, o nome vem com prefixo)
+     */
+    private static String nomeLocal(XMLStreamReader leitor) {
+        String nome = leitor.getLocalName();
+        int separador = nome.indexOf(':');
+        return separador < 0 ? nome : nome.substring(separador + 1);
+    }
+    
+    private static ListaInfCadSobDemanda criarLista(byte[] conteudo, int[] posicoes, String encoding) {
+        // Mantém apenas o trecho dos infCad, sem o restante do envelope
+        int inicio = posicoes[0];
+        int fim = posicoes[posicoes.length - 1];
+        int[] relativas = new int[posicoes.length];
+        for (int i = 0; i < posicoes.length; i++) {
+            relativas[i] = posicoes[i] - inicio;
+        }
+        return new ListaInfCadSobDemanda(Arrays.copyOfRange(conteudo, inicio, fim), relativas, encoding);
+    }
+    
+    /**
+     * Localiza os elementos infCad (com ou sem prefixo) nos bytes da resposta
+     * Ignora comentários, CDATA e instruções de processamento
+     *
+     * @return Pares início/fim (exclusivo) de cada infCad
+     */
+    private static int[] localizarInfCad(byte[] c) {
+        int[] posicoes = new int[16];
+        int total = 0;
+        int i = 0;
+        
+        while ((i = indice(c, i, '<')) >= 0) {
+            if (comecaCom(c, i, "<!--")) {
+                i = fimDe(c, i, "-->");
+            } else if (comecaCom(c, i, "<![CDATA[")) {
+                i = fimDe(c, i, "]]>");
+            } else if (comecaCom(c, i, "<?") || comecaCom(c, i, "<!")) {
+                i = fimDe(c, i, ">");
+            } else if (i + 1 < c.length && c[i + 1] != '/') {
+                int fimNome = fimNome(c, i + 1);
+                int inicioLocal = inicioNomeLocal(c, i + 1, fimNome);
+                int fimTag = indice(c, fimNome, '>');
+                if (fimTag < 0) {
+                    break;
+                }
+                
+                if (igual(c, inicioLocal, fimNome, INF_CAD, 0, INF_CAD.length)) {
+                    int fim = c[fimTag - 1] == '/' ? fimTag + 1 : fimFechamento(c, fimTag + 1, i + 1, fimNome);
+                    if (fim < 0) {
+                        break;
+                    }
+                    if (total + 2 > posicoes.length) {
+                        posicoes = Arrays.copyOf(posicoes, posicoes.length * 2);
+                    }
+                    posicoes[total++] = i;
+                    posicoes[total++] = fim;
+                    i = fim;
+                } else {
+                    i = fimTag + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return Arrays.copyOf(posicoes, total);
+    }
+    
+    /**
+     * Procura o fechamento &lt;/nome&gt; do elemento cujo nome está em c[inicioNome, fimNome)
+     *
+     * @return Posição após o '&gt;' do fechamento ou -1
+     */
+    private static int fimFechamento(byte[] c, int de, int inicioNome, int fimNome) {
+        int i = de;
+        while ((i = indice(c, i, '<')) >= 0) {
+            if (i + 1 < c.length && c[i + 1] == '/') {
+                int fimNomeFechamento = fimNome(c, i + 2);
+                if (igual(c, i + 2, fimNomeFechamento, c, inicioNome, fimNome)) {
+                    int fimTag = indice(c, fimNomeFechamento, '>');
+                    return fimTag < 0 ? -1 : fimTag + 1;
+                }
+            } else if (comecaCom(c, i, "<![CDATA[")) {
+                i = fimDe(c, i, "]]>");
+                continue;
+            } else if (comecaCom(c, i, "<!--")) {
+                i = fimDe(c, i, "-->");
+                continue;
+            }
+            i++;
+        }
+        return -1;
+    }
+    
+    private static int fimNome(byte[] c, int de) {
+        int i = de;
+        while (i < c.length && c[i] != '>' && c[i] != '/' && c[i] != ' ' && c[i] != '\t' && c[i] != '\n' && c[i] != '\r') {
+            i++;
+        }
+        return i;
+    }
+    
+    private static int inicioNomeLocal(byte[] c, int inicioNome, int fimNome) {
+        for (int i = inicioNome; i < fimNome; i++) {
+            if (c[i] == ':') {
+                return i + 1;
+            }
+        }
+        return inicioNome;
+    }
+    
+    private static boolean igual(byte[] a, int inicioA, int fimA, byte[] b, int inicioB, int fimB) {
+        if (fimA - inicioA != fimB - inicioB) {
+            return false;
+        }
+        for (int i = 0; i < fimA - inicioA; i++) {
+            if (a[inicioA + i] != b[inicioB + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean comecaCom(byte[] c, int de, String prefixo) {
+        if (de + prefixo.length() > c.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixo.length(); i++) {
+            if (c[de + i] != prefixo.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int fimDe(byte[] c, int de, String terminador) {
+        for (int i = de; i + terminador.length() <= c.length; i++) {
+            if (comecaCom(c, i, terminador)) {
+                return i + terminador.length();
+            }
+        }
+        return c.length;
+    }
+    
+    private static int indice(byte[] c, int de, char b) {
+        for (int i = de; i < c.length; i++) {
+            if (c[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * A localização por bytes só vale para encodings em que '&lt;' e os nomes são ASCII
+     */
+    private static boolean isAsciiCompativel(byte[] conteudo, String charset) {
+        if (charset != null) {
+            try {
+                Charset encoding = Charset.forName(charset);
+                return encoding.equals(StandardCharsets.UTF_8) || encoding.equals(StandardCharsets.ISO_8859_1)
+                        || encoding.equals(StandardCharsets.US_ASCII) || "windows-1252".equals(encoding.name());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        // Sem charset informado: BOM de UTF-16/32 ou bytes nulos indicam encoding multibyte
+        return conteudo.length < 2 || (conteudo[0] != (byte) 0xFE && conteudo[0] != (byte) 0xFF
+                && conteudo[0] != 0 && conteudo[1] != 0);
+    }
+    
+    private static byte[] lerBytes(InputStream entrada) throws IOException {
+        byte[] bytes = new byte[TAMANHO_BLOCO_LEITURA];
+        int total = 0;
+        int lidos;
+        while ((lidos = entrada.read(bytes, total, bytes.length - total)) != -1) {
+            total += lidos;
+            if (total == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+        return Arrays.copyOf(bytes, total);
+    }
+    
+    private static void fechar(XMLStreamReader leitor) {
+        if (leitor != null) {
+            try {
+                leitor.close();
+            } catch (XMLStreamException e) {
+                logger.debug("Erro ao fechar leitor XML: {}", e.getMessage());
+            }
+        }
+    }
+    
+    private static XMLInputFactory criarFabrica(boolean namespaces) {
+        XMLInputFactory fabrica = XMLInputFactory.newInstance();
+        // Resposta de terceiro: sem DTD nem entidades externas (XXE)
+        fabrica.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        fabrica.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        fabrica.setProperty(XMLInputFactory.IS_COALESCING, false);
+        fabrica.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaces);
+        return fabrica;
+    }
+}
@@ -0,0 +1,166 @@
+package br.com.dabu.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limitador de taxa por token bucket (implementado como GCRA) com fila justa
+ *
+ * Cada chamada a reservar() recebe o próximo horário livre na ordem de chegada (FIFO),
+ * de modo que a vazão é exatamente a cota configurada e nenhuma requisição passa à
+ * frente de outra. A rajada define quantas requisições podem sair juntas com o balde cheio;
+ * o padrão 1 espaça as requisições uniformemente, evitando estourar janelas fixas do servidor.
+ */
+public class LimitadorTaxa {
+    
+    private final long intervaloNanos;
+    private final int rajada;
+    
+    // Horário teórico de chegada da próxima requisição (GCRA)
+    private long proximaChegadaNanos = System.nanoTime();
+    private int aguardando;
+    
+    /**
+     * @param requisicoesPorMinuto Cota por minuto (mínimo 1)
+     * @param rajada Requisições que podem sair juntas com o balde cheio (mínimo 1)
+     */
+    public LimitadorTaxa(int requisicoesPorMinuto, int rajada) {
+        if (requisicoesPorMinuto < 1 || rajada < 1) {
+            throw new IllegalArgumentException("requisicoesPorMinuto e rajada devem ser maiores que zero");
+        }
+        this.intervaloNanos = TimeUnit.MINUTES.toNanos(1) / requisicoesPorMinuto;
+        this.rajada = rajada;
+    }
+    
+    /**
+     * Reserva a próxima vaga da fila
+     * O chamador deve aguardar a reserva (aguardar() ou agendamento próprio) e então liberá-la
+     *
+     * @return Reserva com a posição na fila e o tempo de espera
+     */
+    public Reserva reservar() {
+        return reservar(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Reserva a próxima vaga da fila, desde que a espera não passe do máximo informado
+     * A verificação e a reserva são atômicas: chamadas concorrentes nunca ultrapassam o máximo
+     *
+     * @param esperaMaximaMillis Espera máxima aceita
+     * @return Reserva ou null se a espera passaria do máximo (nada é reservado)
+     */
+    public synchronized Reserva reservar(long esperaMaximaMillis) {
+        long agora = System.nanoTime();
+        long chegada = Math.max(proximaChegadaNanos, agora);
+        long liberacao = Math.max(agora, chegada - (rajada - 1) * intervaloNanos);
+        
+        long espera = liberacao - agora;
+        if (espera > TimeUnit.MILLISECONDS.toNanos(esperaMaximaMillis)) {
+            return null;
+        }
+        proximaChegadaNanos = chegada + intervaloNanos;
+        
+        if (espera <= 0) {
+            return new Reserva(this, 0, 0, liberacao);
+        }
+        
+        aguardando++;
+        return new Reserva(this, aguardando, TimeUnit.NANOSECONDS.toMillis(espera), liberacao);
+    }
+    
+    /**
+     * Estima a espera de uma nova requisição, sem reservar vaga
+     *
+     * @return Espera estimada em milissegundos
+     */
+    public synchronized long estimarEsperaMillis() {
+        long agora = System.nanoTime();
+        long liberacao = Math.max(proximaChegadaNanos, agora) - (rajada - 1) * intervaloNanos;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(liberacao - agora));
+    }
+    
+    /**
+     * Suspende novas liberações pelo tempo informado (ex.: Retry-After de um HTTP 429)
+     */
+    public synchronized void suspender(long millis) {
+        long retomada = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        // Com a suspensão a próxima liberação só ocorre na retomada, sem rajada acumulada
+        proximaChegadaNanos = Math.max(proximaChegadaNanos, retomada + (rajada - 1) * intervaloNanos);
+    }
+    
+    /**
+     * Número de requisições aguardando liberação
+     */
+    public synchronized int getAguardando() {
+        return aguardando;
+    }
+    
+    private synchronized void concluirEspera() {
+        aguardando--;
+    }
+    
+    /**
+     * Vaga reservada na fila do limitador
+     */
+    public static class Reserva {
+        private final LimitadorTaxa limitador;
+        private final int posicaoFila;
+        private final long esperaMillis;
+        private final long liberacaoNanos;
+        private boolean liberada;
+        
+        Reserva(LimitadorTaxa limitador, int posicaoFila, long esperaMillis, long liberacaoNanos) {
+            this.limitador = limitador;
+            this.posicaoFila = posicaoFila;
+            this.esperaMillis = esperaMillis;
+            this.liberacaoNanos = liberacaoNanos;
+            this.liberada = posicaoFila == 0;
+        }
+        
+        /**
+         * Bloqueia a thread até o horário reservado e libera a reserva
+         *
+         * @throws InterruptedException Se a thread for interrompida durante a espera
+         */
+        public void aguardar() throws InterruptedException {
+            try {
+                long restante;
+                while ((restante = liberacaoNanos - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(restante);
+                }
+            } finally {
+                liberar();
+            }
+        }
+        
+        /**
+         * Marca a espera como concluída (usado quando a espera é agendada pelo chamador)
+         */
+        public synchronized void liberar() {
+            if (!liberada) {
+                liberada = true;
+                limitador.concluirEspera();
+            }
+        }
+        
+        /**
+         * Posição na fila de espera (0 se liberada imediatamente)
+         */
+        public int getPosicaoFila() {
+            return posicaoFila;
+        }
+        
+        /**
+         * Tempo estimado até a liberação, em milissegundos
+         */
+        public long getEsperaMillis() {
+            return esperaMillis;
+        }
+        
+        /**
+         * Tempo restante até a liberação, em milissegundos
+         */
+        public long getRestanteMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(liberacaoNanos - System.nanoTime()));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package br.com.dabu.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limite de concorrência adaptativo (AIMD guiado por latência e erros)
+ *
+ * O limite cresce de 1 a cada janela de requisições concluídas com sucesso enquanto o limite
+ * está de fato sendo usado, e é reduzido multiplicativamente quando a requisição falha ou quando a
+ * latência passa do dobro da menor latência observada (sinal de fila no servidor). Assim
+ * cada endpoint converge para a concorrência que maximiza a vazão sem provocar timeouts.
+ * A redução ocorre no máximo uma vez por janela: requisições iniciadas antes da última
+ * redução já refletem o limite antigo e não voltam a reduzi-lo.
+ *
+ * Quem não obtém permissão aguarda em fila FIFO, comum às chamadas síncronas e assíncronas.
+ */
+public class LimiteAdaptativo {
+    
+    private static final double FATOR_REDUCAO_ERRO = 0.75;
+    private static final double FATOR_REDUCAO_LATENCIA = 0.9;
+    private static final double TOLERANCIA_LATENCIA = 2.0;
+    // Fração da diferença com que a latência mínima acompanha amostras maiores
+    private static final int SUAVIZACAO_LATENCIA_MINIMA = 256;
+    
+    private final String nome;
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    
+    private double limite;
+    private int emAndamento;
+    private long latenciaMinimaNanos = Long.MAX_VALUE;
+    private long ultimaReducaoNanos = System.nanoTime();
+    private final Deque<CompletableFuture<Permissao>> fila = new ArrayDeque<>();
+    
+    /**
+     * @param nome Identificação usada em logs (ex.: endpoint)
+     * @param limiteInicial Concorrência inicial
+     * @param limiteMinimo Concorrência mínima (pelo menos 1)
+     * @param limiteMaximo Concorrência máxima (ex.: tamanho do pool de conexões)
+     */
+    public LimiteAdaptativo(String nome, int limiteInicial, int limiteMinimo, int limiteMaximo) {
+        if (limiteMinimo < 1 || limiteMaximo < limiteMinimo) {
+            throw new IllegalArgumentException("Limites inválidos: mínimo " + limiteMinimo + ", máximo " + limiteMaximo);
+        }
+        this.nome = nome;
+        this.limiteMinimo = limiteMinimo;
+        this.limiteMaximo = limiteMaximo;
+        this.limite = Math.max(limiteMinimo, Math.min(limiteMaximo, limiteInicial));
+    }
+    
+    /**
+     * Obtém uma permissão sem bloquear
+     *
+     * @return Future completado quando houver vaga (na ordem de chegada)
+     */
+    public CompletableFuture<Permissao> adquirirAsync() {
+        CompletableFuture<Permissao> futuro = new CompletableFuture<>();
+        Permissao imediata = null;
+        
+        synchronized (this) {
+            if (fila.isEmpty() && emAndamento < (int) limite) {
+                emAndamento++;
+                imediata = new Permissao(emAndamento);
+            } else {
+                fila.addLast(futuro);
+            }
+        }
+        
+        if (imediata != null) {
+            futuro.complete(imediata);
+        }
+        return futuro;
+    }
+    
+    /**
+     * Obtém uma permissão aguardando no máximo o tempo informado
+     *
+     * @param tempoMaximoMillis Tempo máximo de espera na fila
+     * @return Permissão ou null se o tempo se esgotar
+     * @throws InterruptedException Se a thread for interrompida durante a espera
+     */
+    public Permissao adquirir(long tempoMaximoMillis) throws InterruptedException {
+        CompletableFuture<Permissao> futuro = adquirirAsync();
+        try {
+            return futuro.get(tempoMaximoMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            // Se a vaga chegou junto com o timeout/interrupção, ela é devolvida
+            if (!futuro.cancel(false)) {
+                futuro.join().descartar();
+            }
+            if (e instanceof InterruptedException) {
+                throw (InterruptedException) e;
+            }
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    public synchronized int getLimite() {
+        return (int) limite;
+    }
+    
+    public synchronized int getEmAndamento() {
+        return emAndamento;
+    }
+    
+    public synchronized int getAguardando() {
+        return fila.size();
+    }
+    
+    public String getNome() {
+        return nome;
+    }
+    
+    /**
+     * Registra o resultado de uma requisição, ajusta o limite e libera as vagas abertas
+     */
+    private void concluir(Permissao permissao, boolean sucesso, boolean registrarAmostra) {
+        List<CompletableFuture<Permissao>> liberados = new ArrayList<>();
+        
+        synchronized (this) {
+            emAndamento--;
+            if (registrarAmostra) {
+                ajustarLimite(permissao, sucesso, System.nanoTime() - permissao.inicioNanos);
+            }
+            
+            while (!fila.isEmpty() && emAndamento < (int) limite) {
+                CompletableFuture<Permissao> proximo = fila.pollFirst();
+                if (!proximo.isDone()) {
+                    emAndamento++;
+                    liberados.add(proximo);
+                }
+            }
+        }
+        
+        for (CompletableFuture<Permissao> proximo : liberados) {
+            Permissao nova = new Permissao(getEmAndamento());
+            if (!proximo.complete(nova)) {
+                // Cancelado entre a retirada da fila e a conclusão
+                nova.descartar();
+            }
+        }
+    }
+    
+    private void ajustarLimite(Permissao permissao, boolean sucesso, long latenciaNanos) {
+        if (!sucesso) {
+            reduzirLimite(permissao, FATOR_REDUCAO_ERRO);
+            return;
+        }
+        
+        if (latenciaNanos < latenciaMinimaNanos) {
+            latenciaMinimaNanos = latenciaNanos;
+        } else {
+            latenciaMinimaNanos += (latenciaNanos - latenciaMinimaNanos) / SUAVIZACAO_LATENCIA_MINIMA;
+        }
+        
+        if (latenciaNanos > latenciaMinimaNanos * TOLERANCIA_LATENCIA) {
+            reduzirLimite(permissao, FATOR_REDUCAO_LATENCIA);
+        } else if (permissao.emAndamentoNoInicio * 2 >= limite) {
+            // Só cresce se o limite atual estiver sendo usado; +1 a cada "janela" de limite requisições
+            limite = Math.min(limiteMaximo, limite + 1 / limite);
+        }
+    }
+    
+    /**
+     * Reduz o limite uma vez por janela: amostras de requisições iniciadas antes da
+     * última redução são ignoradas, evitando que uma rajada lenta derrube o limite ao mínimo
+     */
+    private void reduzirLimite(Permissao permissao, double fator) {
+        if (permissao.inicioNanos - ultimaReducaoNanos < 0) {
+            return;
+        }
+        limite = Math.max(limiteMinimo, limite * fator);
+        ultimaReducaoNanos = System.nanoTime();
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "LimiteAdaptativo{" +
+                "nome='" + nome + '\'' +
+                ", limite=" + (int) limite +
+                ", emAndamento=" + emAndamento +
+                ", aguardando=" + fila.size() +
+                '}';
+    }
+    
+    /**
+     * Vaga obtida no limite; deve ser liberada exatamente uma vez
+     */
+    public class Permissao {
+        private final long inicioNanos = System.nanoTime();
+        private final int emAndamentoNoInicio;
+        private boolean liberada;
+        
+        private Permissao(int emAndamentoNoInicio) {
+            this.emAndamentoNoInicio = emAndamentoNoInicio;
+        }
+        
+        /**
+         * Libera a vaga informando o resultado da requisição
+         *
+         * @param sucesso false para erro/timeout (reduz o limite)
+         */
+        public void liberar(boolean sucesso) {
+            if (marcarLiberada()) {
+                concluir(this, sucesso, true);
+            }
+        }
+        
+        /**
+         * Libera a vaga sem registrar amostra (requisição não realizada)
+         */
+        public void descartar() {
+            if (marcarLiberada()) {
+                concluir(this, true, false);
+            }
+        }
+        
+        private synchronized boolean marcarLiberada() {
+            if (liberada) {
+                return false;
+            }
+            liberada = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package br.com.dabu.util;
+
+import br.com.dabu.model.SefazConsultaCadastroResponseJDOM.InfCad;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lista de infCad decodificados sob demanda a partir do XML bruto da resposta
+ *
+ * Guarda apenas os bytes dos blocos infCad e a posição de cada um; get(i) decodifica o
+ * bloco na primeira leitura e mantém o resultado. Quando todos foram decodificados, os bytes
+ * são liberados. Para percorrer todos sem manter os objetos, use iterarSemGuardar().
+ */
+public final class ListaInfCadSobDemanda extends AbstractList<InfCad> {
+    
+    private final String encoding;
+    private final int[] posicoes;
+    private final InfCad[] decodificados;
+    
+    private byte[] conteudo;
+    private int totalDecodificados;
+    
+    /**
+     * @param conteudo Bytes que contêm os blocos infCad
+     * @param posicoes Pares início/fim (exclusivo) de cada bloco em conteudo
+     * @param encoding Encoding dos bytes
+     */
+    ListaInfCadSobDemanda(byte[] conteudo, int[] posicoes, String encoding) {
+        this.conteudo = conteudo;
+        this.posicoes = posicoes;
+        this.encoding = encoding;
+        this.decodificados = new InfCad[posicoes.length / 2];
+    }
+    
+    @Override
+    public synchronized InfCad get(int indice) {
+        InfCad infCad = decodificados[indice];
+        if (infCad == null) {
+            infCad = decodificar(conteudo, indice);
+            decodificados[indice] = infCad;
+            if (++totalDecodificados == decodificados.length) {
+                conteudo = null;
+            }
+        }
+        return infCad;
+    }
+    
+    @Override
+    public int size() {
+        return decodificados.length;
+    }
+    
+    /**
+     * Percorre os infCad decodificando um por vez, sem guardá-los na lista
+     * Os já decodificados são reaproveitados
+     */
+    public Iterator<InfCad> iterarSemGuardar() {
+        return new Iterator<InfCad>() {
+            private int proximo;
+            
+            @Override
+            public boolean hasNext() {
+                return proximo < decodificados.length;
+            }
+            
+            @Override
+            public InfCad next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int indice = proximo++;
+                
+                byte[] bytes;
+                synchronized (ListaInfCadSobDemanda.this) {
+                    if (decodificados[indice] != null) {
+                        return decodificados[indice];
+                    }
+                    bytes = conteudo;
+                }
+                return decodificar(bytes, indice);
+            }
+        };
+    }
+    
+    private InfCad decodificar(byte[] bytes, int indice) {
+        int inicio = posicoes[indice * 2];
+        int fim = posicoes[indice * 2 + 1];
+        return LeitorRetConsCad.lerInfCad(bytes, inicio, fim - inicio, encoding);
+    }
+}
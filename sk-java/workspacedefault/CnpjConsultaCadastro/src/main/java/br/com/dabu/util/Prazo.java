@@ -0,0 +1,113 @@
+package br.com.dabu.util;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prazo (deadline) de uma operação, repartido entre as etapas que ela percorre
+ *
+ * Cada etapa recebe uma fração do tempo restante e o aplica como timeouts reais do HttpClient;
+ * como o timeout de leitura vale por pacote, a requisição também é abortada quando o prazo esgota.
+ */
+public final class Prazo {
+    
+    private static final ScheduledExecutorService AGENDADOR_ABORT = criarAgendador();
+    
+    private final long limiteNanos;
+    
+    private Prazo(long limiteNanos) {
+        this.limiteNanos = limiteNanos;
+    }
+    
+    /**
+     * Cria um prazo que esgota após a duração informada, contada a partir de agora
+     */
+    public static Prazo em(Duration duracao) {
+        return new Prazo(System.nanoTime() + Math.max(0, duracao.toNanos()));
+    }
+    
+    /**
+     * Obtém um prazo com a proporção informada do tempo restante, nunca além deste
+     *
+     * @param proporcao Entre 0 e 1
+     */
+    public Prazo fracao(double proporcao) {
+        long restante = Math.max(0, limiteNanos - System.nanoTime());
+        return new Prazo(limiteNanos - restante + (long) (restante * Math.min(1.0, Math.max(0.0, proporcao))));
+    }
+    
+    /**
+     * Tempo restante em milissegundos (0 se esgotado)
+     */
+    public long getRestanteMillis() {
+        long restante = limiteNanos - System.nanoTime();
+        return restante > 0 ? TimeUnit.NANOSECONDS.toMillis(restante + 999_999) : 0;
+    }
+    
+    public boolean isEsgotado() {
+        return limiteNanos - System.nanoTime() <= 0;
+    }
+    
+    /**
+     * Limita um timeout ao tempo restante
+     *
+     * @param timeoutMillis Timeout original (zero ou negativo significa sem timeout)
+     * @return Menor valor entre o timeout e o tempo restante, ao menos 1ms
+     */
+    public int limitarTimeout(long timeoutMillis) {
+        long restante = Math.max(1, getRestanteMillis());
+        long limitado = timeoutMillis > 0 ? Math.min(timeoutMillis, restante) : restante;
+        return (int) Math.min(Integer.MAX_VALUE, limitado);
+    }
+    
+    /**
+     * Copia a configuração da requisição com os timeouts limitados ao tempo restante
+     */
+    public RequestConfig limitar(RequestConfig config) {
+        RequestConfig base = config != null ? config : RequestConfig.DEFAULT;
+        return RequestConfig.copy(base)
+                .setConnectTimeout(limitarTimeout(base.getConnectTimeout()))
+                .setSocketTimeout(limitarTimeout(base.getSocketTimeout()))
+                .setConnectionRequestTimeout(limitarTimeout(base.getConnectionRequestTimeout()))
+                .build();
+    }
+    
+    /**
+     * Agenda o abort da requisição para quando o prazo esgotar
+     * A tarefa retornada deve ser cancelada assim que a requisição terminar
+     */
+    public ScheduledFuture<?> abortarAoEsgotar(HttpUriRequest request) {
+        return AGENDADOR_ABORT.schedule(request::abort, limiteNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Agenda o cancelamento do Future (ex.: requisição assíncrona) para quando o prazo esgotar
+     * A tarefa retornada deve ser cancelada assim que o Future terminar
+     */
+    public ScheduledFuture<?> cancelarAoEsgotar(Future<?> futuro) {
+        return AGENDADOR_ABORT.schedule(() -> futuro.cancel(true), limiteNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+    
+    private static ScheduledExecutorService criarAgendador() {
+        ScheduledThreadPoolExecutor agendador = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "prazo-abort");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Os aborts quase sempre são cancelados; sem isso ficariam na fila até vencer
+        agendador.setRemoveOnCancelPolicy(true);
+        return agendador;
+    }
+    
+    @Override
+    public String toString() {
+        return getRestanteMillis() + "ms";
+    }
+}
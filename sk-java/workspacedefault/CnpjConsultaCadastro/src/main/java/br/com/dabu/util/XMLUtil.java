@@ -16,9 +16,14 @@ import java.io.StringWriter;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
 
 /**
  * Utilitário para manipulação de XML usando JDOM
+ *
+ * SAXBuilder e XMLOutputter não são thread-safe e custam caro para criar (busca das
+ * fábricas JAXP e montagem do XMLReader). Cada thread reaproveita as suas instâncias,
+ * então todos os métodos podem ser chamados de várias threads ao mesmo tempo.
  */
 public class XMLUtil {
     
@@ -27,6 +32,13 @@ public class XMLUtil {
     // Namespace da SEFAZ
     public static final Namespace NFE_NAMESPACE = Namespace.getNamespace("http://www.portalfiscal.inf.br/nfe");
     
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+    
+    private static final ThreadLocal<SAXBuilder> PARSER = ThreadLocal.withInitial(XMLUtil::criarParser);
+    private static final ThreadLocal<XMLOutputter> OUTPUTTER_COMPACTO = ThreadLocal.withInitial(XMLUtil::criarOutputterCompacto);
+    private static final ThreadLocal<XMLOutputter> OUTPUTTER_FORMATADO =
+            ThreadLocal.withInitial(() -> new XMLOutputter(Format.getPrettyFormat()));
+    
     /**
      * Cria XML de consulta cadastro para SEFAZ
      * 
@@ -127,18 +139,11 @@ public class XMLUtil {
      */
     public static String documentToString(Document document) {
         try {
-            // Usa formato compacto para evitar caracteres de edição
-            Format format = Format.getCompactFormat();
-            format.setEncoding("UTF-8");
-            format.setOmitDeclaration(false); // Mantém declaração XML
-            format.setIndent(""); // Remove indentação
-            format.setLineSeparator(""); // Remove quebras de linha
-            XMLOutputter outputter = new XMLOutputter(format);
             StringWriter writer = new StringWriter();
-            outputter.output(document, writer);
+            OUTPUTTER_COMPACTO.get().output(document, writer);
             String result = writer.toString();
             // Remove espaços extras e caracteres de controle
-            return result.replaceAll("\\s+", " ").trim();
+            return ESPACOS.matcher(result).replaceAll(" ").trim();
         } catch (IOException e) {
             logger.error("Erro ao converter Document para String: {}", e.getMessage(), e);
             return null;
@@ -153,8 +158,7 @@ public class XMLUtil {
      */
     public static Document stringToDocument(String xmlString) {
         try {
-            SAXBuilder builder = new SAXBuilder();
-            return builder.build(new StringReader(xmlString));
+            return PARSER.get().build(new StringReader(xmlString));
         } catch (JDOMException | IOException e) {
             logger.error("Erro ao converter String para Document: {}", e.getMessage(), e);
             return null;
@@ -209,6 +213,7 @@ public class XMLUtil {
     
     /**
      * Cria envelope SOAP para requisição SEFAZ
+     * A consulta cadastro usa EnvelopeConsultaCadastro, que gera os mesmos bytes sem montar documento
      * 
      * @param xmlRequest XML da requisição
      * @param uf UF para determinar o endpoint
@@ -245,13 +250,8 @@ public class XMLUtil {
             Element nfeDadosMsg = new Element("nfeDadosMsg", cadNamespace);
             try {
                 // Parse o XML da requisição e adiciona como elemento
-                org.jdom2.input.SAXBuilder builder = new org.jdom2.input.SAXBuilder();
-                builder.setFeature("http://xml.org/sax/features/validation", false);
-                builder.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-                builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-                org.jdom2.Document xmlDoc = builder.build(new java.io.StringReader(xmlRequest));
-                Element consCadElement = xmlDoc.getRootElement();
-                nfeDadosMsg.addContent(consCadElement.clone());
+                Document xmlDoc = PARSER.get().build(new StringReader(xmlRequest));
+                nfeDadosMsg.addContent(xmlDoc.detachRootElement());
             } catch (Exception e) {
                 logger.warn("Erro ao parsear XML da requisição, usando como texto: {}", e.getMessage());
                 nfeDadosMsg.setText(xmlRequest);
@@ -329,8 +329,7 @@ public class XMLUtil {
         try {
             Document document = stringToDocument(xmlString);
             if (document != null) {
-                XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
-                return outputter.outputString(document);
+                return OUTPUTTER_FORMATADO.get().outputString(document);
             }
         } catch (Exception e) {
             logger.debug("Erro ao formatar XML: {}", e.getMessage());
@@ -338,6 +337,34 @@ public class XMLUtil {
         return xmlString; // Retorna original em caso de erro
     }
     
+    /**
+     * Cria o parser usado pela thread
+     * Sem validação, DOCTYPE nem entidades externas: o XML vem de terceiros (XXE e expansão de entidades)
+     */
+    private static SAXBuilder criarParser() {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setExpandEntities(false);
+        builder.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        builder.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        builder.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        builder.setReuseParser(true);
+        return builder;
+    }
+    
+    /**
+     * Cria o outputter compacto usado pela thread
+     */
+    private static XMLOutputter criarOutputterCompacto() {
+        // Usa formato compacto para evitar caracteres de edição
+        Format format = Format.getCompactFormat();
+        format.setEncoding("UTF-8");
+        format.setOmitDeclaration(false); // Mantém declaração XML
+        format.setIndent(""); // Remove indentação
+        format.setLineSeparator(""); // Remove quebras de linha
+        return new XMLOutputter(format);
+    }
+    
     /**
      * Converte data ISO para formato brasileiro dd/MM/yyyy HH:mm:ss
      * 